@@ -4,15 +4,15 @@ import android.os.Bundle;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
-import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.res.ResourcesCompat;
-import androidx.viewpager.widget.PagerAdapter;
 
 import com.liuzhenlin.galleryviewer.GalleryViewPager;
+import com.liuzhenlin.galleryviewer.GestureImageView;
+import com.liuzhenlin.galleryviewer.ImageSource;
+import com.liuzhenlin.galleryviewer.StableIdPagerAdapter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,30 +22,34 @@ import java.util.List;
  */
 public class MainActivity extends AppCompatActivity implements View.OnClickListener, View.OnLongClickListener {
     private GalleryViewPager mGalleryViewPager;
+    private GalleryPagerAdapter mGalleryPagerAdapter;
     private FrameLayout mDeleteFrame;
 
-    /*synthetic*/ final List<ImageView> mImages = new ArrayList<>(PICTURE_COUNT);
-    private static final int PICTURE_COUNT = 7;
+    private static final int[] PICTURES = {
+            R.drawable.picture0, R.drawable.picture1, R.drawable.picture2, R.drawable.picture3,
+            R.drawable.picture4, R.drawable.picture5, R.drawable.picture6
+    };
 
-    /*synthetic*/ static final int TAG_IMAGE_INITIAL_POSITION = 10 << 24;
+    /** The number of bytes the pages on both sides of the current page can take up */
+    private static final long OFFSCREEN_PAGE_MEMORY_BUDGET = 64 * 1024 * 1024;
+
+    /** Resource ids of the pictures to show, which are the stable ids of them as well */
+    /*synthetic*/ final List<Integer> mPictures = new ArrayList<>(PICTURES.length);
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        for (int i = 0; i < PICTURE_COUNT; i++) {
-            ImageView image = (ImageView) View.inflate(this,
-                    R.layout.item_gallery_view_pager, null);
-            image.setOnLongClickListener(this);
-            image.setOnClickListener(this);
-            image.setTag(TAG_IMAGE_INITIAL_POSITION, i);
-            mImages.add(image);
+        for (int picture : PICTURES) {
+            mPictures.add(picture);
         }
         mGalleryViewPager = findViewById(R.id.galley_view_pager);
-        GalleryPagerAdapter adapter = new GalleryPagerAdapter();
-        mGalleryViewPager.setAdapter(adapter);
-        mGalleryViewPager.setItemCallback(adapter);
+        mGalleryPagerAdapter = new GalleryPagerAdapter();
+        mGalleryViewPager.setAdapter(mGalleryPagerAdapter);
+        mGalleryViewPager.setItemCallback(mGalleryPagerAdapter);
+        mGalleryViewPager.setOffscreenPageMemoryBudget(OFFSCREEN_PAGE_MEMORY_BUDGET);
+        mGalleryViewPager.setImageViewportRetained(true);
         mGalleryViewPager.setPageMargin((int) (25f * getResources().getDisplayMetrics().density + 0.5f));
 
         mDeleteFrame = findViewById(R.id.frame_image_bt_delete);
@@ -66,11 +70,13 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
             case R.id.frame_image_bt_delete:
             case R.id.image_bt_delete:
-                final int pictureCount = mImages.size();
+                final int pictureCount = mPictures.size();
                 if (pictureCount > 0) {
-                    mImages.remove(mGalleryViewPager.getCurrentItem());
-                    //noinspection all (adapter is nonnull)
-                    mGalleryViewPager.getAdapter().notifyDataSetChanged();
+                    // Only the page of the deleted picture is destroyed; the other pages are
+                    // kept, with their images and zoom, and moved to their new positions.
+                    final int position = mGalleryViewPager.getCurrentItem();
+                    mPictures.remove(position);
+                    mGalleryPagerAdapter.notifyItemRemoved(position);
                     if (pictureCount == 1) {
                         finish();
                     }
@@ -93,54 +99,41 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         return false;
     }
 
-    private final class GalleryPagerAdapter extends PagerAdapter implements GalleryViewPager.ItemCallback {
+    private final class GalleryPagerAdapter extends StableIdPagerAdapter
+            implements GalleryViewPager.ImageSourceProvider {
         GalleryPagerAdapter() {
         }
 
         @Override
         public int getCount() {
-            return mImages.size();
+            return mPictures.size();
         }
 
         @Override
-        public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
-            return view == object;
+        public long getItemId(int position) {
+            return mPictures.get(position);
         }
 
         @NonNull
         @Override
-        public Object instantiateItem(@NonNull ViewGroup container, int position) {
-            ImageView image = mImages.get(position);
-            if (image.getParent() == null) {
-                image.setImageDrawable(
-                        ResourcesCompat.getDrawable(
-                                getResources(),
-                                getResources().getIdentifier(
-                                        "picture" + image.getTag(TAG_IMAGE_INITIAL_POSITION),
-                                        "drawable",
-                                        getPackageName()),
-                                getTheme()));
-                container.addView(image);
-            }
+        protected View onCreatePageView(@NonNull ViewGroup container, int position) {
+            GestureImageView image = (GestureImageView) getLayoutInflater().inflate(
+                    R.layout.item_gallery_view_pager, container, false);
+            image.setOnLongClickListener(MainActivity.this);
+            image.setOnClickListener(MainActivity.this);
+            image.setImageSource(getImageSourceAt(position));
             return image;
         }
 
         @Override
-        public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
-            ImageView image = (ImageView) object;
-            image.setImageDrawable(null);
-            container.removeView(image);
-        }
-
-        @Override
-        public int getItemPosition(@NonNull Object object) {
-            return POSITION_NONE;
+        protected void onDestroyPageView(@NonNull ViewGroup container, @NonNull View view) {
+            ((GestureImageView) view).setImageDrawable(null);
         }
 
         @Override
-        public Object getItemAt(int position) {
-            if (position >= 0 && position < mImages.size()) {
-                return mImages.get(position);
+        public ImageSource getImageSourceAt(int position) {
+            if (position >= 0 && position < mPictures.size()) {
+                return ImageSource.resource(getResources(), mPictures.get(position));
             }
             return null;
         }
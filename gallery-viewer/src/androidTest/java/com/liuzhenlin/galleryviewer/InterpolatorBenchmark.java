@@ -0,0 +1,62 @@
+package com.liuzhenlin.galleryviewer;
+
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the per-call cost of the exact interpolators with that of their
+ * {@link LookupTableInterpolator lookup tables}, through androidx.benchmark, which reports
+ * the results rather than judging them, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InterpolatorBenchmark {
+
+    /** The step of the input between two calls, sweeping it across all the table segments */
+    private static final float INPUT_STEP = 1f / 1021f;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    /** Keeps the results alive so that the calls cannot be optimized away */
+    private static float sSink;
+
+    @Test
+    public void viscousFluid_exact() {
+        measure(new ViscousFluidInterpolator());
+    }
+
+    @Test
+    public void viscousFluid_lookupTable() {
+        measure(new LookupTableInterpolator(new ViscousFluidInterpolator()));
+    }
+
+    @Test
+    public void decelerate_exact() {
+        measure(new DecelerateInterpolator());
+    }
+
+    @Test
+    public void decelerate_lookupTable() {
+        measure(new LookupTableInterpolator(new DecelerateInterpolator()));
+    }
+
+    private void measure(Interpolator interpolator) {
+        final BenchmarkState state = mBenchmarkRule.getState();
+        float input = 0;
+        float sum = 0;
+        while (state.keepRunning()) {
+            sum += interpolator.getInterpolation(input);
+            input += INPUT_STEP;
+            if (input > 1f) input -= 1f;
+        }
+        sSink += sum;
+    }
+}
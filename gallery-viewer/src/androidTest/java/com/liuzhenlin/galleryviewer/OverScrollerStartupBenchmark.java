@@ -0,0 +1,101 @@
+package com.liuzhenlin.galleryviewer;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import dalvik.system.PathClassLoader;
+
+/**
+ * Measures what the first fling of an image costs before it can produce its first frame,
+ * including loading {@link OverScroller}, with the spline tables formerly computed when the
+ * class was loaded against the precomputed ones.
+ * <p>
+ * Every run loads the classes of this library afresh through a new class loader, so that
+ * each of them is as cold as the first fling in a new process. A run with the former tables
+ * computes them right after loading the class, as its static initializer used to. The numbers
+ * are reported through the instrumentation status and the log rather than asserted, as they
+ * depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OverScrollerStartupBenchmark {
+    private static final String TAG = "OverScrollerStartup";
+
+    private static final int RUNS = 15;
+
+    private static final String SCROLLER_CLASS = OverScroller.class.getName();
+    private static final String SPLINE_CLASS = OverScroller.SplineOverScroller.class.getName();
+
+    @Test
+    public void coldFirstFling() throws Exception {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = instrumentation.getTargetContext();
+
+        final long[] computedTables = new long[RUNS];
+        final long[] precomputedTables = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            // Alternated so that any drift of the device affects both alike
+            computedTables[i] = timeColdFling(context, true);
+            precomputedTables[i] = timeColdFling(context, false);
+        }
+
+        final long computedMedian = median(computedTables);
+        final long precomputedMedian = median(precomputedTables);
+        Log.i(TAG, "cold first fling, median of " + RUNS + " runs"
+                + ": spline tables computed at class loading " + computedMedian / 1000 + " us"
+                + ", precomputed " + precomputedMedian / 1000 + " us");
+
+        final Bundle results = new Bundle();
+        results.putLong("coldFirstFling_computedTables_medianNanos", computedMedian);
+        results.putLong("coldFirstFling_precomputedTables_medianNanos", precomputedMedian);
+        instrumentation.sendStatus(0, results);
+    }
+
+    /**
+     * Loads OverScroller through a new class loader, then creates one and steps its first fling.
+     *
+     * @param computeTables whether to compute the spline tables after loading the class, as
+     *                      its static initializer did before they were precomputed
+     */
+    private static long timeColdFling(Context context, boolean computeTables) throws Exception {
+        // Loads the framework classes from the boot class loader and this library afresh.
+        final ClassLoader loader = new PathClassLoader(
+                context.getPackageCodePath(), Context.class.getClassLoader());
+
+        final long start = System.nanoTime();
+        final Class<?> scrollerClass = Class.forName(SCROLLER_CLASS, true, loader);
+        if (computeTables) {
+            final Class<?> splineClass = Class.forName(SPLINE_CLASS, true, loader);
+            final Method computeSplineTables = splineClass.getDeclaredMethod(
+                    "computeSplineTables", float[].class, float[].class);
+            computeSplineTables.setAccessible(true);
+            final int size = OverScroller.SplineOverScroller.NB_SAMPLES + 1;
+            computeSplineTables.invoke(null, new float[size], new float[size]);
+        }
+        final Constructor<?> constructor = scrollerClass.getConstructor(Context.class);
+        final Object scroller = constructor.newInstance(context);
+        scrollerClass.getMethod("fling",
+                float.class, float.class, float.class, float.class,
+                float.class, float.class, float.class, float.class)
+                .invoke(scroller, 0f, 0f, 4000f, 4000f, -10000f, 10000f, -10000f, 10000f);
+        scrollerClass.getMethod("computeScrollOffset").invoke(scroller);
+        return System.nanoTime() - start;
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+
+/**
+ * The library-wide driver of the animations of the images, stepping all the running ones,
+ * e.g., the zoom of the current page together with the spring-backs of its neighbors,
+ * in a single callback per frame instead of each of them re-posting itself to its view.
+ * <p>
+ * It posts one Choreographer frame callback while there is any animation running, on API 16
+ * and above, or else a delayed message at the default frame rate. Nothing is allocated per
+ * frame, and an animation removed from it will never be stepped again.
+ * <p>
+ * All the methods of this class must be called on the main thread.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class AnimationFrameDriver {
+
+    /** An animation that is stepped once per frame while it is added to the driver. */
+    public interface FrameCallback {
+        /**
+         * Steps the animation to the given frame.
+         *
+         * @param frameTimeNanos the time at which the frame started being rendered,
+         *                       in the {@link System#nanoTime()} timebase
+         * @return true if the animation needs to be stepped on the next frame too, or false
+         *         to be removed from the driver
+         */
+        boolean doFrame(long frameTimeNanos);
+    }
+
+    /** The frame delay used before Choreographer is available */
+    private static final long FALLBACK_FRAME_DELAY = 10; // ms
+
+    private static AnimationFrameDriver sInstance;
+
+    /**
+     * The running animations, among which the removed ones are nulled out during a frame
+     * and are compacted away at its end
+     */
+    private final ArrayList<FrameCallback> mCallbacks = new ArrayList<>();
+
+    private boolean mInFrame;
+    private long mFrameTimeNanos;
+    private boolean mHasRemovedCallbacks;
+
+    private boolean mFramePosted;
+    private final FramePoster mFramePoster;
+
+    @NonNull
+    public static AnimationFrameDriver getInstance() {
+        if (sInstance == null) {
+            sInstance = new AnimationFrameDriver();
+        }
+        return sInstance;
+    }
+
+    private AnimationFrameDriver() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFramePoster = new ChoreographerFramePoster();
+        } else {
+            mFramePoster = new HandlerFramePoster();
+        }
+    }
+
+    /**
+     * Adds an animation to be stepped from the next frame on, if it has not been added.
+     */
+    public void add(@NonNull FrameCallback callback) {
+        if (!mCallbacks.contains(callback)) {
+            mCallbacks.add(callback);
+        }
+        if (!mFramePosted) {
+            mFramePosted = true;
+            mFramePoster.postFrame();
+        }
+    }
+
+    /**
+     * Removes an animation, which is guaranteed not to be stepped from now on,
+     * even if it is removed while a frame is being processed.
+     */
+    public void remove(@NonNull FrameCallback callback) {
+        final int index = mCallbacks.indexOf(callback);
+        if (index < 0) return;
+
+        if (mInFrame) {
+            mCallbacks.set(index, null);
+            mHasRemovedCallbacks = true;
+        } else {
+            mCallbacks.remove(index);
+            if (mCallbacks.isEmpty() && mFramePosted) {
+                mFramePosted = false;
+                mFramePoster.removeFrame();
+            }
+        }
+    }
+
+    /** @return true if the given animation is added and not removed */
+    public boolean isRunning(@NonNull FrameCallback callback) {
+        return mCallbacks.contains(callback);
+    }
+
+    /**
+     * @return the time of the frame being processed if called during a frame, or else
+     *         the current time, in the {@link System#nanoTime()} timebase
+     */
+    public long getFrameTimeNanos() {
+        return mInFrame ? mFrameTimeNanos : System.nanoTime();
+    }
+
+    /*synthetic*/ void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        mInFrame = true;
+        mFrameTimeNanos = frameTimeNanos;
+        // The animations added during this frame will be stepped from the next one.
+        final int count = mCallbacks.size();
+        for (int i = 0; i < count; i++) {
+            final FrameCallback callback = mCallbacks.get(i);
+            // Null if removed during this frame
+            if (callback != null && !callback.doFrame(frameTimeNanos)) {
+                // Not removed by itself yet
+                if (mCallbacks.get(i) == callback) {
+                    mCallbacks.set(i, null);
+                    mHasRemovedCallbacks = true;
+                }
+            }
+        }
+        mInFrame = false;
+
+        if (mHasRemovedCallbacks) {
+            mHasRemovedCallbacks = false;
+            for (int i = mCallbacks.size() - 1; i >= 0; i--) {
+                if (mCallbacks.get(i) == null) {
+                    mCallbacks.remove(i);
+                }
+            }
+        }
+        if (!mCallbacks.isEmpty() && !mFramePosted) {
+            mFramePosted = true;
+            mFramePoster.postFrame();
+        }
+    }
+
+    private interface FramePoster {
+        void postFrame();
+
+        void removeFrame();
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class ChoreographerFramePoster implements FramePoster, Choreographer.FrameCallback {
+        final Choreographer mChoreographer = Choreographer.getInstance();
+
+        ChoreographerFramePoster() {
+        }
+
+        @Override
+        public void postFrame() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void removeFrame() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            AnimationFrameDriver.this.doFrame(frameTimeNanos);
+        }
+    }
+
+    private final class HandlerFramePoster implements FramePoster, Runnable {
+        final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        HandlerFramePoster() {
+        }
+
+        @Override
+        public void postFrame() {
+            mHandler.postDelayed(this, FALLBACK_FRAME_DELAY);
+        }
+
+        @Override
+        public void removeFrame() {
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            AnimationFrameDriver.this.doFrame(SystemClock.uptimeMillis() * 1000000L);
+        }
+    }
+}
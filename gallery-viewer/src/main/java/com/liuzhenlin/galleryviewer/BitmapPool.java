@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps that are no longer displayed, which the decoders of this library reuse
+ * through {@link android.graphics.BitmapFactory.Options#inBitmap} instead of allocating new
+ * bitmaps, to reduce the garbage collections caused by the large allocations as the user swipes
+ * through the pages of a gallery.
+ * <p>
+ * The pooled bitmaps are bucketed by their allocation sizes and evicted in least recently
+ * pooled order whenever the total size of the pool exceeds its byte budget.
+ * <p>
+ * Since a decoder can only decode into a bitmap of any dimensions as long as it is large enough
+ * since {@link Build.VERSION_CODES#KITKAT KitKat}, bitmaps are only pooled from that version on.
+ * On older platforms, {@link #put(Bitmap)} simply recycles the given bitmap.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author 刘振林
+ */
+public class BitmapPool {
+
+    /** The maximum ratio of the size of a reused bitmap to the size of the requested one */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static BitmapPool sDefault;
+
+    private long mMaxSize;
+    private long mSize;
+
+    /** Pooled bitmaps keyed by their allocation byte counts */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    /** All the pooled bitmaps, in the order in which they were put */
+    private final LinkedHashMap<Bitmap, Integer> mLruBitmaps = new LinkedHashMap<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize the maximum number of bytes that the pooled bitmaps can take up
+     */
+    public BitmapPool(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the pool shared by all the views of this library, which can take up to 1/8 of
+     * the maximum memory of the current process by default.
+     */
+    @NonNull
+    public static synchronized BitmapPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+        }
+        return sDefault;
+    }
+
+    /** Replaces the pool shared by all the views of this library. */
+    public static synchronized void setDefault(@NonNull BitmapPool pool) {
+        sDefault = pool;
+    }
+
+    /*package*/ static boolean isBitmapReuseSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /*package*/ static int getBytesPerPixel(@Nullable Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * Adds a bitmap that is no longer in use to this pool, or recycles it if it can not be
+     * reused. The caller must not touch the bitmap any more once this method is called.
+     */
+    @SuppressLint("NewApi") // Guarded by isBitmapReuseSupported()
+    public void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+
+        if (!isBitmapReuseSupported() || !bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (mLruBitmaps.containsKey(bitmap)) return;
+            if (size > mMaxSize) {
+                bitmap.recycle();
+                return;
+            }
+
+            ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                mBuckets.put(size, bucket);
+            }
+            bucket.addLast(bitmap);
+            mLruBitmaps.put(bitmap, size);
+            mSize += size;
+            mPutCount++;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    /**
+     * Obtains a pooled bitmap that has been reconfigured to the given dimensions and config,
+     * with all its pixels cleared, or {@code null} if there is no bitmap suitable for reuse.
+     */
+    @SuppressLint("NewApi") // Guarded by isBitmapReuseSupported()
+    @Nullable
+    public Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        if (!isBitmapReuseSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        final int size = width * height * getBytesPerPixel(config);
+        Bitmap bitmap = null;
+        synchronized (this) {
+            final Integer bucketSize = mBuckets.ceilingKey(size);
+            if (bucketSize != null && bucketSize <= size * MAX_SIZE_MULTIPLE) {
+                final ArrayDeque<Bitmap> bucket = mBuckets.get(bucketSize);
+                bitmap = bucket.pollLast();
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(bucketSize);
+                }
+                mLruBitmaps.remove(bitmap);
+                mSize -= bucketSize;
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+        }
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(Color.TRANSPARENT);
+            } catch (IllegalArgumentException e) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+        return bitmap;
+    }
+
+    /** Evicts the least recently pooled bitmaps until the pool fits the given size. */
+    public synchronized void trimToSize(long maxSize) {
+        final Iterator<Map.Entry<Bitmap, Integer>> it =
+                mLruBitmaps.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            final Map.Entry<Bitmap, Integer> entry = it.next();
+            final Bitmap bitmap = entry.getKey();
+            final int size = entry.getValue();
+            it.remove();
+
+            final ArrayDeque<Bitmap> bucket = mBuckets.get(size);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mSize -= size;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    /** Evicts all the pooled bitmaps. */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /** @return the total number of bytes the pooled bitmaps take up */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /** @return the byte budget of this pool */
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /** Changes the byte budget of this pool, evicting bitmaps as needed. */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /** @return the number of times {@link #get} returned a bitmap */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /** @return the number of times {@link #get} found no bitmap for reuse */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /** @return the number of bitmaps added to this pool */
+    public synchronized int getPutCount() {
+        return mPutCount;
+    }
+
+    /** @return the number of bitmaps evicted from this pool */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        final int accesses = mHitCount + mMissCount;
+        final int hitPercent = accesses == 0 ? 0 : 100 * mHitCount / accesses;
+        return "BitmapPool[size=" + mSize + ",maxSize=" + mMaxSize
+                + ",hits=" + mHitCount + ",misses=" + mMissCount + ",hitRate=" + hitPercent + "%"
+                + ",puts=" + mPutCount + ",evictions=" + mEvictionCount + "]";
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+/**
+ * A one-dimensional critically damped spring, which brings a value to its target as fast as
+ * possible without oscillating, preserving the velocity the value already has, e.g., the one
+ * of a fling or of the user's finger when it is released.
+ * <p>
+ * The spring is stepped through the closed-form solution of its equation of motion, so that
+ * the motion is exact and independent of the frame rate, and its target can be changed at any
+ * time without the motion being interrupted. It is stored in primitives only and allocates
+ * nothing, and depends on nothing of the Android framework.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class CriticallyDampedSpring {
+
+    /**
+     * The default angular frequency, with which the spring comes to rest from a still start
+     * in about 300 milliseconds.
+     */
+    public static final float DEFAULT_ANGULAR_FREQUENCY = 30f; // rad/s
+
+    private float mAngularFrequency = DEFAULT_ANGULAR_FREQUENCY;
+    private float mRestThreshold = 0.5f;
+
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+
+    private boolean mAtRest = true;
+
+    /**
+     * Sets the angular frequency of the spring, the square of which is its stiffness per
+     * unit mass. The higher it is, the faster the spring settles.
+     */
+    public void setAngularFrequency(float angularFrequency) {
+        if (angularFrequency <= 0) {
+            throw new IllegalArgumentException("Angular frequency must be positive");
+        }
+        mAngularFrequency = angularFrequency;
+    }
+
+    public float getAngularFrequency() {
+        return mAngularFrequency;
+    }
+
+    /**
+     * Sets the distance to the target within which, together with a velocity small enough
+     * to cover no more than that distance in 1/{@link #getAngularFrequency() ω} seconds,
+     * the spring is considered to be at rest, e.g., half a pixel for a translation.
+     */
+    public void setRestThreshold(float threshold) {
+        mRestThreshold = threshold;
+    }
+
+    public float getRestThreshold() {
+        return mRestThreshold;
+    }
+
+    public float getPosition() {
+        return mPosition;
+    }
+
+    /** @return the current velocity, in units per second */
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public float getTarget() {
+        return mTarget;
+    }
+
+    /** @return true if the spring has come to rest at its target */
+    public boolean isAtRest() {
+        return mAtRest;
+    }
+
+    /**
+     * Starts the spring at the given position and velocity (in units per second)
+     * towards the given target.
+     */
+    public void start(float position, float velocity, float target) {
+        mPosition = position;
+        mVelocity = velocity;
+        mTarget = target;
+        mAtRest = checkAtRest();
+    }
+
+    /**
+     * Changes the target of the spring, keeping its current position and velocity,
+     * so that a running motion continues smoothly towards the new target.
+     */
+    public void setTarget(float target) {
+        mTarget = target;
+        mAtRest = checkAtRest();
+    }
+
+    /** Puts the spring at rest at its target immediately. */
+    public void snapToTarget() {
+        mPosition = mTarget;
+        mVelocity = 0;
+        mAtRest = true;
+    }
+
+    /**
+     * Advances the spring by the given time.
+     *
+     * @param seconds the time elapsed since the last step, in seconds
+     * @return true if the spring is still in motion, or false if it has come to rest,
+     *         in which case it is snapped onto its target
+     */
+    public boolean step(float seconds) {
+        if (mAtRest) return false;
+        if (seconds <= 0) return true;
+
+        // x(t) = (x0 + (v0 + ω x0) t) e^(-ωt)
+        // v(t) = (v0 - ω (v0 + ω x0) t) e^(-ωt)
+        final float w = mAngularFrequency;
+        final float x = mPosition - mTarget;
+        final float c = mVelocity + w * x;
+        final float decay = (float) Math.exp(-w * seconds);
+        mPosition = mTarget + (x + c * seconds) * decay;
+        mVelocity = (mVelocity - w * c * seconds) * decay;
+
+        if (checkAtRest()) {
+            snapToTarget();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkAtRest() {
+        return Math.abs(mPosition - mTarget) < mRestThreshold
+                && Math.abs(mVelocity) < mRestThreshold * mAngularFrequency;
+    }
+
+    @Override
+    public String toString() {
+        return "CriticallyDampedSpring{position=" + mPosition + ", velocity=" + mVelocity
+                + ", target=" + mTarget + "}";
+    }
+}
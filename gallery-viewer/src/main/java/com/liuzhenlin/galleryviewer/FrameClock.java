@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The source of time that an {@link OverScroller} computes its animations against.
+ * <p>
+ * The {@link #getDefault() default} clock reports the nanosecond frame time of the Choreographer
+ * frame being processed, if any, so that all the animations stepped in a frame see the same
+ * time, which is the time the frame will be displayed at, with no millisecond rounding.
+ * A {@link Manual} clock can instead be advanced by hand to replay an animation frame by frame,
+ * e.g., in tests and benchmarks.
+ *
+ * @author 刘振林
+ */
+public abstract class FrameClock {
+
+    private static final FrameClock DEFAULT = new FrameClock() {
+        @Override
+        public long nanoTime() {
+            return AnimationFrameDriver.getInstance().getFrameTimeNanos();
+        }
+    };
+
+    /**
+     * @return the current animation time, in nanoseconds. It only needs to be monotonic, and
+     *         the default clock uses the {@link System#nanoTime()} timebase.
+     */
+    public abstract long nanoTime();
+
+    /**
+     * @return the clock that reports the time of the current Choreographer frame while
+     *         a frame is being processed, or else the current time
+     */
+    @NonNull
+    public static FrameClock getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * A clock that only advances when told to.
+     */
+    public static class Manual extends FrameClock {
+        private long mTimeNanos;
+
+        public Manual() {
+        }
+
+        public Manual(long timeNanos) {
+            mTimeNanos = timeNanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            return mTimeNanos;
+        }
+
+        public void setTime(long timeNanos) {
+            mTimeNanos = timeNanos;
+        }
+
+        /** Advances the time by the given nanoseconds. */
+        public void advance(long nanos) {
+            mTimeNanos += nanos;
+        }
+
+        /** Advances the time by the given (fractional) milliseconds, e.g., one frame. */
+        public void advanceMillis(float millis) {
+            mTimeNanos += (long) (millis * 1000000f);
+        }
+    }
+}
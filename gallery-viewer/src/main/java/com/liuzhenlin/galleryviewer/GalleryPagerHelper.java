@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.os.Build;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The behaviors shared by the pagers of {@link GestureImageView}s, whether they are built on
+ * a {@link GalleryViewPager ViewPager} or a {@link GalleryRecyclerPager RecyclerView}: deciding
+ * whether a drag belongs to the image of the current page or to the pager, overscrolling the
+ * image of a newly selected page, and prefetching the images of the pages about to be swiped to.
+ * <p>
+ * The pagers report the image pages that are attached to or detached from them, and the one
+ * that is selected, through which the image of the current page is cached for the touch events
+ * to be handled without looking it up, and the decodes of the pages are ranked and released.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class GalleryPagerHelper {
+
+    /** The maximum number of pages to prefetch the images of, for the fastest flings */
+    private static final int MAX_PREFETCH_PAGE_COUNT = 4;
+
+    /**
+     * Tracks the touches and their velocity, from which to decide whether to intercept them.
+     * Its velocity tracking is shared with the image pages, so that it is done once per gesture.
+     */
+    /*package*/ final GestureRecognizer mGestureRecognizer;
+
+    /*package*/ final int mTouchSlop;
+
+    /**
+     * The minimum velocity to fling the pager when the image in the current page is magnified
+     *
+     * @see GestureImageView
+     */
+    private final float mMinimumFlingVelocityOnCurrImageMagnified; // 400 dp/s
+
+    /*package*/ final float mMaximumFlingVelocity;
+
+    /*synthetic*/ boolean mImageOverScrollEnabled;
+
+    /**
+     * Whether the images of the unselected pages keep the zoom and pan the user has applied
+     * to them, rather than being reset to their initial scale and translation
+     */
+    /*package*/ boolean mImageViewportRetained;
+
+    private final ImagePrefetcher mImagePrefetcher = new ImagePrefetcher();
+
+    /** The image of the selected page, or {@code null} if the selected page is not an image */
+    /*package*/ GestureImageView mCurrentImage;
+    private int mCurrentImagePosition = -1;
+
+    private List<GalleryViewPager.OnImagePageChangeListener> mOnImagePageChangeListeners;
+
+    /*package*/ GalleryPagerHelper(@NonNull Context context) {
+        final float dp = context.getResources().getDisplayMetrics().density;
+        mGestureRecognizer = new GestureRecognizer(context, null);
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        mMinimumFlingVelocityOnCurrImageMagnified = 400f * dp;
+        mMaximumFlingVelocity = ViewConfiguration.getMaximumFlingVelocity() * dp;
+    }
+
+    /*package*/ void addOnImagePageChangeListener(
+            @NonNull GalleryViewPager.OnImagePageChangeListener listener) {
+        if (mOnImagePageChangeListeners == null) {
+            mOnImagePageChangeListeners = new ArrayList<>(1);
+        }
+        mOnImagePageChangeListeners.add(listener);
+    }
+
+    /*package*/ void removeOnImagePageChangeListener(
+            @NonNull GalleryViewPager.OnImagePageChangeListener listener) {
+        if (mOnImagePageChangeListeners != null) {
+            mOnImagePageChangeListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Called by the pager when an image page is added to it. The page shares the velocity
+     * tracking of the pager and decodes its image at the priority of an unselected page.
+     */
+    /*package*/ void onImagePageAttached(@NonNull GestureImageView image) {
+        image.mGestureRecognizer.setVelocitySource(mGestureRecognizer);
+        image.setDecodePriority(ImageDecodeExecutor.PRIORITY_NEIGHBOR);
+        if (mOnImagePageChangeListeners != null) {
+            for (int i = 0; i < mOnImagePageChangeListeners.size(); i++) {
+                mOnImagePageChangeListeners.get(i).onImagePageAttached(image);
+            }
+        }
+    }
+
+    /**
+     * Called by the pager when an image page is removed from it. The page is unselected first
+     * if it is the selected one, then it stops sharing the velocity tracking of the pager and
+     * hands its bitmaps back to the bitmap pool, for the pages added later to decode their images
+     * into.
+     */
+    /*package*/ void onImagePageDetached(@NonNull GestureImageView image) {
+        if (image == mCurrentImage) {
+            setCurrentImage(null, -1);
+        }
+        image.mGestureRecognizer.setVelocitySource(null);
+        image.releaseImageBitmaps();
+        if (mOnImagePageChangeListeners != null) {
+            for (int i = 0; i < mOnImagePageChangeListeners.size(); i++) {
+                mOnImagePageChangeListeners.get(i).onImagePageDetached(image);
+            }
+        }
+    }
+
+    /**
+     * Called by the pager when a page is selected, or when the view of the selected page changes
+     * as the data set of its adapter changes, to update the cached image of the current page.
+     * The image of the last selected page is reset to its initial scale and translation, unless
+     * the viewports of the images are retained, and the image of the new one is decoded before
+     * the ones of its neighbors.
+     *
+     * @param image    the image of the selected page, or {@code null} if the selected page
+     *                 is not an image or is not instantiated yet
+     * @param position the adapter position of the selected page
+     */
+    /*package*/ void setCurrentImage(@Nullable GestureImageView image, int position) {
+        final GestureImageView lastImage = mCurrentImage;
+        final int lastPosition = mCurrentImagePosition;
+        mCurrentImagePosition = position;
+        if (image == lastImage) return;
+        mCurrentImage = image;
+
+        if (lastImage != null) {
+            if (!mImageViewportRetained) {
+                lastImage.reinitializeImage();
+            }
+            lastImage.setDecodePriority(ImageDecodeExecutor.PRIORITY_NEIGHBOR);
+            if (mOnImagePageChangeListeners != null) {
+                for (int i = 0; i < mOnImagePageChangeListeners.size(); i++) {
+                    mOnImagePageChangeListeners.get(i)
+                            .onImagePageUnselected(lastImage, lastPosition);
+                }
+            }
+        }
+        if (image != null) {
+            image.setDecodePriority(ImageDecodeExecutor.PRIORITY_VISIBLE);
+            if (mOnImagePageChangeListeners != null) {
+                for (int i = 0; i < mOnImagePageChangeListeners.size(); i++) {
+                    mOnImagePageChangeListeners.get(i).onImagePageSelected(image, position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decides whether the pager should intercept a single-pointer move over the image of its
+     * current page: only a horizontal drag beyond the touch slop will be intercepted, and if
+     * the image is magnified, only a fast enough one towards a page while the image is scrolled
+     * to its edge on that side.
+     */
+    /*package*/ boolean shouldInterceptImageDrag(
+            @NonNull GestureImageView image, @NonNull MotionEvent ev) {
+        if (ev.getPointerCount() != 1) {
+            return false;
+        }
+
+        final float absDx = Math.abs(ev.getX() - mGestureRecognizer.getDownX());
+        boolean intercept = absDx > mTouchSlop
+                && absDx > Math.abs(ev.getY() - mGestureRecognizer.getDownY());
+        if (!intercept) return false;
+
+        RectF imgBounds = image.mImageBounds;
+        image.getImageBounds(imgBounds);
+        if (imgBounds.isEmpty()) return true;
+
+        final int imgAvailableWidth =
+                image.getWidth() - image.getPaddingLeft() - image.getPaddingRight();
+        if (imgBounds.width() > imgAvailableWidth) {
+            // Only now that the slop is exceeded is the velocity needed. It is computed
+            // with the same maximum as by the image and in onPageSelected(), for them
+            // to reuse it as long as no more moves are tracked.
+            mGestureRecognizer.computeVelocity(mMaximumFlingVelocity);
+            final float vx = mGestureRecognizer.getXVelocity();
+
+            // Account for very small floating-point error (+/- 0.01f)
+            final boolean canScrollPageRight = imgBounds.left >= -0.01f
+                    && vx >= mMinimumFlingVelocityOnCurrImageMagnified;
+            final boolean canScrollPageLeft = imgBounds.right <= imgAvailableWidth + 0.01f
+                    && vx <= -mMinimumFlingVelocityOnCurrImageMagnified;
+
+            intercept = canScrollPageLeft || canScrollPageRight;
+        }
+        return intercept;
+    }
+
+    /**
+     * @param scrollPageLeft whether the pages were scrolled left to the selected page
+     * @return the speed at which the user flung towards the selected page, or 0 if
+     *         the page was selected programmatically
+     */
+    /*package*/ float computeSpeedTowardsSelectedPage(boolean scrollPageLeft) {
+        if (mGestureRecognizer.isTracking()) {
+            mGestureRecognizer.computeVelocity(mMaximumFlingVelocity);
+            final float vx = mGestureRecognizer.getXVelocity();
+            if (vx < 0 && scrollPageLeft || vx > 0 && !scrollPageLeft) {
+                return Math.abs(vx);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Overscrolls the image of the newly selected page in the direction in which the pages were
+     * scrolled and springs it back, faster for faster flings, once the image is laid out.
+     */
+    /*package*/ void startImageOverScrollOnPageSelected(
+            @NonNull GestureImageView image, boolean scrollPageLeft, float speed) {
+        if (!mImageOverScrollEnabled) return;
+
+        final float dx =
+                scrollPageLeft ? -image.mImageOverTranslation : image.mImageOverTranslation;
+        final float baseDuration = GestureImageView.DEFAULT_DURATION_TRANSFORM_IMAGE / 2f;
+        final float duration;
+        if (mGestureRecognizer.isTracking()) {
+            duration = baseDuration * (1 + (1 - speed / mMaximumFlingVelocity));
+        } else {
+            duration = baseDuration * 2;
+        }
+        startImageOverScrollAndSpringBack(image, dx, 0, (int) duration);
+    }
+
+    private void startImageOverScrollAndSpringBack(
+            GestureImageView image, float dx, float dy, int duration) {
+        if (isLayoutValid(image)) {
+            image.startImageOverScrollAndSpringBack(dx, dy, duration);
+        } else {
+            image.getViewTreeObserver().addOnGlobalLayoutListener(
+                    new ViewTreeObserver.OnGlobalLayoutListener() {
+                        @Override
+                        public void onGlobalLayout() {
+                            if (isLayoutValid(image)) {
+                                if (mImageOverScrollEnabled) {
+                                    image.startImageOverScrollAndSpringBack(dx, dy, duration);
+                                }
+                                image.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+                            }
+                        }
+                    });
+        }
+    }
+
+    /*synthetic*/ static boolean isLayoutValid(GestureImageView view) {
+        return isLaidOut(view) && !view.isLayoutRequested();
+    }
+
+    private static boolean isLaidOut(GestureImageView view) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return view.isLaidOut();
+        }
+        return ViewCompat.isAttachedToWindow(view)
+                && (view.getWidth() != 0 || view.getHeight() != 0);
+    }
+
+    /**
+     * Prefetches the images of the pages beyond the laid out ones in the direction of travel,
+     * more pages for faster flings, and cancels the prefetches of the other pages.
+     *
+     * @param offscreenPageCount the number of the pages laid out on each side of the selected one
+     * @param forward            whether the pages after the selected one are to be prefetched
+     *                           rather than the ones before it
+     * @param speed              the speed at which the user flung towards the selected page
+     * @param viewWidth          the width of the area the pages are laid out in, for which
+     *                           the images are prefetched unless the current page is laid out
+     * @param viewHeight         the height of the area the pages are laid out in
+     */
+    /*package*/ void prefetchImages(
+            @NonNull GalleryViewPager.ImageSourceProvider provider, int itemCount, int position,
+            int offscreenPageCount, boolean forward, float speed, int viewWidth, int viewHeight) {
+        // The pages share the size of the current one, which can differ from that of the pager,
+        // e.g., by the page width of the adapter or the padding of the image views.
+        final GestureImageView image = mCurrentImage;
+        if (image != null && (image.getWidth() != 0 || image.getHeight() != 0)) {
+            viewWidth = image.getDrawingWidth();
+            viewHeight = image.getDrawingHeight();
+        }
+
+        final int pageCount = 1 + Math.round((MAX_PREFETCH_PAGE_COUNT - 1)
+                * Math.min(speed / mMaximumFlingVelocity, 1f));
+        final int step = forward ? 1 : -1;
+        final int first = position + step * (offscreenPageCount + 1);
+        final int last = position + step * (offscreenPageCount + pageCount);
+        mImagePrefetcher.cancelOutside(Math.min(first, last), Math.max(first, last));
+
+        for (int i = first; i >= 0 && i < itemCount; i += step) {
+            final ImageSource source = provider.getImageSourceAt(i);
+            if (source != null) {
+                mImagePrefetcher.prefetch(i, source, viewWidth, viewHeight);
+            }
+            if (i == last) break;
+        }
+    }
+
+    /** Cancels all the pending prefetches, e.g., when the adapter of the pager is changed. */
+    /*package*/ void cancelPrefetches() {
+        mImagePrefetcher.cancelAll();
+    }
+}
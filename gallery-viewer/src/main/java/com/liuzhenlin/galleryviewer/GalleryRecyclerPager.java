@@ -0,0 +1,623 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.customview.view.AbsSavedState;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.PagerSnapHelper;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A horizontal pager of {@link GestureImageView}s built on a {@link RecyclerView}, which, unlike
+ * {@link GalleryViewPager}, does not need one view per item: only a small pool of views is
+ * created, for the pages on screen and a few more, and they are rebound to other items as
+ * the user swipes through the gallery, so galleries of any number of items can be shown.
+ * <p>
+ * The item views of the adapter should be {@link GestureImageView}s matching the size of this
+ * view. A view is {@link GestureImageView#resetForRecycle() reset} once it is recycled, so
+ * the adapter only has to set the image of the new item for it in
+ * {@link Adapter#onBindViewHolder(ViewHolder, int)}, preferably through
+ * {@link GestureImageView#setImageSource(ImageSource)}. If the adapter implements
+ * {@link GalleryViewPager.ImageSourceProvider}, the images of the pages that are about to be
+ * swiped to will be prefetched as well.
+ * <p>
+ * If the zoom and pan of the pages are retained, through
+ * {@link #setImageViewportRetained(boolean)}, and the adapter has stable ids, they are kept by
+ * the item ids for the pages that are recycled as well, and restored when the items are bound
+ * again, also across configuration changes.
+ *
+ * @author 刘振林
+ */
+public class GalleryRecyclerPager extends RecyclerView {
+    private static final String TAG = "GalleryRecyclerPager";
+
+    protected final int mTouchSlop;
+
+    protected final float mMaximumFlingVelocity;
+
+    /*synthetic*/ final GalleryPagerHelper mPagerHelper;
+
+    /**
+     * Tracks the touches and their velocity, from which to decide whether to intercept them.
+     * Its velocity tracking is shared with the image pages, so that it is done once per gesture.
+     */
+    /*synthetic*/ final GestureRecognizer mGestureRecognizer;
+
+    private final LinearLayoutManager mLayoutManager;
+    private final PageSnapHelper mSnapHelper = new PageSnapHelper();
+
+    /** Adapter position of the selected page, or {@link #NO_POSITION} if none is selected */
+    private int mCurrentItem = NO_POSITION;
+
+    /**
+     * Whether the adapter position of the selected page is to be looked up again after
+     * the next layout, as the data set of the adapter has been changed.
+     */
+    /*synthetic*/ boolean mCurrentItemStale;
+
+    /**
+     * Adapter position of the selected page whose image is to be overscrolled as soon as its view
+     * is attached, as it was selected before it was laid out
+     */
+    private int mPendingImageOverScrollPosition = NO_POSITION;
+    private boolean mPendingImageOverScrollLeft;
+
+    private List<OnPageChangeListener> mOnPageChangeListeners;
+
+    /** The viewport states of the images of the recycled pages, keyed by the item ids */
+    /*synthetic*/ final ViewportStateCache mViewportStates = new ViewportStateCache();
+
+    private final AdapterDataObserver mAdapterDataObserver = new AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            mCurrentItemStale = true;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mCurrentItemStale = true;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mCurrentItemStale = true;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mCurrentItemStale = true;
+        }
+    };
+
+    private final RecyclerListener mRecyclerListener = holder -> {
+        if (holder.itemView instanceof GestureImageView) {
+            final GestureImageView image = (GestureImageView) holder.itemView;
+            if (shouldRetainImageViewports()) {
+                mViewportStates.put(holder.getItemId(), image.getViewportState());
+            }
+            image.resetForRecycle();
+        }
+    };
+
+    public GalleryRecyclerPager(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public GalleryRecyclerPager(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mPagerHelper = new GalleryPagerHelper(context);
+        mGestureRecognizer = mPagerHelper.mGestureRecognizer;
+        mTouchSlop = mPagerHelper.mTouchSlop;
+        mMaximumFlingVelocity = mPagerHelper.mMaximumFlingVelocity;
+
+        TypedArray ta = context.obtainStyledAttributes(
+                attrs, R.styleable.GalleryRecyclerPager, 0, 0);
+        setImageOverScrollEnabled(
+                ta.getBoolean(R.styleable.GalleryRecyclerPager_imageOverScrollEnabled, true));
+        setImageViewportRetained(
+                ta.getBoolean(R.styleable.GalleryRecyclerPager_imageViewportRetained, false));
+        ta.recycle();
+
+        mLayoutManager = new LinearLayoutManager(context, HORIZONTAL, false);
+        super.setLayoutManager(mLayoutManager);
+        setHasFixedSize(true);
+        mSnapHelper.attachToRecyclerView(this);
+        addRecyclerListener(mRecyclerListener);
+    }
+
+    /**
+     * The pages are always laid out horizontally by this view itself.
+     *
+     * @throws UnsupportedOperationException if another layout manager is set
+     */
+    @Override
+    public void setLayoutManager(@Nullable LayoutManager layout) {
+        // Null while the super constructor is running
+        //noinspection ConstantConditions
+        if (mLayoutManager != null && layout != mLayoutManager) {
+            throw new UnsupportedOperationException(
+                    "GalleryRecyclerPager does not support changing its layout manager");
+        }
+        super.setLayoutManager(layout);
+    }
+
+    /**
+     * Returns whether a child {@link GestureImageView} can start to overscroll
+     * as it becomes the selected page.
+     */
+    public boolean isImageOverScrollEnabled() {
+        return mPagerHelper.mImageOverScrollEnabled;
+    }
+
+    /**
+     * Sets whether to enable the overscroll feature for a child {@link GestureImageView}
+     * to overscroll and spring itself back when it becomes the selected page.
+     */
+    public void setImageOverScrollEnabled(boolean enabled) {
+        mPagerHelper.mImageOverScrollEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the {@link GestureImageView} pages keep the zoom and pan the user has
+     * applied to them when they are unselected.
+     */
+    public boolean isImageViewportRetained() {
+        return mPagerHelper.mImageViewportRetained;
+    }
+
+    /**
+     * Sets whether the {@link GestureImageView} pages keep the zoom and pan the user has applied
+     * to them when they are unselected, instead of being reset to their initial scale and
+     * position. If the adapter has stable ids, they are kept for the pages that are recycled
+     * as well, to be restored when the same items are bound again.
+     */
+    public void setImageViewportRetained(boolean retained) {
+        mPagerHelper.mImageViewportRetained = retained;
+        if (!retained) {
+            mViewportStates.clear();
+        }
+    }
+
+    /*synthetic*/ boolean shouldRetainImageViewports() {
+        final Adapter<?> adapter = getAdapter();
+        return mPagerHelper.mImageViewportRetained && adapter != null && adapter.hasStableIds();
+    }
+
+    /**
+     * @return the adapter position of the selected page, or {@link #NO_POSITION} if there is
+     *         no page or none has been laid out yet
+     */
+    public int getCurrentItem() {
+        return mCurrentItem;
+    }
+
+    /**
+     * Selects the page at the given adapter position, smoothly scrolling to it.
+     */
+    public void setCurrentItem(int item) {
+        setCurrentItem(item, true);
+    }
+
+    /**
+     * Selects the page at the given adapter position.
+     *
+     * @param smoothScroll true to smoothly scroll to the new page, false to jump to it immediately
+     */
+    public void setCurrentItem(int item, boolean smoothScroll) {
+        final Adapter<?> adapter = getAdapter();
+        if (adapter == null || adapter.getItemCount() == 0) return;
+
+        item = Math.max(0, Math.min(item, adapter.getItemCount() - 1));
+        if (smoothScroll) {
+            smoothScrollToPosition(item);
+        } else {
+            scrollToPosition(item);
+        }
+        onPageSelected(item, true);
+    }
+
+    public void addOnPageChangeListener(@NonNull OnPageChangeListener listener) {
+        if (mOnPageChangeListeners == null) {
+            mOnPageChangeListeners = new ArrayList<>(1);
+        }
+        mOnPageChangeListeners.add(listener);
+    }
+
+    public void removeOnPageChangeListener(@NonNull OnPageChangeListener listener) {
+        if (mOnPageChangeListeners != null) {
+            mOnPageChangeListeners.remove(listener);
+        }
+    }
+
+    public void clearOnPageChangeListeners() {
+        if (mOnPageChangeListeners != null) {
+            mOnPageChangeListeners.clear();
+        }
+    }
+
+    /**
+     * Adds a listener that will be notified as the {@link GestureImageView} pages are attached to
+     * or detached from this view, and as they are selected or unselected. A page is attached when
+     * it is scrolled into this view, and detached when it is scrolled out, before it may be
+     * recycled.
+     */
+    public void addOnImagePageChangeListener(
+            @NonNull GalleryViewPager.OnImagePageChangeListener listener) {
+        mPagerHelper.addOnImagePageChangeListener(listener);
+    }
+
+    public void removeOnImagePageChangeListener(
+            @NonNull GalleryViewPager.OnImagePageChangeListener listener) {
+        mPagerHelper.removeOnImagePageChangeListener(listener);
+    }
+
+    /**
+     * Makes the page at the given adapter position the selected one.
+     *
+     * @param overScrollImage whether to overscroll the image of the page, which is not done
+     *                        for the page selected on the first layout or after a data set change
+     */
+    /*synthetic*/ void onPageSelected(int position, boolean overScrollImage) {
+        final int lastPosition = mCurrentItem;
+        if (position == lastPosition) return;
+        mCurrentItem = position;
+        mPendingImageOverScrollPosition = NO_POSITION;
+
+        // Null if the page is farther than the adjacent ones and has not been laid out yet,
+        // in which case it will be cached once its view is attached.
+        final GestureImageView image = findImageAt(position);
+        mPagerHelper.setCurrentImage(image, position);
+
+        if (overScrollImage && lastPosition != NO_POSITION) {
+            boolean scrollPageLeft = position > lastPosition;
+            float speed = mPagerHelper.computeSpeedTowardsSelectedPage(scrollPageLeft);
+
+            if (image != null) {
+                mPagerHelper.startImageOverScrollOnPageSelected(image, scrollPageLeft, speed);
+            } else {
+                mPendingImageOverScrollPosition = position;
+                mPendingImageOverScrollLeft = scrollPageLeft;
+            }
+
+            prefetchImages(position, scrollPageLeft, speed);
+        }
+
+        if (mOnPageChangeListeners != null) {
+            for (int i = mOnPageChangeListeners.size() - 1; i >= 0; i--) {
+                mOnPageChangeListeners.get(i).onPageSelected(position);
+            }
+        }
+    }
+
+    /**
+     * @return the image view of the page at the given adapter position if it is laid out,
+     *         or {@code null} otherwise
+     */
+    @Nullable
+    /*synthetic*/ GestureImageView findImageAt(int position) {
+        if (position == NO_POSITION) return null;
+        final ViewHolder holder = findViewHolderForAdapterPosition(position);
+        if (holder != null && holder.itemView instanceof GestureImageView) {
+            return (GestureImageView) holder.itemView;
+        }
+        return null;
+    }
+
+    /**
+     * Prefetches the images of the pages next to the selected one in the direction of travel,
+     * more pages for faster flings, and cancels the prefetches of the other pages.
+     *
+     * @param forward whether the pages after the selected one are to be prefetched rather than
+     *                the ones before it
+     * @param speed   the speed at which the user flung towards the selected page
+     */
+    private void prefetchImages(int position, boolean forward, float speed) {
+        final Adapter<?> adapter = getAdapter();
+        if (!(adapter instanceof GalleryViewPager.ImageSourceProvider)) return;
+
+        final int viewWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int viewHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        // Only the selected page stays laid out once the scroll to it ends.
+        mPagerHelper.prefetchImages((GalleryViewPager.ImageSourceProvider) adapter,
+                adapter.getItemCount(), position, 0, forward, speed, viewWidth, viewHeight);
+    }
+
+    @Override
+    public void setAdapter(@Nullable Adapter adapter) {
+        onAdapterChanging(adapter);
+        super.setAdapter(adapter);
+    }
+
+    @Override
+    public void swapAdapter(@Nullable Adapter adapter, boolean removeAndRecycleExistingViews) {
+        onAdapterChanging(adapter);
+        super.swapAdapter(adapter, removeAndRecycleExistingViews);
+    }
+
+    private void onAdapterChanging(Adapter<?> adapter) {
+        final Adapter<?> oldAdapter = getAdapter();
+        if (oldAdapter != null) {
+            oldAdapter.unregisterAdapterDataObserver(mAdapterDataObserver);
+        }
+        if (adapter != null) {
+            adapter.registerAdapterDataObserver(mAdapterDataObserver);
+        }
+        mPagerHelper.cancelPrefetches();
+        mViewportStates.clear();
+        mCurrentItem = NO_POSITION;
+        mCurrentItemStale = false;
+        mPendingImageOverScrollPosition = NO_POSITION;
+    }
+
+    @Override
+    public void onChildAttachedToWindow(@NonNull View child) {
+        super.onChildAttachedToWindow(child);
+        if (child instanceof GestureImageView) {
+            final GestureImageView image = (GestureImageView) child;
+            if (shouldRetainImageViewports()) {
+                // Handed over to the page, which keeps it while it is not recycled
+                final ImageViewportState viewportState =
+                        mViewportStates.remove(getChildItemId(child));
+                if (viewportState != null) {
+                    image.setViewportState(viewportState);
+                }
+            }
+            mPagerHelper.onImagePageAttached(image);
+
+            final int position = getChildAdapterPosition(child);
+            if (position != NO_POSITION && position == mCurrentItem) {
+                mPagerHelper.setCurrentImage(image, position);
+                if (position == mPendingImageOverScrollPosition) {
+                    mPendingImageOverScrollPosition = NO_POSITION;
+                    mPagerHelper.startImageOverScrollOnPageSelected(
+                            image, mPendingImageOverScrollLeft, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending decodes for an image page that has been scrolled out of this view and
+     * hands its bitmaps back to the bitmap pool, for the pages bound later to decode their images
+     * into. The page will decode its image again if it is scrolled back before it is recycled.
+     * The page stops sharing the velocity tracking of this view too.
+     */
+    @Override
+    public void onChildDetachedFromWindow(@NonNull View child) {
+        super.onChildDetachedFromWindow(child);
+        if (child instanceof GestureImageView) {
+            mPagerHelper.onImagePageDetached((GestureImageView) child);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPagerHelper.cancelPrefetches();
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mCurrentItem == NO_POSITION || mCurrentItemStale) {
+            mCurrentItemStale = false;
+            final int position = findSnapPosition();
+            if (position != NO_POSITION) {
+                onPageSelected(position, false);
+            } else if (mLayoutManager.getItemCount() == 0) {
+                mCurrentItem = NO_POSITION;
+            }
+            // The view of the current page may have been replaced
+            mPagerHelper.setCurrentImage(findImageAt(mCurrentItem), mCurrentItem);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final Parcelable superState = super.onSaveInstanceState();
+        if (!shouldRetainImageViewports()) {
+            return superState;
+        }
+
+        // Save the states of the pages laid out along with the ones of the recycled pages,
+        // without keeping them, as the pages keep their own states.
+        final int childCount = getChildCount();
+        final long[] childIds = new long[childCount];
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            childIds[i] = getChildItemId(child);
+            if (child instanceof GestureImageView) {
+                mViewportStates.put(childIds[i], ((GestureImageView) child).getViewportState());
+            }
+        }
+        final Bundle viewportStates = mViewportStates.saveState();
+        for (long childId : childIds) {
+            mViewportStates.remove(childId);
+        }
+        if (viewportStates == null) {
+            return superState;
+        }
+        SavedState ss = new SavedState(superState);
+        ss.viewportStates = viewportStates;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        mViewportStates.restoreState(ss.viewportStates);
+    }
+
+    @Override
+    public void onScrollStateChanged(int state) {
+        super.onScrollStateChanged(state);
+        // A page is selected when it is flung to, or else, when the user releases the pages
+        // without a fling, as the closest one to be snapped to.
+        if (state == SCROLL_STATE_IDLE) {
+            final int position = findSnapPosition();
+            if (position != NO_POSITION) {
+                onPageSelected(position, true);
+            }
+        }
+    }
+
+    /** @return the adapter position of the page closest to be snapped to */
+    private int findSnapPosition() {
+        final View snapView = mSnapHelper.findSnapView(mLayoutManager);
+        return snapView == null ? NO_POSITION : getChildAdapterPosition(snapView);
+    }
+
+    /**
+     * Flings with the velocity tracked by {@link #mGestureRecognizer} during a drag, rather than
+     * the one of the super class, which misses the moves handled by the image of the current page
+     * before they are intercepted.
+     */
+    @Override
+    public boolean fling(int velocityX, int velocityY) {
+        if (mGestureRecognizer.isTracking()) {
+            mGestureRecognizer.computeVelocity(mMaximumFlingVelocity);
+            // Scroll velocity is the opposite of the one of the pointer
+            velocityX = -Math.round(mGestureRecognizer.getXVelocity());
+        }
+        return super.fling(velocityX, velocityY);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        final int actionMasked = ev.getActionMasked();
+
+        mGestureRecognizer.onTouchEvent(ev);
+
+        switch (actionMasked) {
+            case MotionEvent.ACTION_MOVE:
+                final int activePointerId = mGestureRecognizer.getActivePointerId();
+                if (ev.findPointerIndex(activePointerId) < 0) {
+                    Log.e(TAG, "Error processing scroll; pointer index for id "
+                            + activePointerId + " not found. Did any MotionEvents get skipped?");
+                    return false;
+                }
+
+                GestureImageView image = mPagerHelper.mCurrentImage;
+                if (image != null) {
+                    final boolean intercept = mPagerHelper.shouldInterceptImageDrag(image, ev);
+                    if (intercept) {
+                        ViewParent parent = getParent();
+                        if (parent != null) {
+                            parent.requestDisallowInterceptTouchEvent(true);
+                        }
+                    }
+                    return intercept;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mGestureRecognizer.clear();
+                break;
+        }
+        return super.onInterceptTouchEvent(ev);
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        final int actionMasked = ev.getActionMasked();
+
+        mGestureRecognizer.onTouchEvent(ev);
+
+        final boolean handled = super.onTouchEvent(ev);
+        if (actionMasked == MotionEvent.ACTION_UP || actionMasked == MotionEvent.ACTION_CANCEL) {
+            mGestureRecognizer.clear();
+        }
+        return handled;
+    }
+
+    /**
+     * Selects the page flung to as soon as the fling starts, as {@link GalleryViewPager} does
+     * when the user releases the pages, so that its image is overscrolled while it slides in.
+     */
+    private final class PageSnapHelper extends PagerSnapHelper {
+        @Override
+        public int findTargetSnapPosition(
+                LayoutManager layoutManager, int velocityX, int velocityY) {
+            final int position = super.findTargetSnapPosition(layoutManager, velocityX, velocityY);
+            if (position != NO_POSITION) {
+                onPageSelected(position, true);
+            }
+            return position;
+        }
+    }
+
+    /*package*/ static class SavedState extends AbsSavedState {
+        Bundle viewportStates;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel in, ClassLoader loader) {
+            super(in, loader);
+            viewportStates = in.readBundle(
+                    loader == null ? GalleryRecyclerPager.class.getClassLoader() : loader);
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeBundle(viewportStates);
+        }
+
+        public static final Creator<SavedState> CREATOR = new ClassLoaderCreator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in, ClassLoader loader) {
+                return new SavedState(in, loader);
+            }
+
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in, null);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * Callback interface for responding to changing state of the selected page.
+     */
+    public interface OnPageChangeListener {
+        /**
+         * This method will be invoked when a new page becomes selected, as the user flings to
+         * or releases the pages near it, or as it is set through {@link #setCurrentItem(int)}.
+         *
+         * @param position the adapter position of the new selected page
+         */
+        void onPageSelected(int position);
+    }
+}
@@ -1,22 +1,22 @@
 package com.liuzhenlin.galleryviewer;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
-import android.graphics.RectF;
+import android.database.DataSetObserver;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
-import android.view.ViewConfiguration;
+import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewParent;
-import android.view.ViewTreeObserver;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.view.ViewCompat;
-import androidx.customview.widget.ViewDragHelper;
 import androidx.viewpager.widget.PagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
@@ -28,110 +28,122 @@ public class GalleryViewPager extends ViewPager {
 
     protected final int mTouchSlop;
 
-    /*synthetic*/ int mActivePointerId = ViewDragHelper.INVALID_POINTER;
-    private float mDownX;
-    private float mDownY;
+    protected final float mMaximumFlingVelocity;
 
-    /*synthetic*/ VelocityTracker mVelocityTracker;
+    /*synthetic*/ final GalleryPagerHelper mPagerHelper;
 
     /**
-     * The minimum velocity to fling this view when the image in the current page is magnified
-     *
-     * @see GestureImageView
+     * Tracks the touches and their velocity, from which to decide whether to intercept them.
+     * Its velocity tracking is shared with the image pages, so that it is done once per gesture.
      */
-    private final float mMinimumFlingVelocityOnCurrImageMagnified; // 400 dp/s
-
-    protected final float mMaximumFlingVelocity;
+    /*synthetic*/ final GestureRecognizer mGestureRecognizer;
 
     /** Position of the last selected page */
     /*synthetic*/ int mLastSelectedPageIndex;
     /*synthetic*/ boolean mFirstLayout;
-    /*synthetic*/ boolean mImageOverScrollEnabled;
+
+    /**
+     * Chooses the offscreen page limit from a memory budget, or {@code null} if the limit is
+     * fixed as set through {@link #setOffscreenPageLimit(int)}
+     */
+    /*synthetic*/ OffscreenPageBudget mOffscreenPageBudget;
+
+    private final Runnable mUpdateOffscreenPageLimitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateOffscreenPageLimit();
+        }
+    };
+
+    /**
+     * Cuts the offscreen page budget as the system signals memory pressure. Created only since
+     * API 14, where component callbacks can be registered.
+     */
+    private ComponentCallbacks2 mMemoryPressureCallbacks;
+    private boolean mMemoryPressureCallbacksRegistered;
 
     private final OnPageChangeListener mInternalOnPageChangeListener = new SimpleOnPageChangeListener() {
         @Override
         public void onPageSelected(int position) {
-            if (!mFirstLayout && mLastSelectedPageIndex != position && mItemCallback != null) {
-                Object lastItem = mItemCallback.getItemAt(mLastSelectedPageIndex);
-                if (lastItem instanceof GestureImageView) {
-                    ((GestureImageView) lastItem).reinitializeImage();
+            updateCurrentImage();
+            if (!mFirstLayout && mLastSelectedPageIndex != position) {
+                boolean scrollPageLeft = position > mLastSelectedPageIndex;
+                float speed = mPagerHelper.computeSpeedTowardsSelectedPage(scrollPageLeft);
+
+                GestureImageView image = mPagerHelper.mCurrentImage;
+                if (image != null) {
+                    mPagerHelper.startImageOverScrollOnPageSelected(image, scrollPageLeft, speed);
                 }
 
-                if (mImageOverScrollEnabled) {
-                    Object currentItem = mItemCallback.getItemAt(position);
-                    if (currentItem instanceof GestureImageView) {
-                        GestureImageView image = (GestureImageView) currentItem;
-                        boolean scrollPageLeft = position > mLastSelectedPageIndex;
-                        float dx = scrollPageLeft ?
-                                -image.mImageOverTranslation : image.mImageOverTranslation;
-                        float baseDuration = GestureImageView.DEFAULT_DURATION_TRANSFORM_IMAGE / 2f;
-                        float duration;
-                        if (mVelocityTracker != null) {
-                            mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
-                            float vx = mVelocityTracker.getXVelocity(mActivePointerId);
-                            if (vx > 0 && scrollPageLeft || vx < 0 && !scrollPageLeft) {
-                                vx = 0;
-                            }
-                            duration = baseDuration * (1 + (1 - Math.abs(vx) / mMaximumFlingVelocity));
-                        } else {
-                            duration = baseDuration * 2;
-                        }
-                        startImageOverScrollAndSpringBack(image, dx, 0, (int) duration);
-                    }
-                }
+                prefetchImages(position, scrollPageLeft, speed);
             }
             mLastSelectedPageIndex = position;
-        }
-
-        void startImageOverScrollAndSpringBack(
-                GestureImageView image, float dx, float dy, int duration) {
-            if (isLayoutValid(image)) {
-                image.startImageOverScrollAndSpringBack(dx, dy, duration);
-            } else {
-                image.getViewTreeObserver().addOnGlobalLayoutListener(
-                        new ViewTreeObserver.OnGlobalLayoutListener() {
-                            @Override
-                            public void onGlobalLayout() {
-                                if (isLayoutValid(image)) {
-                                    if (mImageOverScrollEnabled) {
-                                        image.startImageOverScrollAndSpringBack(dx, dy, duration);
-                                    }
-                                    image.getViewTreeObserver().removeGlobalOnLayoutListener(this);
-                                }
-                            }
-                        });
+            if (mOffscreenPageBudget != null) {
+                // Not to populate the pages again in the middle of selecting one
+                removeCallbacks(mUpdateOffscreenPageLimitRunnable);
+                post(mUpdateOffscreenPageLimitRunnable);
             }
         }
+    };
 
-        boolean isLayoutValid(GestureImageView view) {
-            return isLaidOut(view) && !view.isLayoutRequested();
-        }
-
-        boolean isLaidOut(GestureImageView view) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                return view.isLaidOut();
-            }
-            return ViewCompat.isAttachedToWindow(view)
-                    && (view.getWidth() != 0 || view.getHeight() != 0);
+    /** Looks up the view of the current page again when the data set of the adapter changes. */
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            updateCurrentImage();
         }
     };
 
+    /*synthetic*/ OnHierarchyChangeListener mOnHierarchyChangeListener;
+
+    /**
+     * Gets to know the destroyed pages at the single point where ViewGroup reports removals,
+     * however the child views are removed, e.g., removeView() delegates to removeViewInLayout()
+     * in a layout pass.
+     */
+    private final OnHierarchyChangeListener mInternalOnHierarchyChangeListener =
+            new OnHierarchyChangeListener() {
+                @Override
+                public void onChildViewAdded(View parent, View child) {
+                    if (mOnHierarchyChangeListener != null) {
+                        mOnHierarchyChangeListener.onChildViewAdded(parent, child);
+                    }
+                }
+
+                @Override
+                public void onChildViewRemoved(View parent, View child) {
+                    onPageViewRemoved(child);
+                    if (mOnHierarchyChangeListener != null) {
+                        mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
+                    }
+                }
+            };
+
     public GalleryViewPager(@NonNull Context context) {
         this(context, null);
     }
 
     public GalleryViewPager(@NonNull Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
+        mPagerHelper = new GalleryPagerHelper(context);
+        mGestureRecognizer = mPagerHelper.mGestureRecognizer;
+        mTouchSlop = mPagerHelper.mTouchSlop;
+        mMaximumFlingVelocity = mPagerHelper.mMaximumFlingVelocity;
+
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.GalleryViewPager, 0, 0);
         setImageOverScrollEnabled(
                 ta.getBoolean(R.styleable.GalleryViewPager_imageOverScrollEnabled, true));
+        setImageViewportRetained(
+                ta.getBoolean(R.styleable.GalleryViewPager_imageViewportRetained, false));
         ta.recycle();
 
-        final float dp = getResources().getDisplayMetrics().density;
-        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
-        mMinimumFlingVelocityOnCurrImageMagnified = 400f * dp;
-        mMaximumFlingVelocity = ViewConfiguration.getMaximumFlingVelocity() * dp;
         addOnPageChangeListener(mInternalOnPageChangeListener);
+        super.setOnHierarchyChangeListener(mInternalOnHierarchyChangeListener);
+    }
+
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        mOnHierarchyChangeListener = listener;
     }
 
     @Override
@@ -145,7 +157,7 @@ public class GalleryViewPager extends ViewPager {
      * as it becomes the selected page.
      */
     public boolean isImageOverScrollEnabled() {
-        return mImageOverScrollEnabled;
+        return mPagerHelper.mImageOverScrollEnabled;
     }
 
     /**
@@ -153,21 +165,257 @@ public class GalleryViewPager extends ViewPager {
      * to overscroll and spring itself back when it becomes the selected page.
      */
     public void setImageOverScrollEnabled(boolean enabled) {
-        mImageOverScrollEnabled = enabled;
+        mPagerHelper.mImageOverScrollEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the {@link GestureImageView} pages keep the zoom and pan the user has
+     * applied to them when they are unselected.
+     */
+    public boolean isImageViewportRetained() {
+        return mPagerHelper.mImageViewportRetained;
+    }
+
+    /**
+     * Sets whether the {@link GestureImageView} pages keep the zoom and pan the user has applied
+     * to them when they are unselected, instead of being reset to their initial scale and
+     * position. A {@link StableIdPagerAdapter} then keeps them for the pages that are destroyed
+     * as well, to be restored when the pages are instantiated again.
+     */
+    public void setImageViewportRetained(boolean retained) {
+        mPagerHelper.mImageViewportRetained = retained;
+    }
+
+    /**
+     * Sets a fixed number of pages that should be retained to either side of the current page,
+     * which stops the limit being chosen from the memory budget set through
+     * {@link #setOffscreenPageMemoryBudget(long)}.
+     */
+    @Override
+    public void setOffscreenPageLimit(int limit) {
+        setOffscreenPageMemoryBudget(0);
+        super.setOffscreenPageLimit(limit);
+    }
+
+    /**
+     * @return the number of bytes the pages retained to either side of the current page can take
+     *         up, or 0 if the offscreen page limit is fixed
+     */
+    public long getOffscreenPageMemoryBudget() {
+        return mOffscreenPageBudget == null ? 0 : mOffscreenPageBudget.getBudgetBytes();
+    }
+
+    /**
+     * Lets the number of pages retained to either side of the current page be chosen from
+     * the number of bytes they can take up in total and the measured footprint of the image
+     * pages, which is checked every time a page is selected. Galleries of small images keep
+     * more neighbors for instant swipes; ones of huge images keep fewer, down to a single page
+     * on each side. The budget is cut in stages while the system signals memory pressure, and
+     * restored a while after the last signal.
+     *
+     * @param bytes the budget, or 0 to keep the current offscreen page limit fixed
+     */
+    public void setOffscreenPageMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            if (mOffscreenPageBudget != null) {
+                mOffscreenPageBudget = null;
+                removeCallbacks(mUpdateOffscreenPageLimitRunnable);
+                unregisterMemoryPressureCallbacks();
+            }
+            return;
+        }
+        if (mOffscreenPageBudget != null && mOffscreenPageBudget.getBudgetBytes() == bytes) {
+            return;
+        }
+        final OffscreenPageBudget oldBudget = mOffscreenPageBudget;
+        mOffscreenPageBudget = new OffscreenPageBudget(bytes);
+        if (oldBudget != null) {
+            // Keep the memory pressure that is still being held.
+            final long now = SystemClock.uptimeMillis();
+            mOffscreenPageBudget.onMemoryPressure(oldBudget.getPressureStage(now), now);
+        } else if (getWindowToken() != null) {
+            registerMemoryPressureCallbacks();
+        }
+        updateOffscreenPageLimit();
+    }
+
+    /**
+     * Chooses the offscreen page limit from the memory budget and the largest number of bytes
+     * taken up by an image page, or by an image of this view's size before any is decoded.
+     * The largest footprint is taken rather than the average, as that of the neighbors whose
+     * tiles have been released is well below what they take up once selected.
+     */
+    /*synthetic*/ void updateOffscreenPageLimit() {
+        final OffscreenPageBudget budget = mOffscreenPageBudget;
+        if (budget == null) return;
+
+        long pageByteCount = 0;
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            if (child instanceof GestureImageView) {
+                pageByteCount = Math.max(pageByteCount,
+                        ((GestureImageView) child).getImageByteCount());
+            }
+        }
+        if (pageByteCount == 0) {
+            // Estimated as an ARGB_8888 bitmap filling this view
+            pageByteCount = 4L * getWidth() * getHeight();
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        final int limit = budget.computeOffscreenPageLimit(pageByteCount, now);
+        if (limit != getOffscreenPageLimit()) {
+            super.setOffscreenPageLimit(limit);
+        }
+
+        // Choose the limit again as soon as the memory pressure being held expires.
+        removeCallbacks(mUpdateOffscreenPageLimitRunnable);
+        final long holdMillis = budget.getPressureHoldRemainingMillis(now);
+        if (holdMillis > 0) {
+            postDelayed(mUpdateOffscreenPageLimitRunnable, holdMillis);
+        }
+    }
+
+    /*synthetic*/ void onMemoryPressure(int stage) {
+        if (mOffscreenPageBudget != null) {
+            mOffscreenPageBudget.onMemoryPressure(stage, SystemClock.uptimeMillis());
+            updateOffscreenPageLimit();
+        }
+    }
+
+    private void registerMemoryPressureCallbacks() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) return;
+
+        if (!mMemoryPressureCallbacksRegistered) {
+            mMemoryPressureCallbacksRegistered = true;
+            if (mMemoryPressureCallbacks == null) {
+                mMemoryPressureCallbacks = new ComponentCallbacks2() {
+                    @Override
+                    public void onTrimMemory(int level) {
+                        onMemoryPressure(ImageMemoryTrimPolicy.getStage(level));
+                    }
+
+                    @Override
+                    public void onLowMemory() {
+                        onMemoryPressure(ImageMemoryTrimPolicy.STAGE_CRITICAL);
+                    }
+
+                    @Override
+                    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                    }
+                };
+            }
+            getContext().getApplicationContext().registerComponentCallbacks(
+                    mMemoryPressureCallbacks);
+        }
+    }
+
+    private void unregisterMemoryPressureCallbacks() {
+        if (mMemoryPressureCallbacksRegistered) {
+            mMemoryPressureCallbacksRegistered = false;
+            getContext().getApplicationContext().unregisterComponentCallbacks(
+                    mMemoryPressureCallbacks);
+        }
+    }
+
+    /**
+     * Adds a listener that will be notified as the {@link GestureImageView} pages are added to or
+     * removed from this view, and as they are selected or unselected.
+     */
+    public void addOnImagePageChangeListener(@NonNull OnImagePageChangeListener listener) {
+        mPagerHelper.addOnImagePageChangeListener(listener);
+    }
+
+    public void removeOnImagePageChangeListener(@NonNull OnImagePageChangeListener listener) {
+        mPagerHelper.removeOnImagePageChangeListener(listener);
+    }
+
+    /**
+     * Caches the image of the current page, which is looked up through the {@link ItemCallback}
+     * only here, as the current page, its view or the data set of the adapter changes, instead of
+     * on every touch event.
+     */
+    /*synthetic*/ void updateCurrentImage() {
+        final int position = getCurrentItem();
+        final Object item = mItemCallback == null ? null : mItemCallback.getItemAt(position);
+        // The view of the current page may have not been added yet, e.g., on the first layout.
+        final GestureImageView image =
+                item instanceof GestureImageView && ((View) item).getParent() == this
+                        ? (GestureImageView) item : null;
+        mPagerHelper.setCurrentImage(image, position);
+    }
+
+    /**
+     * Prefetches the images of the pages beyond the offscreen page limit in the direction of
+     * travel, more pages for faster flings, and cancels the prefetches of the other pages.
+     *
+     * @param forward whether the pages after the selected one are to be prefetched rather than
+     *                the ones before it
+     * @param speed   the speed at which the user flung towards the selected page
+     */
+    /*synthetic*/ void prefetchImages(int position, boolean forward, float speed) {
+        final PagerAdapter adapter = getAdapter();
+        if (adapter == null || !(mItemCallback instanceof ImageSourceProvider)) return;
+        final ImageSourceProvider provider = (ImageSourceProvider) mItemCallback;
+
+        final int viewWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int viewHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        mPagerHelper.prefetchImages(provider, adapter.getCount(), position,
+                getOffscreenPageLimit(), forward, speed, viewWidth, viewHeight);
     }
 
     @Override
     public void setAdapter(@Nullable PagerAdapter adapter) {
+        final PagerAdapter oldAdapter = getAdapter();
+        if (oldAdapter != null) {
+            oldAdapter.unregisterDataSetObserver(mDataSetObserver);
+        }
+        mPagerHelper.cancelPrefetches();
         super.setAdapter(adapter);
         if (adapter != null) {
+            adapter.registerDataSetObserver(mDataSetObserver);
             mFirstLayout = true;
         }
     }
 
+    @Override
+    public void addView(View child, int index, ViewGroup.LayoutParams params) {
+        super.addView(child, index, params);
+        if (child instanceof GestureImageView) {
+            mPagerHelper.onImagePageAttached((GestureImageView) child);
+            // The current page may be added after it is selected
+            updateCurrentImage();
+        }
+    }
+
+    /**
+     * Cancels the pending decodes for an image page that has been destroyed and hands its
+     * bitmaps back to the bitmap pool, for the pages created later to decode their images into.
+     * The page stops sharing the velocity tracking of this view too.
+     */
+    /*synthetic*/ void onPageViewRemoved(View view) {
+        if (view instanceof GestureImageView) {
+            mPagerHelper.onImagePageDetached((GestureImageView) view);
+        }
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mFirstLayout = true;
+        if (mOffscreenPageBudget != null) {
+            registerMemoryPressureCallbacks();
+            // The memory pressure may have expired while this view was detached.
+            post(mUpdateOffscreenPageLimitRunnable);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPagerHelper.cancelPrefetches();
+        removeCallbacks(mUpdateOffscreenPageLimitRunnable);
+        unregisterMemoryPressureCallbacks();
     }
 
     @Override
@@ -180,58 +428,20 @@ public class GalleryViewPager extends ViewPager {
     public boolean onInterceptTouchEvent(MotionEvent ev) {
         final int actionMasked = ev.getAction() & MotionEvent.ACTION_MASK;
 
-        if (actionMasked == MotionEvent.ACTION_DOWN) {
-            initOrClearVelocityTracker();
-        }
-        if (mVelocityTracker != null) {
-            mVelocityTracker.addMovement(ev);
-        }
+        mGestureRecognizer.onTouchEvent(ev);
 
         switch (actionMasked) {
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN:
-                onPointerDown(ev);
-                break;
             case MotionEvent.ACTION_MOVE:
-                final int pointerIndex = ev.findPointerIndex(mActivePointerId);
-                if (pointerIndex < 0) {
+                final int activePointerId = mGestureRecognizer.getActivePointerId();
+                if (ev.findPointerIndex(activePointerId) < 0) {
                     Log.e(TAG, "Error processing scroll; pointer index for id "
-                            + mActivePointerId + " not found. Did any MotionEvents get skipped?");
+                            + activePointerId + " not found. Did any MotionEvents get skipped?");
                     return false;
                 }
 
-                if (mItemCallback == null) break;
-                Object item = mItemCallback.getItemAt(getCurrentItem());
-                if (item instanceof GestureImageView) {
-                    GestureImageView image = (GestureImageView) item;
-
-                    if (ev.getPointerCount() != 1) {
-                        return false;
-                    }
-
-                    final float absDx = Math.abs(ev.getX() - mDownX);
-                    boolean intercept = absDx > mTouchSlop && absDx > Math.abs(ev.getY() - mDownY);
-                    if (!intercept) return false;
-
-                    RectF imgBounds = image.mImageBounds;
-                    image.getImageBounds(imgBounds);
-                    if (imgBounds.isEmpty()) return true;
-
-                    final int imgAvailableWidth =
-                            image.getWidth() - image.getPaddingLeft() - image.getPaddingRight();
-                    if (imgBounds.width() > imgAvailableWidth) {
-                        mVelocityTracker.computeCurrentVelocity(1000);
-                        final float vx = mVelocityTracker.getXVelocity(mActivePointerId);
-
-                        // Account for very small floating-point error (+/- 0.01f)
-                        final boolean canScrollPageRight = imgBounds.left >= -0.01f
-                                && vx >= mMinimumFlingVelocityOnCurrImageMagnified;
-                        final boolean canScrollPageLeft = imgBounds.right <= imgAvailableWidth + 0.01f
-                                && vx <= -mMinimumFlingVelocityOnCurrImageMagnified;
-
-                        intercept = canScrollPageLeft || canScrollPageRight;
-                    }
-
+                GestureImageView image = mPagerHelper.mCurrentImage;
+                if (image != null) {
+                    final boolean intercept = mPagerHelper.shouldInterceptImageDrag(image, ev);
                     if (intercept) {
                         ViewParent parent = getParent();
                         if (parent != null) {
@@ -241,13 +451,9 @@ public class GalleryViewPager extends ViewPager {
                     return intercept;
                 }
                 break;
-            case MotionEvent.ACTION_POINTER_UP:
-                onSecondaryPointerUp(ev);
-                break;
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
-                mActivePointerId = ViewDragHelper.INVALID_POINTER;
-                recycleVelocityTracker();
+                mGestureRecognizer.clear();
                 break;
         }
         return super.onInterceptTouchEvent(ev);
@@ -258,79 +464,20 @@ public class GalleryViewPager extends ViewPager {
     public boolean onTouchEvent(MotionEvent ev) {
         final int actionMasked = ev.getActionMasked();
 
-        if (actionMasked == MotionEvent.ACTION_DOWN) {
-            initOrClearVelocityTracker();
-        }
-        if (mVelocityTracker != null) {
-            mVelocityTracker.addMovement(ev);
-        }
+        mGestureRecognizer.onTouchEvent(ev);
 
-        final boolean handled;
-        switch (actionMasked) {
-            case MotionEvent.ACTION_POINTER_DOWN:
-                onPointerDown(ev);
-                handled = superOnTouchEvent(ev);
-                break;
-            case MotionEvent.ACTION_POINTER_UP:
-                onSecondaryPointerUp(ev);
-                handled = superOnTouchEvent(ev);
-                break;
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_CANCEL:
-                handled = superOnTouchEvent(ev);
-                mActivePointerId = ViewDragHelper.INVALID_POINTER;
-                recycleVelocityTracker();
-                break;
-            default:
-                handled = superOnTouchEvent(ev);
-                break;
+        final boolean handled = super.onTouchEvent(ev);
+        if (actionMasked == MotionEvent.ACTION_UP || actionMasked == MotionEvent.ACTION_CANCEL) {
+            mGestureRecognizer.clear();
         }
         return handled;
     }
 
-    private boolean superOnTouchEvent(MotionEvent ev) {
-        return super.onTouchEvent(ev);
-    }
-
-    private void onPointerDown(MotionEvent e) {
-        final int actionIndex = e.getActionIndex();
-        mActivePointerId = e.getPointerId(actionIndex);
-        mDownX = e.getX(actionIndex);
-        mDownY = e.getY(actionIndex);
-    }
-
-    private void onSecondaryPointerUp(MotionEvent e) {
-        final int pointerIndex = e.getActionIndex();
-        final int pointerId = e.getPointerId(pointerIndex);
-        if (pointerId == mActivePointerId) {
-            // This was our active pointer going up.
-            // Choose a new active pointer and adjust accordingly.
-            final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
-            mActivePointerId = e.getPointerId(newPointerIndex);
-            mDownX = e.getX(newPointerIndex);
-            mDownY = e.getY(newPointerIndex);
-        }
-    }
-
-    private void initOrClearVelocityTracker() {
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
-        } else {
-            mVelocityTracker.clear();
-        }
-    }
-
-    private void recycleVelocityTracker() {
-        if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
-        }
-    }
-
     /*synthetic*/ ItemCallback mItemCallback;
 
     public void setItemCallback(@Nullable ItemCallback callback) {
         mItemCallback = callback;
+        updateCurrentImage();
     }
 
     public interface ItemCallback {
@@ -340,4 +487,81 @@ public class GalleryViewPager extends ViewPager {
          */
         Object getItemAt(int position);
     }
+
+    /**
+     * Implemented by the {@link ItemCallback}, or by the adapter of a {@link GalleryRecyclerPager},
+     * to let the images of the pages that are about to be swiped to be prefetched, without
+     * their views being instantiated.
+     */
+    public interface ImageSourceProvider {
+        /**
+         * @param position the <strong>adapter position</strong> of the page
+         * @return the source of the image shown in the page at the specified position, or
+         *         {@code null} if the page shows no image from an {@link ImageSource}
+         */
+        @Nullable
+        ImageSource getImageSourceAt(int position);
+    }
+
+    /**
+     * Callback interface for responding to the {@link GestureImageView} pages of a pager being
+     * added to or removed from it, and being selected or unselected, at which the resources of
+     * the pages, e.g., their decodes, tiles and animations, can be started and released.
+     *
+     * @see GalleryViewPager#addOnImagePageChangeListener(OnImagePageChangeListener)
+     * @see GalleryRecyclerPager#addOnImagePageChangeListener(OnImagePageChangeListener)
+     */
+    public interface OnImagePageChangeListener {
+        /**
+         * This method will be invoked when an image page is added to the pager, before it is
+         * selected if it is the current page.
+         */
+        void onImagePageAttached(@NonNull GestureImageView page);
+
+        /**
+         * This method will be invoked when an image page is removed from the pager, after it is
+         * unselected if it was the current page. Its bitmaps have been handed back to the
+         * bitmap pool by then.
+         */
+        void onImagePageDetached(@NonNull GestureImageView page);
+
+        /**
+         * This method will be invoked when an image page becomes the current page, as it is
+         * selected, or as it replaces the view of the current page on a data set change.
+         *
+         * @param position the adapter position of the page
+         */
+        void onImagePageSelected(@NonNull GestureImageView page, int position);
+
+        /**
+         * This method will be invoked when an image page is no longer the current page.
+         * Its image has been reset to its initial scale and translation by then.
+         *
+         * @param position the adapter position the page was selected at
+         */
+        void onImagePageUnselected(@NonNull GestureImageView page, int position);
+    }
+
+    /**
+     * Simple implementation of the {@link OnImagePageChangeListener} interface with stub
+     * implementations of each method. Extend this if you do not intend to override
+     * every method of {@link OnImagePageChangeListener}.
+     */
+    public static class SimpleOnImagePageChangeListener implements OnImagePageChangeListener {
+        @Override
+        public void onImagePageAttached(@NonNull GestureImageView page) {
+        }
+
+        @Override
+        public void onImagePageDetached(@NonNull GestureImageView page) {
+        }
+
+        @Override
+        public void onImagePageSelected(@NonNull GestureImageView page, int position) {
+        }
+
+        @Override
+        public void onImagePageUnselected(@NonNull GestureImageView page, int position) {
+        }
+    }
 }
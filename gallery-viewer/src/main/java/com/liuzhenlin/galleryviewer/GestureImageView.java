@@ -8,28 +8,34 @@ package com.liuzhenlin.galleryviewer;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.GestureDetector;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
-import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 import android.view.ViewParent;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 import androidx.core.util.Predicate;
-import androidx.core.view.ViewCompat;
-import androidx.customview.widget.ViewDragHelper;
+
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 /**
  * @author <a href="mailto:2233788867@qq.com">刘振林</a>
@@ -37,21 +43,30 @@ import androidx.customview.widget.ViewDragHelper;
 public class GestureImageView extends AppCompatImageView {
     private static final String TAG = "GestureImageView";
 
-    private final GestureDetector mGestureDetector;
-    private final ScaleGestureDetector mScaleGestureDetector;
+    /**
+     * Recognizes the taps, drags and pinches of the user and tracks the velocity of the touches
+     * in one pass over each touch event
+     */
+    /*package*/ final GestureRecognizer mGestureRecognizer;
+
+    /**
+     * The scale and translation of the image in this view, which all the gestures and animations
+     * work on and which is pushed to {@link #mImageMatrix} through {@link #applyImageTransform()}
+     */
+    /*synthetic*/ final ImageTransform mImageTransform = new ImageTransform();
 
     /** The matrix of the image in this view */
     /*synthetic*/ final Matrix mImageMatrix = new Matrix();
 
-    /** A float array to receive the values of the matrix {@link #mImageMatrix} */
+    /** A float array to exchange the values of the matrix {@link #mImageMatrix} */
     /*synthetic*/ final float[] mImageMatrixValues = new float[9];
 
     /** Used to temporarily cache the 4 corner coordinates of the image */
     /*package*/ final RectF mImageBounds = new RectF();
 
     // Avoid allocations...
-    /*package*/ final Matrix mTmpMatrix = new Matrix();
-    /*package*/ final PointF mTmpPointF = new PointF();
+    private final ImageTransform mTmpImageTransform = new ImageTransform();
+    /*synthetic*/ final float[] mTmpFloats = new float[4];
 
     /** @see #getFitCenterImageScale() */
     /*synthetic*/ float mFitCenterImageScale;
@@ -113,19 +128,29 @@ public class GestureImageView extends AppCompatImageView {
      */
     private static final int PFLAG_LONG_CLICK_CONSUMED = 1 << 4;
 
-    /** Square of the distance to travel before drag may begin */
-    private float mTouchSlopSquare;
-
-    /** Last known pointer id for touch events */
-    private int mActivePointerId = ViewDragHelper.INVALID_POINTER;
-
-    private float mDownX;
-    private float mDownY;
+    /**
+     * Indicates that the transform of the image has been changed by the user's gestures and
+     * is waiting for the next animation frame to be pushed to the image matrix.
+     */
+    private static final int PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED = 1 << 5;
 
-    private final float[] mTouchX = new float[2];
-    private final float[] mTouchY = new float[2];
+    /**
+     * Indicates that this view has been reset for reuse since its size was last changed, so that
+     * the next image set will need to be initialized, as {@link #onSizeChanged} will not be
+     * called to do that.
+     */
+    private static final int PFLAG_IMAGE_INITIALIZATION_PENDING = 1 << 6;
 
-    private VelocityTracker mVelocityTracker;
+    /**
+     * Pushes the transform of the image, into which the drags and pinches of the touch events
+     * are accumulated, to the image matrix once per animation frame.
+     */
+    private final AnimationFrameDriver.FrameCallback mApplyImageTransformCallback =
+            frameTimeNanos -> {
+                mPrivateFlags &= ~PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED;
+                applyImageTransform();
+                return false;
+            };
 
     /** The minimum velocity for the user gesture to be detected as fling. */
     protected final float mMinimumFlingVelocity; // 200 dp/s
@@ -144,13 +169,53 @@ public class GestureImageView extends AppCompatImageView {
      */
     /*package*/ final float mImageOverTranslation; // 25dp
 
-    protected static final Interpolator sDecelerateInterpolator = new DecelerateInterpolator();
+    /**
+     * Interpolator for the image transformations, a {@link LookupTableInterpolator} read from
+     * a table of the decelerate curve, whose error is below 5e-7.
+     */
+    protected static final Interpolator sDecelerateInterpolator =
+            new LookupTableInterpolator(new DecelerateInterpolator());
 
     /** Frequently used duration for the image transformation animator */
     public static final int DEFAULT_DURATION_TRANSFORM_IMAGE = 256; // ms
 
+    /**
+     * Image settle mode with which the image is zoomed and translated into place, or sprung back
+     * after it is over-translated, by scrolls of fixed durations. This is the default mode.
+     */
+    public static final int IMAGE_SETTLE_MODE_DURATION = 0;
+
+    /**
+     * Image settle mode with which the image is zoomed and translated into place, or sprung back
+     * after it is over-translated, by critically damped springs, which carry on the velocity
+     * the image has when it is released or when a fling of it reaches an edge, and which can
+     * be redirected to a new target at any time without the motion being restarted.
+     */
+    public static final int IMAGE_SETTLE_MODE_SPRING = 1;
+
+    @IntDef({IMAGE_SETTLE_MODE_DURATION, IMAGE_SETTLE_MODE_SPRING})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ImageSettleMode {
+    }
+
+    @ImageSettleMode
+    /*synthetic*/ int mImageSettleMode = IMAGE_SETTLE_MODE_DURATION;
+
     private ImageTransformer mImageTransformer;
 
+    /** @see #getImageSource() */
+    /*synthetic*/ ImageSource mImageSource;
+
+    /**
+     * The zoom and pan to restore the image to when it is initialized next time, in place of
+     * its initial scale and position
+     */
+    private ImageViewportState mPendingViewportState;
+
+    /** The group of the decoding tasks for this view other than the ones of its drawable */
+    private final ImageDecodeExecutor.TaskGroup mDecodeTaskGroup =
+            new ImageDecodeExecutor.TaskGroup(ImageDecodeExecutor.PRIORITY_VISIBLE);
+
     public GestureImageView(Context context) {
         this(context, null);
     }
@@ -161,6 +226,8 @@ public class GestureImageView extends AppCompatImageView {
 
     public GestureImageView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        mGestureRecognizer = new GestureRecognizer(context, new OnImageGestureListener());
+
         TypedArray ta = context.obtainStyledAttributes(
                 attrs, R.styleable.GestureImageView, defStyleAttr, 0);
         setImageGesturesEnabled(ta.getBoolean(R.styleable
@@ -168,12 +235,11 @@ public class GestureImageView extends AppCompatImageView {
         setMoveUnmagnifiedImageViaSingleFingerAllowed(ta.getBoolean(R.styleable
                 .GestureImageView_moveUnmagnifiedImageViaSingleFingerAllowed, false));
         setTouchSensitivity(ta.getFloat(R.styleable.GestureImageView_touchSensitivity, 1.0f));
+        //noinspection WrongConstant
+        setImageSettleMode(ta.getInt(R.styleable.GestureImageView_imageSettleMode,
+                IMAGE_SETTLE_MODE_DURATION));
         ta.recycle();
 
-        OnImageGestureListener listener = new OnImageGestureListener();
-        mGestureDetector = new GestureDetector(context, listener);
-        mScaleGestureDetector = new ScaleGestureDetector(context, listener);
-
         final float dp = getResources().getDisplayMetrics().density;
         mMaximumFlingVelocity = ViewConfiguration.getMaximumFlingVelocity() * dp;
         mMinimumFlingVelocity = 200f * dp;
@@ -182,7 +248,7 @@ public class GestureImageView extends AppCompatImageView {
 
     private ImageTransformer getImageTransformer() {
         if (mImageTransformer == null) {
-            mImageTransformer = new ImageTransformer(getContext());
+            mImageTransformer = new ImageTransformer();
         }
         return mImageTransformer;
     }
@@ -250,7 +316,26 @@ public class GestureImageView extends AppCompatImageView {
     public void setTouchSensitivity(float sensitivity) {
         final float dp = getResources().getDisplayMetrics().density;
         final float touchSlop = ViewConfiguration.getTouchSlop() * dp / sensitivity;
-        mTouchSlopSquare = touchSlop * touchSlop;
+        mGestureRecognizer.setDragSlop(touchSlop);
+    }
+
+    /**
+     * Sets how the image is zoomed and translated into place, or sprung back after it is
+     * over-translated.
+     *
+     * @see #IMAGE_SETTLE_MODE_DURATION
+     * @see #IMAGE_SETTLE_MODE_SPRING
+     */
+    public void setImageSettleMode(@ImageSettleMode int mode) {
+        if (mImageSettleMode != mode) {
+            cancelImageTransformations();
+            mImageSettleMode = mode;
+        }
+    }
+
+    @ImageSettleMode
+    public int getImageSettleMode() {
+        return mImageSettleMode;
     }
 
     /**
@@ -260,14 +345,14 @@ public class GestureImageView extends AppCompatImageView {
     public float getTouchSensitivity() {
         final float dp = getResources().getDisplayMetrics().density;
         final float normalTouchSlop = ViewConfiguration.getTouchSlop() * dp;
-        return (float) (Math.sqrt(mTouchSlopSquare) / normalTouchSlop);
+        return (float) (Math.sqrt(getTouchSlopSquare()) / normalTouchSlop);
     }
 
     /**
      * @return Square of the distance in dips a touch can wander before we think the user is scrolling.
      */
     protected float getTouchSlopSquare() {
-        return mTouchSlopSquare;
+        return mGestureRecognizer.getDragSlopSquare();
     }
 
     @Override
@@ -277,6 +362,289 @@ public class GestureImageView extends AppCompatImageView {
         }
     }
 
+    /**
+     * Sets a region decoder as the content of this view, which is useful for huge images that
+     * are too large to be decoded into one bitmap, as only the tiles of the image that intersect
+     * the viewport will be decoded, at a sample size fitting the current scale of the image.
+     * <p>
+     * The decoder will be taken over by this view and recycled once it is no longer used.
+     *
+     * @param decoder the region decoder of the image to display, or {@code null} to clear
+     *                the content of this view
+     * @see TiledImageDrawable
+     */
+    public void setImageRegionDecoder(@Nullable BitmapRegionDecoder decoder) {
+        setImageDrawable(decoder == null ? null : new TiledImageDrawable(decoder));
+        if (getWidth() != 0 || getHeight() != 0) {
+            reinitializeImage();
+        }
+    }
+
+    /**
+     * Sets an image source as the content of this view. Rather than the full resolution image,
+     * only a base layer subsampled to fit the size of this view is decoded, which will be
+     * replaced with higher resolution decodes as the image is zoomed in past its resolution.
+     * <p>
+     * All the decoding is done on background threads: the dimensions of the image are read
+     * first (unless provided through {@link ImageSource#dimensions(int, int)}), so that the scales
+     * and the layout of the image can be set up as soon as possible, then the pixels follow
+     * when they are ready.
+     *
+     * @param source the source of the image to display, or {@code null} to clear the content
+     *               of this view
+     * @see TiledImageDrawable
+     */
+    public void setImageSource(@Nullable ImageSource source) {
+        if (source == mImageSource) return;
+
+        // The dimensions of the previous source, if being read, are no longer needed.
+        mDecodeTaskGroup.cancelAll();
+
+        // Clear the previous image while the new one is being loaded, unless it is
+        // a placeholder for the new one.
+        if (source == null || !(getDrawable() instanceof LogicalSizeDrawable)) {
+            setImageDrawable(null);
+        }
+        mImageSource = source;
+        if (source == null) return;
+
+        if (source.getWidth() > 0 && source.getHeight() > 0) {
+            onImageSourceBoundsDecoded(source, source.getWidth(), source.getHeight());
+            return;
+        }
+        final String cacheKey = source.getCacheKey();
+        mDecodeTaskGroup.execute(() -> {
+            // Prefer the dimensions recorded along with the preview of the image, if any,
+            // to reading them from the source.
+            final ImagePreviewDiskCache previewCache = ImagePreviewDiskCache.getDefault();
+            final int[] size = new int[2];
+            if (cacheKey == null || previewCache == null
+                    || !previewCache.getImageSize(cacheKey, size)) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                try {
+                    source.decodeBounds(options);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Failed to read the dimensions of " + source, e);
+                }
+                size[0] = options.outWidth;
+                size[1] = options.outHeight;
+            }
+            final int width = size[0];
+            final int height = size[1];
+            ImageDecodeExecutor.postToMainThread(() -> {
+                if (mImageSource == source) {
+                    onImageSourceBoundsDecoded(source, width, height);
+                }
+            });
+        });
+    }
+
+    /*synthetic*/ void onImageSourceBoundsDecoded(ImageSource source, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        // Remember the dimensions so that they need not be read again for the same source
+        source.dimensions(width, height);
+        TiledImageDrawable drawable = new TiledImageDrawable(source, width, height);
+        Drawable placeholder = getDrawable();
+        if (placeholder != null
+                && placeholder.getIntrinsicWidth() == width
+                && placeholder.getIntrinsicHeight() == height) {
+            // Keep showing the placeholder until the base layer is decoded, without
+            // interrupting whatever the user is doing with it.
+            drawable.setPlaceholder(placeholder);
+            swapImageDrawable(drawable);
+        } else {
+            setImageDrawable(drawable);
+            if (getWidth() != 0 || getHeight() != 0) {
+                reinitializeImage();
+            }
+        }
+    }
+
+    /**
+     * Shows a placeholder for an image right away, e.g., a thumbnail of it, stretched to the size
+     * of the full image, so that it can later be replaced with the full image through
+     * {@link #setImageSource(ImageSource)} or {@link #swapImageDrawable(Drawable)}
+     * without resetting the scale and translation the user has applied to it meanwhile.
+     *
+     * @param placeholder the drawable to show in place of the image
+     * @param imageWidth  the width of the full image
+     * @param imageHeight the height of the full image
+     */
+    public void setImagePlaceholder(
+            @NonNull Drawable placeholder, int imageWidth, int imageHeight) {
+        setImageDrawable(new LogicalSizeDrawable(placeholder, imageWidth, imageHeight));
+        if (getWidth() != 0 || getHeight() != 0) {
+            reinitializeImage();
+        }
+    }
+
+    /**
+     * Replaces the image with another version of it of a different resolution, e.g., the full
+     * resolution image in place of a thumbnail, keeping the current scale and translation of
+     * the image. The new drawable is stretched to the intrinsic size of the current one, if
+     * they differ, so that the matrix of the image stays valid across the swap. A
+     * {@link TiledImageDrawable} stretches itself, so as to keep decoding the tiles for
+     * the viewport.
+     *
+     * @param drawable the new version of the current image, or {@code null} to clear
+     *                 the content of this view
+     */
+    public void swapImageDrawable(@Nullable Drawable drawable) {
+        final Drawable d = getDrawable();
+        if (d == null || drawable == null) {
+            setImageDrawable(drawable);
+            if (drawable != null && (getWidth() != 0 || getHeight() != 0)) {
+                reinitializeImage();
+            }
+            return;
+        }
+
+        final int width = d.getIntrinsicWidth();
+        final int height = d.getIntrinsicHeight();
+        if (drawable.getIntrinsicWidth() != width || drawable.getIntrinsicHeight() != height) {
+            if (drawable instanceof TiledImageDrawable) {
+                ((TiledImageDrawable) drawable).setLogicalSize(width, height);
+            } else {
+                drawable = new LogicalSizeDrawable(drawable, width, height);
+            }
+        }
+        setImageDrawable(drawable);
+        if (drawable instanceof TiledImageDrawable && (getWidth() != 0 || getHeight() != 0)) {
+            // Let the new drawable know the scales and the viewport of the image
+            // that initializeImage() would otherwise tell it.
+            ((TiledImageDrawable) drawable).setBaseLayerScale(mFitCenterImageScale);
+            applyImageTransform();
+        }
+    }
+
+    /**
+     * @return the image source set through {@link #setImageSource(ImageSource)}, or {@code null}
+     *         if the content of this view was set otherwise
+     */
+    @Nullable
+    public ImageSource getImageSource() {
+        return mImageSource;
+    }
+
+    /**
+     * Sets the priority of the decoding tasks for the image of this view, e.g., according to
+     * the distance of its page from the current page of the pager.
+     */
+    /*package*/ void setDecodePriority(@ImageDecodeExecutor.Priority int priority) {
+        mDecodeTaskGroup.setPriority(priority);
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).setDecodePriority(priority);
+        }
+    }
+
+    /**
+     * @return false if this view is hosted by a pager as a page other than its current one
+     */
+    /*package*/ boolean isShowingCurrentPage() {
+        return mDecodeTaskGroup.getPriority() == ImageDecodeExecutor.PRIORITY_VISIBLE;
+    }
+
+    /**
+     * Releases the higher resolution layers of the image that are out of the viewport,
+     * or all of them if {@code toBaseLayer} is true, in the event of memory pressure.
+     *
+     * @see ImageMemoryTrimPolicy
+     */
+    /*package*/ void trimImageMemory(boolean toBaseLayer) {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).trimMemory(toBaseLayer);
+        }
+    }
+
+    /**
+     * @return the number of bytes taken up by the bitmaps of the image currently shown,
+     *         or 0 if it is not known, e.g., for an image that is not bitmap-based
+     */
+    /*package*/ long getImageByteCount() {
+        Drawable d = getDrawable();
+        if (d instanceof LogicalSizeDrawable) {
+            d = ((LogicalSizeDrawable) d).getDrawable();
+        }
+        if (d instanceof TiledImageDrawable) {
+            return ((TiledImageDrawable) d).getBitmapByteCount();
+        }
+        if (d instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) d).getBitmap();
+            if (bitmap != null) {
+                return ImageMemoryCache.getAllocationByteCount(bitmap);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Releases the bitmaps decoded for the current {@link ImageSource} or region decoder into
+     * the {@link BitmapPool#getDefault() bitmap pool}, e.g., when this view is detached from
+     * its pager. They will be decoded again as soon as this view is drawn next time.
+     */
+    /*package*/ void releaseImageBitmaps() {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).releaseBitmaps();
+        }
+    }
+
+    @Override
+    public void setImageDrawable(@Nullable Drawable drawable) {
+        final Drawable oldDrawable = getDrawable();
+        super.setImageDrawable(drawable);
+        if (mImageSource != null && (!(drawable instanceof TiledImageDrawable)
+                || ((TiledImageDrawable) drawable).mSource != mImageSource)) {
+            mImageSource = null;
+            // Stop reading the dimensions of the source replaced, if not done yet.
+            mDecodeTaskGroup.cancelAll();
+        }
+        if (oldDrawable != drawable && oldDrawable instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) oldDrawable).recycle();
+        }
+        // Null while the super constructor is running
+        //noinspection ConstantConditions
+        if (drawable instanceof TiledImageDrawable && mDecodeTaskGroup != null) {
+            ((TiledImageDrawable) drawable).setDecodePriority(mDecodeTaskGroup.getPriority());
+        }
+        if ((mPrivateFlags & PFLAG_IMAGE_INITIALIZATION_PENDING) != 0
+                && drawable != null && (getWidth() != 0 || getHeight() != 0)) {
+            initializeImage();
+        }
+    }
+
+    @Override
+    public void setImageMatrix(Matrix matrix) {
+        // Null while the super constructor is running
+        //noinspection ConstantConditions
+        final boolean synced = mImageTransform != null;
+        if (synced && matrix != mImageMatrix) {
+            // Set from outside of this class. Take it over as our transform.
+            if (matrix == null) {
+                mImageMatrix.reset();
+            } else {
+                mImageMatrix.set(matrix);
+            }
+            mImageMatrix.getValues(mImageMatrixValues);
+            mImageTransform.setValues(mImageMatrixValues);
+        }
+        super.setImageMatrix(matrix);
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            if (synced) {
+                ((TiledImageDrawable) d).setViewport(
+                        mImageTransform.getScaleX(), mImageTransform.getScaleY(),
+                        mImageTransform.getTranslationX(), mImageTransform.getTranslationY(),
+                        getDrawingWidth(), getDrawingHeight());
+            } else {
+                ((TiledImageDrawable) d).setViewport(matrix, getDrawingWidth(), getDrawingHeight());
+            }
+        }
+    }
+
     /**
      * Scales the image to fit current view and properly positions it inside this view.
      */
@@ -284,6 +652,8 @@ public class GestureImageView extends AppCompatImageView {
         Drawable d = getDrawable();
         if (d == null) return;
 
+        mPrivateFlags &= ~PFLAG_IMAGE_INITIALIZATION_PENDING;
+
         // Gets the available width and height for the image
         final int width = getDrawingWidth();
         final int height = getDrawingHeight();
@@ -309,21 +679,115 @@ public class GestureImageView extends AppCompatImageView {
             mDoubleTapMagnifiedImageScale = mImageMaxScale / 2f;
         }
 
+        final ImageViewportState viewportState = mPendingViewportState;
+        mPendingViewportState = null;
+
+        final ImageTransform transform = mImageTransform;
+        if (viewportState == null) {
+            computeInitialImageTransform(transform, width, height, imgWidth, imgHeight);
+        } else {
+            transform.setImageSize(imgWidth, imgHeight);
+            transform.setViewSize(width, height);
+            transform.setViewportFocus(
+                    Math.max(mImageMinScale, Math.min(
+                            viewportState.getScale() * mFitCenterImageScale, mImageMaxScale)),
+                    viewportState.getFocusX(), viewportState.getFocusY());
+        }
+
+        if (d instanceof TiledImageDrawable) {
+            final TiledImageDrawable drawable = (TiledImageDrawable) d;
+            if (viewportState != null
+                    && TiledImageDrawable.computeSampleSize(transform.getScaleX())
+                    < TiledImageDrawable.computeSampleSize(mFitCenterImageScale)) {
+                // Tell the drawable the restored viewport up front, so that the tiles of
+                // the region shown are decoded first, at the sample size of the restored scale,
+                // ahead of the base layer that only fills in around them.
+                drawable.setViewport(transform.getScaleX(), transform.getScaleY(),
+                        transform.getTranslationX(), transform.getTranslationY(), width, height);
+            }
+            // Decode a base layer that has just enough resolution for the image to be displayed
+            // at its fit center scale.
+            drawable.setBaseLayerScale(mFitCenterImageScale);
+        }
+        applyImageTransform();
+    }
+
+    /**
+     * Sets the given transform to the scale and translation the image is initially shown at,
+     * with the scales of the image computed for the current size of this view.
+     */
+    private void computeInitialImageTransform(
+            ImageTransform transform, int width, int height, int imgWidth, int imgHeight) {
         // We need to ensure below will work normally if an other image has been set for this view,
-        // so just reset the current matrix to its initial state.
-        mImageMatrix.reset();
-        if (piiic) {
+        // so just reset the current transform to its initial state.
+        transform.reset();
+        transform.setImageSize(imgWidth, imgHeight);
+        transform.setViewSize(width, height);
+        if (mFitWidthImageScale >= mFitCenterImageScale * PIIIC_THRESHOLD) {
             // Scales the image to fit exactly the width of the view with the top edge showed
             // to the user
-            mImageMatrix.postScale(mFitWidthImageScale, mFitWidthImageScale, 0, 0);
+            transform.postScale(mFitWidthImageScale, mFitWidthImageScale, 0, 0);
         } else {
             // Translates the image to the center of the current view
-            mImageMatrix.postTranslate((width - imgWidth) / 2f, (height - imgHeight) / 2f);
+            transform.postTranslate((width - imgWidth) / 2f, (height - imgHeight) / 2f);
             // Proportionally scales the image to make its width equal its available width
             // or/and height equal its available height.
-            mImageMatrix.postScale(mFitWidthImageScale, mFitWidthImageScale, width / 2f, height / 2f);
+            transform.postScale(mFitWidthImageScale, mFitWidthImageScale, width / 2f, height / 2f);
+        }
+    }
+
+    /**
+     * Returns the zoom and pan the user has applied to the image, which can be kept, e.g., by
+     * the item id of the page of a pager, and restored onto a view that is created later for
+     * the same image through {@link #setViewportState(ImageViewportState)}.
+     *
+     * @return the state of the viewport of the image, or {@code null} if the image is shown
+     *         at its initial scale and position, or if this view has no image
+     */
+    @Nullable
+    public ImageViewportState getViewportState() {
+        Drawable d = getDrawable();
+        if (d == null || getWidth() == 0 && getHeight() == 0
+                || (mPrivateFlags & PFLAG_IMAGE_INITIALIZATION_PENDING) != 0) {
+            // Not initialized yet. Keep the state that is still to be restored, if any.
+            return mPendingViewportState;
+        }
+
+        ensureImageTransform();
+        final ImageTransform transform = mImageTransform;
+        final ImageTransform initialTransform = mTmpImageTransform;
+        computeInitialImageTransform(initialTransform, getDrawingWidth(), getDrawingHeight(),
+                d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        final float dScale = transform.getScaleX() - initialTransform.getScaleX();
+        final float dx = transform.getTranslationX() - initialTransform.getTranslationX();
+        final float dy = transform.getTranslationY() - initialTransform.getTranslationY();
+        // Take floating-point error into account
+        if (Math.abs(dScale) <= transform.getScaleX() * 1e-3f
+                && Math.abs(dx) < 1f && Math.abs(dy) < 1f) {
+            return null;
+        }
+
+        final float[] focus = mTmpFloats;
+        transform.getViewportFocus(focus);
+        return new ImageViewportState(
+                transform.getScaleX() / mFitCenterImageScale, focus[0], focus[1]);
+    }
+
+    /**
+     * Restores the zoom and pan of the image to the given state, e.g., the one of a view that
+     * showed the same image before it was destroyed. If the image has not been laid out yet,
+     * the state is restored as soon as it is, in place of its initial scale and position, and
+     * the region of the image it shows is decoded ahead of the rest of the image. The image
+     * itself is not decoded again for this.
+     *
+     * @param state the state to restore, or {@code null} to drop the one pending
+     */
+    public void setViewportState(@Nullable ImageViewportState state) {
+        mPendingViewportState = state;
+        if (state != null && getDrawable() != null && (getWidth() != 0 || getHeight() != 0)
+                && (mPrivateFlags & PFLAG_IMAGE_INITIALIZATION_PENDING) == 0) {
+            reinitializeImage();
         }
-        setImageMatrix(mImageMatrix);
     }
 
     /**
@@ -335,6 +799,86 @@ public class GestureImageView extends AppCompatImageView {
         initializeImage();
     }
 
+    /**
+     * Resets this view to the state of a newly created one, for it to be reused to show another
+     * image, e.g., when it is recycled by a {@link GalleryRecyclerPager}: the touches being
+     * tracked, the running animations and the transform of the image are dropped, and the image
+     * is cleared, with its pending decodes cancelled and its bitmaps handed back to
+     * the {@link BitmapPool#getDefault() bitmap pool}. The next image set for this view will be
+     * scaled and positioned as if this view was just laid out.
+     */
+    public void resetForRecycle() {
+        mGestureRecognizer.cancel();
+        clearTouch();
+        cancelImageTransformations();
+        if ((mPrivateFlags & PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED) != 0) {
+            mPrivateFlags &= ~PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED;
+            AnimationFrameDriver.getInstance().remove(mApplyImageTransformCallback);
+        }
+
+        setImageDrawable(null);
+
+        mImageTransform.reset();
+        mImageMatrix.reset();
+        setImageMatrix(mImageMatrix);
+        mPendingViewportState = null;
+        mPrivateFlags |= PFLAG_IMAGE_INITIALIZATION_PENDING;
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final Parcelable superState = super.onSaveInstanceState();
+        final ImageViewportState viewportState = getViewportState();
+        if (viewportState == null) {
+            return superState;
+        }
+        SavedState ss = new SavedState(superState);
+        ss.viewportState = viewportState;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        setViewportState(ss.viewportState);
+    }
+
+    /*package*/ static class SavedState extends BaseSavedState {
+        ImageViewportState viewportState;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel in) {
+            super(in);
+            viewportState = ImageViewportState.CREATOR.createFromParcel(in);
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            viewportState.writeToParcel(out, flags);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -352,10 +896,19 @@ public class GestureImageView extends AppCompatImageView {
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        ImageMemoryTrimPolicy.onImageViewAttached(this);
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        ImageMemoryTrimPolicy.onImageViewDetached(this);
+        mGestureRecognizer.cancel();
         cancelImageTransformations();
+        flushImageTransform();
     }
 
     @SuppressLint("ClickableViewAccessibility")
@@ -370,93 +923,15 @@ public class GestureImageView extends AppCompatImageView {
 
         final int actionMasked = event.getActionMasked();
         if (actionMasked == MotionEvent.ACTION_DOWN) {
-            // Make sure the touch caches are in the initial state when a new gesture starts.
+            // Make sure the touch states are in the initial state when a new gesture starts.
             resetTouch();
         }
 
-        if (mVelocityTracker == null)
-            mVelocityTracker = VelocityTracker.obtain();
-        mVelocityTracker.addMovement(event);
-
-        if (mGestureDetector.onTouchEvent(event)) // Monitor single tap and double tap events
+        // Recognize the taps, drags and pinches, which are handled by OnImageGestureListener.
+        if (mGestureRecognizer.onTouchEvent(event)) // Consumed by a double tap
             return true;
-        mScaleGestureDetector.onTouchEvent(event); // Monitor the scale gestures
 
         switch (actionMasked) {
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN:
-                onPointerDown(event);
-                break;
-
-            case MotionEvent.ACTION_MOVE:
-                if (!onPointerMove(event)) {
-                    return false;
-                }
-
-                if ((mPrivateFlags & PFLAG_IMAGE_BEING_DRAGGED) == 0) {
-                    final float absDx = Math.abs(mTouchX[mTouchX.length - 1] - mDownX);
-                    final float absDy = Math.abs(mTouchY[mTouchY.length - 1] - mDownY);
-                    if (absDx * absDx + absDy * absDy > mTouchSlopSquare) {
-                        mPrivateFlags |= PFLAG_IMAGE_BEING_DRAGGED;
-                        requestParentDisallowInterceptTouchEvent();
-                        cancelImageTransformations();
-                        ensureImageMatrix();
-                    }
-                } else {
-                    // If we are allowed to move the image via single finger when it hasn't been
-                    // zoomed in, then we can make it translated, or else it will not be moved
-                    // unless we are touching it using multiple fingers.
-                    if ((mPrivateFlags & PFLAG_MOVE_UNMAGNIFIED_IMAGE_VIA_SINGLE_FINGER_ALLOWED) == 0
-                            && event.getPointerCount() == 1) {
-                        mImageMatrix.getValues(mImageMatrixValues);
-                        final float scaleX = mImageMatrixValues[Matrix.MSCALE_X];
-                        final float scaleY = mImageMatrixValues[Matrix.MSCALE_Y];
-                        if (scaleX <= mFitCenterImageScale && scaleY <= mFitCenterImageScale) break;
-                    }
-
-                    final int width = getDrawingWidth();
-                    final int height = getDrawingHeight();
-
-                    resolveImageBounds(mImageMatrix);
-                    final float imgWidth = mImageBounds.width();
-                    final float imgHeight = mImageBounds.height();
-
-                    float dx = mTouchX[mTouchX.length - 1] - mTouchX[mTouchX.length - 2];
-                    float dy = mTouchY[mTouchY.length - 1] - mTouchY[mTouchY.length - 2];
-                    // Disallow an enlarged image to scroll in a case where the user prefers it
-                    // to be not moved in an undesired direction as the user is fast scrolling
-                    // the screen, which may eventually trigger a fling gesture.
-                    if (imgWidth > width || imgHeight > height) {
-                        if (imgWidth >= width) {
-                            if (mImageBounds.left + dx > 0) {
-                                dx = -mImageBounds.left;
-                            } else if (mImageBounds.right + dx < width) {
-                                dx = width - mImageBounds.right;
-                            }
-                        } else {
-                            dx = (width + imgWidth) / 2f - mImageBounds.right;
-                        }
-                        if (imgHeight >= height) {
-                            if (mImageBounds.top + dy > 0) {
-                                dy = -mImageBounds.top;
-                            } else if (mImageBounds.bottom + dy < height) {
-                                dy = height - mImageBounds.bottom;
-                            }
-                        } else {
-                            dy = (height + imgHeight) / 2f - mImageBounds.bottom;
-                        }
-                    }
-                    if (dx != 0 || dy != 0) {
-                        mImageMatrix.postTranslate(dx, dy);
-                        setImageMatrix(mImageMatrix);
-                    }
-                }
-                break;
-
-            case MotionEvent.ACTION_POINTER_UP:
-                onSecondaryPointerUp(event);
-                break;
-
             case MotionEvent.ACTION_UP:
                 if ((mPrivateFlags & PFLAG_IMAGE_BEING_DRAGGED) == 0
                         && (mPrivateFlags & PFLAG_HAS_PERFORMED_LONG_CLICK) != 0
@@ -469,56 +944,52 @@ public class GestureImageView extends AppCompatImageView {
                         break;
                     }
 
-                    final int width = getDrawingWidth();
-                    final int height = getDrawingHeight();
+                    ensureImageTransform();
+                    final ImageTransform transform = mImageTransform;
+                    final float width = transform.getViewWidth();
+                    final float height = transform.getViewHeight();
+                    final float scaleX = transform.getScaleX();
+                    final float scaleY = transform.getScaleY();
+                    final float translationX = transform.getTranslationX();
+                    final float translationY = transform.getTranslationY();
 
-                    resolveImageBounds(mImageMatrix);
-                    mImageMatrix.getValues(mImageMatrixValues);
-                    final float scaleX = mImageMatrixValues[Matrix.MSCALE_X];
-                    final float scaleY = mImageMatrixValues[Matrix.MSCALE_Y];
-                    final float translationX = mImageMatrixValues[Matrix.MTRANS_X];
-                    final float translationY = mImageMatrixValues[Matrix.MTRANS_Y];
+                    mGestureRecognizer.computeVelocity(mMaximumFlingVelocity);
+                    final float vx = mGestureRecognizer.getXVelocity();
+                    final float vy = mGestureRecognizer.getYVelocity();
 
                     // If the current scale of the image is larger than the maximum scale
                     // it can be scaled to, zoom it out to that scale.
                     if (scaleX > mImageMaxScale || scaleY > mImageMaxScale) {
-                        mTmpMatrix.set(mImageMatrix);
-                        mTmpMatrix.postScale(
+                        computeImageTranslationByOnScaled(
                                 mImageMaxScale / scaleX, mImageMaxScale / scaleY,
-                                width / 2f, height / 2f);
-                        computeImageTranslationByOnScaled(mTmpMatrix, mTmpPointF);
-                        mTmpPointF.offset(translationX, translationY);
+                                width / 2f, height / 2f, mTmpFloats);
 
                         startImageScaleAndTranslate(
                                 scaleX, scaleY, mImageMaxScale, mImageMaxScale,
                                 width / 2f, height / 2f,
-                                translationX, translationY, mTmpPointF.x, mTmpPointF.y,
-                                DEFAULT_DURATION_TRANSFORM_IMAGE);
+                                translationX, translationY,
+                                translationX + mTmpFloats[0], translationY + mTmpFloats[1],
+                                vx, vy, DEFAULT_DURATION_TRANSFORM_IMAGE);
                         break;
 
                         // If the current scale of the image is smaller than the scale that makes
                         // it appear center inside this view (just as the FIT_CENTER ScaleType does),
                         // then we need to zoom it in to that scale.
                     } else if (scaleX < mFitCenterImageScale || scaleY < mFitCenterImageScale) {
-                        mTmpMatrix.set(mImageMatrix);
-                        mTmpMatrix.postScale(
+                        computeImageTranslationByOnScaled(
                                 mFitCenterImageScale / scaleX, mFitCenterImageScale / scaleY,
-                                mImageBounds.left, mImageBounds.top);
-                        computeImageTranslationByOnScaled(mTmpMatrix, mTmpPointF);
-                        mTmpPointF.offset(translationX, translationY);
+                                translationX, translationY, mTmpFloats);
 
                         startImageScaleAndTranslate(
                                 scaleX, scaleY, mFitCenterImageScale, mFitCenterImageScale,
-                                mImageBounds.left, mImageBounds.top,
-                                translationX, translationY, mTmpPointF.x, mTmpPointF.y,
-                                DEFAULT_DURATION_TRANSFORM_IMAGE);
+                                translationX, translationY,
+                                translationX, translationY,
+                                translationX + mTmpFloats[0], translationY + mTmpFloats[1],
+                                vx, vy, DEFAULT_DURATION_TRANSFORM_IMAGE);
                         break;
                     }
 
                     // No scaling is needed below
-                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumFlingVelocity);
-                    final float vx = mVelocityTracker.getXVelocity(mActivePointerId);
-                    final float vy = mVelocityTracker.getYVelocity(mActivePointerId);
                     // If one of the velocities is not less than our minimum fling velocity,
                     // treat it as fling as user raises up his/her last finger that is
                     // touching the screen.
@@ -526,17 +997,17 @@ public class GestureImageView extends AppCompatImageView {
                             || Math.abs(vy) >= mMinimumFlingVelocity)) {
                         cancelImageTransformations();
                         getImageTransformer().fling(translationX, translationY, vx, vy,
-                                width, height, mImageBounds.width(), mImageBounds.height());
+                                width, height, transform.getImageWidth(), transform.getImageHeight());
                         break;
                     }
                     // Not else!
                     // Here regard it as a normal scroll
-                    computeImageTranslationByOnScaled(mImageMatrix, mTmpPointF);
-                    mTmpPointF.offset(translationX, translationY);
+                    transform.computeFitTranslation(mTmpFloats);
                     startImageScaleAndTranslate(
                             scaleX, scaleY, scaleX, scaleY, 0, 0,
-                            translationX, translationY, mTmpPointF.x, mTmpPointF.y,
-                            DEFAULT_DURATION_TRANSFORM_IMAGE);
+                            translationX, translationY,
+                            translationX + mTmpFloats[0], translationY + mTmpFloats[1],
+                            vx, vy, DEFAULT_DURATION_TRANSFORM_IMAGE);
                     break;
                 } finally {
                     clearTouch();
@@ -545,47 +1016,6 @@ public class GestureImageView extends AppCompatImageView {
         return true;
     }
 
-    private void onPointerDown(MotionEvent e) {
-        final int actionIndex = e.getActionIndex();
-        mActivePointerId = e.getPointerId(actionIndex);
-        mDownX = e.getX(actionIndex);
-        mDownY = e.getY(actionIndex);
-        markCurrTouchPoint(mDownX, mDownY);
-    }
-
-    @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    private boolean onPointerMove(MotionEvent e) {
-        final int pointerIndex = e.findPointerIndex(mActivePointerId);
-        if (pointerIndex < 0) {
-            Log.e(TAG, "Error processing scroll; pointer index for id "
-                    + mActivePointerId + " not found. Did any MotionEvents get skipped?");
-            return false;
-        }
-        markCurrTouchPoint(e.getX(pointerIndex), e.getY(pointerIndex));
-        return true;
-    }
-
-    private void onSecondaryPointerUp(MotionEvent e) {
-        final int pointerIndex = e.getActionIndex();
-        final int pointerId = e.getPointerId(pointerIndex);
-        if (pointerId == mActivePointerId) {
-            // This was our active pointer going up.
-            // Choose a new active pointer and adjust accordingly.
-            final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
-            mActivePointerId = e.getPointerId(newPointerIndex);
-            mDownX = e.getX(newPointerIndex);
-            mDownY = e.getY(newPointerIndex);
-            markCurrTouchPoint(mDownX, mDownY);
-        }
-    }
-
-    private void markCurrTouchPoint(float x, float y) {
-        System.arraycopy(mTouchX, 1, mTouchX, 0, mTouchX.length - 1);
-        mTouchX[mTouchX.length - 1] = x;
-        System.arraycopy(mTouchY, 1, mTouchY, 0, mTouchY.length - 1);
-        mTouchY[mTouchY.length - 1] = y;
-    }
-
     /*synthetic*/ void requestParentDisallowInterceptTouchEvent() {
         ViewParent parent = getParent();
         if (parent != null) {
@@ -594,37 +1024,28 @@ public class GestureImageView extends AppCompatImageView {
     }
 
     private void clearTouch() {
-        if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
-        }
+        mGestureRecognizer.clear();
         resetTouch();
     }
 
     private void resetTouch() {
-        mActivePointerId = ViewDragHelper.INVALID_POINTER;
         mPrivateFlags &= ~(PFLAG_IMAGE_BEING_DRAGGED
                 | PFLAG_HAS_PERFORMED_LONG_CLICK | PFLAG_LONG_CLICK_CONSUMED);
-        if (mVelocityTracker != null) {
-            mVelocityTracker.clear();
-        }
     }
 
-    protected class OnImageGestureListener extends GestureDetector.SimpleOnGestureListener
-            implements ScaleGestureDetector.OnScaleGestureListener {
+    protected class OnImageGestureListener extends GestureRecognizer.Callback {
 
         @Override
-        public boolean onSingleTapConfirmed(MotionEvent e) {
+        public void onSingleTapConfirmed(float x, float y) {
             performClick();
-            return true;
         }
 
         @Override
-        public void onLongPress(MotionEvent e) {
+        public void onLongPress(float x, float y) {
             mPrivateFlags |= PFLAG_HAS_PERFORMED_LONG_CLICK;
             final boolean consumed;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                consumed = performLongClick(e.getX(), e.getY());
+                consumed = performLongClick(x, y);
             } else {
                 consumed = performLongClick();
             }
@@ -634,14 +1055,14 @@ public class GestureImageView extends AppCompatImageView {
         }
 
         @Override
-        public boolean onDoubleTap(MotionEvent e) {
-            ensureImageMatrix();
+        public void onDoubleTap(float pivotX, float pivotY) {
+            ensureImageTransform();
 
-            mImageMatrix.getValues(mImageMatrixValues);
-            final float scaleX = mImageMatrixValues[Matrix.MSCALE_X];
-            final float scaleY = mImageMatrixValues[Matrix.MSCALE_Y];
-            final float translationX = mImageMatrixValues[Matrix.MTRANS_X];
-            final float translationY = mImageMatrixValues[Matrix.MTRANS_Y];
+            final ImageTransform transform = mImageTransform;
+            final float scaleX = transform.getScaleX();
+            final float scaleY = transform.getScaleY();
+            final float translationX = transform.getTranslationX();
+            final float translationY = transform.getTranslationY();
 
             final float toScaleX, toScaleY;
             // Take very small floating-point error into account ( + 0.01)
@@ -653,68 +1074,64 @@ public class GestureImageView extends AppCompatImageView {
             else // else make it zoomed in
                 toScaleX = toScaleY = mDoubleTapMagnifiedImageScale;
 
-            final float pivotX = e.getX();
-            final float pivotY = e.getY();
-
-            mTmpMatrix.set(mImageMatrix);
-            mTmpMatrix.postScale(toScaleX / scaleX, toScaleY / scaleY, pivotX, pivotY);
-            computeImageTranslationByOnScaled(mTmpMatrix, mTmpPointF);
-            mTmpPointF.offset(translationX, translationY);
+            computeImageTranslationByOnScaled(
+                    toScaleX / scaleX, toScaleY / scaleY, pivotX, pivotY, mTmpFloats);
 
             startImageScaleAndTranslate(
                     scaleX, scaleY, toScaleX, toScaleY, pivotX, pivotY,
-                    translationX, translationY, mTmpPointF.x, mTmpPointF.y,
+                    translationX, translationY,
+                    translationX + mTmpFloats[0], translationY + mTmpFloats[1],
                     DEFAULT_DURATION_TRANSFORM_IMAGE);
-            return true;
         }
 
         @Override
-        public boolean onDoubleTapEvent(MotionEvent e) {
-            return true;
+        public void onDragStart() {
+            mPrivateFlags |= PFLAG_IMAGE_BEING_DRAGGED;
+            requestParentDisallowInterceptTouchEvent();
+            cancelImageTransformations();
+            // Make sure of our transform for fear that the sizes of the image or this view
+            // might have been changed.
+            ensureImageTransform();
         }
 
         @Override
-        public boolean onScaleBegin(ScaleGestureDetector detector) {
-            if ((mPrivateFlags & PFLAG_IMAGE_BEING_DRAGGED) == 0) {
-                mPrivateFlags |= PFLAG_IMAGE_BEING_DRAGGED;
-                requestParentDisallowInterceptTouchEvent();
-                cancelImageTransformations();
-                // Make sure of our matrix for fear that the values of the current matrix
-                // of the image might have been changed.
-                ensureImageMatrix();
+        public void onDrag(float dx, float dy) {
+            final ImageTransform transform = mImageTransform;
+            // If we are allowed to move the image via single finger when it hasn't been
+            // zoomed in, then we can make it translated, or else it will not be moved
+            // unless we are touching it using multiple fingers.
+            if ((mPrivateFlags & PFLAG_MOVE_UNMAGNIFIED_IMAGE_VIA_SINGLE_FINGER_ALLOWED) == 0
+                    && mGestureRecognizer.getPointerCount() == 1
+                    && transform.getScaleX() <= mFitCenterImageScale
+                    && transform.getScaleY() <= mFitCenterImageScale) {
+                return;
+            }
+
+            // Disallow an enlarged image to scroll in a case where the user prefers it
+            // to be not moved in an undesired direction as the user is fast scrolling
+            // the screen, which may eventually trigger a fling gesture.
+            transform.clampDrag(dx, dy, mTmpFloats);
+            if (mTmpFloats[0] != 0 || mTmpFloats[1] != 0) {
+                transform.postTranslate(mTmpFloats[0], mTmpFloats[1]);
+                scheduleImageTransformApply();
             }
-            return true;
         }
 
         @Override
-        public boolean onScale(ScaleGestureDetector detector) {
-            mImageMatrix.getValues(mImageMatrixValues);
-            final float scaleX = mImageMatrixValues[Matrix.MSCALE_X];
-            final float scaleY = mImageMatrixValues[Matrix.MSCALE_Y];
-
-            final float scale = detector.getScaleFactor();
-            final float toScaleX, toScaleY;
+        public void onScale(float scaleFactor, float focusX, float focusY) {
+            final ImageTransform transform = mImageTransform;
             /*
              * Adjust the toScaleX and toScaleY to make them within the range of the scales
              * that the image can be scaled to.
              */
             final float maxScale = mImageMaxScale * IMAGE_OVERSCALE_TIMES_ON_MAXIMIZED;
-            // toScaleX
-            if (scale * scaleX > maxScale) toScaleX = maxScale / scaleX;
-            else if (scale * scaleX < mImageMinScale) toScaleX = mImageMinScale / scaleX;
-            else toScaleX = scale;
-            // toScaleY
-            if (scale * scaleY > maxScale) toScaleY = maxScale / scaleY;
-            else if (scale * scaleY < mImageMinScale) toScaleY = mImageMinScale / scaleY;
-            else toScaleY = scale;
-
-            mImageMatrix.postScale(toScaleX, toScaleY, detector.getFocusX(), detector.getFocusY());
-            setImageMatrix(mImageMatrix);
-            return true;
-        }
+            final float toScaleX = ImageTransform.clampScaleFactor(
+                    scaleFactor, transform.getScaleX(), mImageMinScale, maxScale);
+            final float toScaleY = ImageTransform.clampScaleFactor(
+                    scaleFactor, transform.getScaleY(), mImageMinScale, maxScale);
 
-        @Override
-        public void onScaleEnd(ScaleGestureDetector detector) {
+            transform.postScale(toScaleX, toScaleY, focusX, focusY);
+            scheduleImageTransformApply();
         }
     }
 
@@ -725,37 +1142,27 @@ public class GestureImageView extends AppCompatImageView {
      * @param out    A PointF to receive the horizontal and the vertical displacements
      */
     public void computeImageTranslationByOnScaled(@NonNull Matrix matrix, @NonNull PointF out) {
-        final int width = getDrawingWidth();
-        final int height = getDrawingHeight();
-
-        float dx = 0, dy = 0;
-        resolveImageBounds(matrix);
-        // If the width of the image is greater than or equal to the width of the view,
-        // let it fill the current view horizontally,
-        if (mImageBounds.width() >= width) {
-            if (mImageBounds.left > 0) {
-                dx = -mImageBounds.left;
-            } else if (mImageBounds.right < width) {
-                dx = width - mImageBounds.right;
-            }
-            // else let it be horizontally centered.
-        } else {
-            dx = (width + mImageBounds.width()) / 2f - mImageBounds.right;
-        }
-        // If the height of the image is greater than or equal to the height of the view,
-        // let it fill the current view vertically,
-        if (mImageBounds.height() >= height) {
-            if (mImageBounds.top > 0) {
-                dy = -mImageBounds.top;
-            } else if (mImageBounds.bottom < height) {
-                dy = height - mImageBounds.bottom;
-            }
-            // else let it be vertically centered.
-        } else {
-            dy = (height + mImageBounds.height()) / 2f - mImageBounds.bottom;
-        }
+        final ImageTransform transform = mTmpImageTransform;
+        ensureImageTransform();
+        transform.set(mImageTransform);
+        matrix.getValues(mImageMatrixValues);
+        transform.setValues(mImageMatrixValues);
+        transform.computeFitTranslation(mTmpFloats);
+        out.set(mTmpFloats[0], mTmpFloats[1]);
+    }
 
-        out.set(dx, dy);
+    /**
+     * Computes the displacement the image will need to be translated by after it is zoomed
+     * from its current transformation by the given scale factors around the given pivot point.
+     *
+     * @param out an array to receive the horizontal and the vertical displacements
+     */
+    private void computeImageTranslationByOnScaled(
+            float sx, float sy, float pivotX, float pivotY, float[] out) {
+        final ImageTransform transform = mTmpImageTransform;
+        transform.set(mImageTransform);
+        transform.postScale(sx, sy, pivotX, pivotY);
+        transform.computeFitTranslation(out);
     }
 
     /**
@@ -796,18 +1203,15 @@ public class GestureImageView extends AppCompatImageView {
         }
 
         cancelImageTransformations();
-        ensureImageMatrix();
-
-        final int width = getDrawingWidth();
-        final int height = getDrawingHeight();
-
-        resolveImageBounds(mImageMatrix);
-        final float imgWidth = mImageBounds.width();
-        final float imgHeight = mImageBounds.height();
-
-        mImageMatrix.getValues(mImageMatrixValues);
-        final float startX = mImageMatrixValues[Matrix.MTRANS_X];
-        final float startY = mImageMatrixValues[Matrix.MTRANS_Y];
+        ensureImageTransform();
+
+        final ImageTransform transform = mImageTransform;
+        final float width = transform.getViewWidth();
+        final float height = transform.getViewHeight();
+        final float imgWidth = transform.getImageWidth();
+        final float imgHeight = transform.getImageHeight();
+        final float startX = transform.getTranslationX();
+        final float startY = transform.getTranslationY();
         final float overscrollX = startX + dx;
         final float overscrollY = startY + dy;
 
@@ -847,14 +1251,32 @@ public class GestureImageView extends AppCompatImageView {
             float fromScaleX, float fromScaleY, float toScaleX, float toScaleY,
             float pivotX, float pivotY, float fromX, float fromY, float toX, float toY,
             int duration) {
+        startImageScaleAndTranslate(fromScaleX, fromScaleY, toScaleX, toScaleY,
+                pivotX, pivotY, fromX, fromY, toX, toY, 0, 0, duration);
+    }
+
+    /**
+     * Same as {@link #startImageScaleAndTranslate(float, float, float, float, float, float,
+     * float, float, float, float, int)}, but takes the velocity the image is released with,
+     * in pixels per second, which the springs carry on in the {@link #IMAGE_SETTLE_MODE_SPRING
+     * spring settle mode}, where the duration is ignored.
+     */
+    private void startImageScaleAndTranslate(
+            float fromScaleX, float fromScaleY, float toScaleX, float toScaleY,
+            float pivotX, float pivotY, float fromX, float fromY, float toX, float toY,
+            float velocityX, float velocityY, int duration) {
         if (getDrawable() == null
                 || fromScaleX == toScaleX && fromScaleY == toScaleY && fromX == toX && fromY == toY) {
             return;
         }
-        cancelImageTransformations();
-        ensureImageMatrix();
+        // A running spring is redirected rather than restarted.
+        if (mImageSettleMode != IMAGE_SETTLE_MODE_SPRING
+                || mImageTransformer == null || !mImageTransformer.isSpringing()) {
+            cancelImageTransformations();
+        }
+        ensureImageTransform();
         getImageTransformer().startScaleAndTranslate(fromScaleX, fromScaleY, toScaleX, toScaleY,
-                pivotX, pivotY, fromX, fromY, toX, toY, duration);
+                pivotX, pivotY, fromX, fromY, toX, toY, velocityX, velocityY, duration);
     }
 
     /**
@@ -868,195 +1290,377 @@ public class GestureImageView extends AppCompatImageView {
         }
 
         cancelImageTransformations();
-        ensureImageMatrix();
-
-        final int width = getDrawingWidth();
-        final int height = getDrawingHeight();
+        ensureImageTransform();
 
-        resolveImageBounds(mImageMatrix);
-        final float imgWidth = mImageBounds.width();
-        final float imgHeight = mImageBounds.height();
-
-        mImageMatrix.getValues(mImageMatrixValues);
-        final float startX = mImageMatrixValues[Matrix.MTRANS_X];
-        final float startY = mImageMatrixValues[Matrix.MTRANS_Y];
+        final ImageTransform transform = mImageTransform;
+        final float width = transform.getViewWidth();
+        final float height = transform.getViewHeight();
+        final float imgWidth = transform.getImageWidth();
+        final float imgHeight = transform.getImageHeight();
+        final float startX = transform.getTranslationX();
+        final float startY = transform.getTranslationY();
 
         getImageTransformer().fling(startX, startY, velocityX, velocityY,
                 width, height, imgWidth, imgHeight);
     }
 
-    private final class ImageTransformer implements Runnable {
-
-        private final GestureImageView mView = GestureImageView.this;
+    private final class ImageTransformer implements AnimationFrameDriver.FrameCallback {
 
-        private final OverScroller mTranslator;
-        private final OverScroller mScaler;
+        // Created on the first fling or overscroll, which zooms do not need
+        private OverScroller mTranslator;
 
         private float mLastTransX, mLastTransY;
-        private float mLastScaleX, mLastScaleY;
-        private float mScalingPivotX, mScalingPivotY;
+
+        // The absolute scales and translations that the image is animated between
+        // within a fixed duration, in the order of scale x, scale y, translation x, translation y
+        private final float[] mFromValues = new float[4];
+        private final float[] mToValues = new float[4];
+        private long mTransformStartTimeNanos;
+        private int mTransformDuration;
+        private boolean mTransforming;
 
         private Predicate<Void> mSpringBackJob;
 
+        // The springs for the IMAGE_SETTLE_MODE_SPRING, created once that mode is first used
+        private CriticallyDampedSpring mScaleSpringX, mScaleSpringY;
+        private CriticallyDampedSpring mTransSpringX, mTransSpringY;
+        private boolean mSpringing;
+
+        // The translation velocity of the image measured over the last frame, in pixels per
+        // second, with which the springs take over from the translator.
+        private float mTransVelocityX, mTransVelocityY;
+        private final float[] mTransBounds = new float[4];
+        private boolean mFlinging;
+
+        private long mLastFrameTimeNanos;
+
         private boolean mRunning;
 
-        ImageTransformer(Context context) {
-            mTranslator = new OverScroller(context, sDecelerateInterpolator);
-            mScaler = new OverScroller(context, sDecelerateInterpolator);
+        ImageTransformer() {
         }
 
-        @Override
-        public void run() {
-            boolean continueRunning = false;
+        private OverScroller getTranslator() {
+            if (mTranslator == null) {
+                mTranslator = new OverScroller(getContext(), sDecelerateInterpolator);
+            }
+            return mTranslator;
+        }
 
-            if (mScaler.computeScrollOffset()) {
-                mImageMatrix.postScale(
-                        mScaler.getCurrX() / mLastScaleX, mScaler.getCurrY() / mLastScaleY,
-                        mScalingPivotX, mScalingPivotY);
+        private void stopTranslator() {
+            if (mTranslator != null) {
+                mTranslator.forceFinished(true);
+            }
+        }
 
-                mLastScaleX = mScaler.getCurrX();
-                mLastScaleY = mScaler.getCurrY();
+        boolean isSpringing() {
+            return mRunning && mSpringing;
+        }
 
-                continueRunning = true;
+        @Override
+        public boolean doFrame(long frameTimeNanos) {
+            final float dt = Math.max(0L, frameTimeNanos - mLastFrameTimeNanos) / 1e9f;
+            mLastFrameTimeNanos = frameTimeNanos;
+            if (mSpringing) {
+                stepSprings(dt);
+            } else {
+                step(frameTimeNanos, dt);
             }
-            if (mTranslator.computeScrollOffset()) {
-                mImageMatrix.postTranslate(
-                        (mTranslator.getCurrX() - mLastTransX)
-                                * (continueRunning ? mScaler.getCurrX() / mScaler.getFinalX() : 1f),
-                        (mTranslator.getCurrY() - mLastTransY)
-                                * (continueRunning ? mScaler.getCurrY() / mScaler.getFinalY() : 1f));
+            return mRunning;
+        }
 
-                mLastTransX = mTranslator.getCurrX();
-                mLastTransY = mTranslator.getCurrY();
+        private void step(long frameTimeNanos, float dt) {
+            boolean continueRunning = false;
+            boolean changed = false;
+
+            final ImageTransform transform = mImageTransform;
+            if (mTransforming) {
+                final float elapsedTime =
+                        Math.max(0L, frameTimeNanos - mTransformStartTimeNanos) / 1000000f;
+                final float q;
+                if (elapsedTime < mTransformDuration) {
+                    q = sDecelerateInterpolator.getInterpolation(elapsedTime / mTransformDuration);
+                    continueRunning = true;
+                } else {
+                    // Land exactly on the end values
+                    q = 1f;
+                    mTransforming = false;
+                }
+                // As the translation that keeps the pivot fixed is linear in the scale, animating
+                // all the values with the same fraction keeps the pivot fixed all the way.
+                final float[] from = mFromValues;
+                final float[] to = mToValues;
+                transform.set(
+                        from[0] + (to[0] - from[0]) * q, from[1] + (to[1] - from[1]) * q,
+                        from[2] + (to[2] - from[2]) * q, from[3] + (to[3] - from[3]) * q);
+                changed = true;
+
+            } else if (mTranslator != null && mTranslator.computeScrollOffset()) {
+                final float x = mTranslator.getCurrX();
+                final float y = mTranslator.getCurrY();
+                transform.set(transform.getScaleX(), transform.getScaleY(), x, y);
+                changed = true;
+
+                if (dt > 0) {
+                    mTransVelocityX = (x - mLastTransX) / dt;
+                    mTransVelocityY = (y - mLastTransY) / dt;
+                }
+                mLastTransX = x;
+                mLastTransY = y;
 
                 continueRunning = true;
+
+                if (mFlinging && mImageSettleMode == IMAGE_SETTLE_MODE_SPRING
+                        && mTranslator.isOverScrolled()) {
+                    // Hand the fling that has just reached an edge over to the springs, which
+                    // carry on its velocity into the overscroll and bring the image back.
+                    final float[] bounds = mTransBounds;
+                    springTo(transform.getScaleX(), transform.getScaleY(),
+                            clamp(mTranslator.getFinalX(), bounds[0], bounds[1]),
+                            clamp(mTranslator.getFinalY(), bounds[2], bounds[3]),
+                            mTransVelocityX, mTransVelocityY);
+                    applyImageTransform();
+                    return;
+                }
             } else {
                 Predicate<Void> springBackJob = mSpringBackJob;
                 if (springBackJob != null) {
                     mSpringBackJob = null;
                     if (springBackJob.test(null)) {
-                        run();
+                        if (mSpringing) {
+                            stepSprings(0);
+                        } else {
+                            step(frameTimeNanos, 0);
+                        }
                         return;
                     }
                 }
             }
 
             mRunning = continueRunning;
-            if (continueRunning) {
-                setImageMatrix(mImageMatrix);
-                postOnAnimation();
+            if (changed) {
+                applyImageTransform();
             }
         }
 
+        private void stepSprings(float dt) {
+            boolean continueRunning = mScaleSpringX.step(dt);
+            continueRunning |= mScaleSpringY.step(dt);
+            continueRunning |= mTransSpringX.step(dt);
+            continueRunning |= mTransSpringY.step(dt);
+
+            mImageTransform.set(mScaleSpringX.getPosition(), mScaleSpringY.getPosition(),
+                    mTransSpringX.getPosition(), mTransSpringY.getPosition());
+            applyImageTransform();
+
+            mRunning = continueRunning;
+            if (!continueRunning) {
+                mSpringing = false;
+            }
+        }
+
+        /**
+         * Lets the springs bring the image to the given absolute scale and translation,
+         * redirecting them if they are in motion, or else starting them at the current
+         * transformation of the image with the given translation velocity.
+         */
+        private void springTo(float toScaleX, float toScaleY, float toTransX, float toTransY,
+                              float velocityX, float velocityY) {
+            final ImageTransform transform = mImageTransform;
+            if (mScaleSpringX == null) {
+                mScaleSpringX = new CriticallyDampedSpring();
+                mScaleSpringY = new CriticallyDampedSpring();
+                mTransSpringX = new CriticallyDampedSpring();
+                mTransSpringY = new CriticallyDampedSpring();
+            }
+            // Snapping the springs onto their targets should not make the image jump
+            // by more than half a pixel.
+            final Drawable d = getDrawable();
+            final float imgSize = d == null ? 1f
+                    : Math.max(1f, Math.max(d.getIntrinsicWidth(), d.getIntrinsicHeight()));
+            mScaleSpringX.setRestThreshold(0.5f / imgSize);
+            mScaleSpringY.setRestThreshold(0.5f / imgSize);
+
+            if (isSpringing()) {
+                mScaleSpringX.setTarget(toScaleX);
+                mScaleSpringY.setTarget(toScaleY);
+                mTransSpringX.setTarget(toTransX);
+                mTransSpringY.setTarget(toTransY);
+            } else {
+                mScaleSpringX.start(transform.getScaleX(), 0, toScaleX);
+                mScaleSpringY.start(transform.getScaleY(), 0, toScaleY);
+                mTransSpringX.start(transform.getTranslationX(), velocityX, toTransX);
+                mTransSpringY.start(transform.getTranslationY(), velocityY, toTransY);
+            }
+            mSpringBackJob = null;
+            mFlinging = false;
+            mTransforming = false;
+            stopTranslator();
+            mSpringing = true;
+            start();
+        }
+
         void startOverScrollAndSpringBack(
                 float startX, float startY, float overscrollX, float overscrollY,
                 float viewWidth, float viewHeight, float imgWidth, float imgHeight,
                 int duration) {
+            mFlinging = false;
+            mSpringing = false;
+            mTransforming = false;
             mLastTransX = startX;
             mLastTransY = startY;
-            mTranslator.startScroll(startX, startY,
+            getTranslator().startScroll(startX, startY,
                     overscrollX - startX, overscrollY - startY, duration);
 
+            resolveTranslationBounds(viewWidth, viewHeight, imgWidth, imgHeight);
             mSpringBackJob = unused -> {
-                float minX, maxX;
-                float minY, maxY;
-                if (imgWidth < viewWidth) {
-                    minX = (viewWidth - imgWidth) / 2;
-                    maxX = minX;
-                } else {
-                    minX = -(imgWidth - viewWidth);
-                    maxX = 0;
-                }
-                if (imgHeight < viewHeight) {
-                    minY = (viewHeight - imgHeight) / 2;
-                    maxY = minY;
-                } else {
-                    minY = -(imgHeight - viewHeight);
-                    maxY = 0;
+                final float[] bounds = mTransBounds;
+                if (mImageSettleMode == IMAGE_SETTLE_MODE_SPRING) {
+                    final ImageTransform transform = mImageTransform;
+                    final float toX = clamp(transform.getTranslationX(), bounds[0], bounds[1]);
+                    final float toY = clamp(transform.getTranslationY(), bounds[2], bounds[3]);
+                    if (toX == transform.getTranslationX() && toY == transform.getTranslationY()) {
+                        return false;
+                    }
+                    springTo(transform.getScaleX(), transform.getScaleY(), toX, toY,
+                            mTransVelocityX, mTransVelocityY);
+                    return true;
                 }
-                return mTranslator.springBack(
-                        mTranslator.getCurrX(), mTranslator.getCurrY(), minX, maxX, minY, maxY);
+                return mTranslator.springBack(mTranslator.getCurrX(), mTranslator.getCurrY(),
+                        bounds[0], bounds[1], bounds[2], bounds[3]);
             };
 
-            postOnAnimation();
+            start();
         }
 
         void startScaleAndTranslate(
                 float fromScaleX, float fromScaleY, float toScaleX, float toScaleY,
                 float pivotX, float pivotY, float fromX, float fromY, float toX, float toY,
-                int duration) {
-            mScalingPivotX = pivotX;
-            mScalingPivotY = pivotY;
-            mLastScaleX = fromScaleX;
-            mLastScaleY = fromScaleY;
-            mScaler.startScroll(fromScaleX, fromScaleY,
-                    toScaleX - fromScaleX, toScaleY - fromScaleY, duration);
-
-            mLastTransX = fromX;
-            mLastTransY = fromY;
-            mTranslator.startScroll(fromX, fromY, toX - fromX, toY - fromY, duration);
+                float velocityX, float velocityY, int duration) {
+            // The translation the image will end up with once it is scaled around the pivot
+            // and then translated by the given displacement
+            final float ratioX = toScaleX / fromScaleX;
+            final float ratioY = toScaleY / fromScaleY;
+            final float endX = ratioX * fromX + (pivotX - ratioX * pivotX) + (toX - fromX);
+            final float endY = ratioY * fromY + (pivotY - ratioY * pivotY) + (toY - fromY);
+
+            if (mImageSettleMode == IMAGE_SETTLE_MODE_SPRING) {
+                springTo(toScaleX, toScaleY, endX, endY, velocityX, velocityY);
+                return;
+            }
 
-            postOnAnimation();
+            mFlinging = false;
+            mSpringing = false;
+            mSpringBackJob = null;
+            stopTranslator();
+
+            final float[] from = mFromValues;
+            final float[] to = mToValues;
+            from[0] = fromScaleX;
+            from[1] = fromScaleY;
+            from[2] = fromX;
+            from[3] = fromY;
+            to[0] = toScaleX;
+            to[1] = toScaleY;
+            to[2] = endX;
+            to[3] = endY;
+            mTransformStartTimeNanos = AnimationFrameDriver.getInstance().getFrameTimeNanos();
+            mTransformDuration = duration;
+            mTransforming = true;
+
+            start();
         }
 
         void fling(
                 float startX, float startY, float velocityX, float velocityY,
                 float viewWidth, float viewHeight, float imgWidth, float imgHeight) {
-            float minX, maxX;
-            float minY, maxY;
-            if (imgWidth < viewWidth) {
-                minX = (viewWidth - imgWidth) / 2;
-                maxX = minX;
-            } else {
-                minX = -(imgWidth - viewWidth);
-                maxX = 0;
-            }
-            if (imgHeight < viewHeight) {
-                minY = (viewHeight - imgHeight) / 2;
-                maxY = minY;
-            } else {
-                minY = -(imgHeight - viewHeight);
-                maxY = 0;
-            }
-
+            resolveTranslationBounds(viewWidth, viewHeight, imgWidth, imgHeight);
+            final float[] bounds = mTransBounds;
+            final float minX = bounds[0], maxX = bounds[1];
+            final float minY = bounds[2], maxY = bounds[3];
+
+            mSpringing = false;
+            mTransforming = false;
+            mFlinging = true;
+            mTransVelocityX = velocityX;
+            mTransVelocityY = velocityY;
             mLastTransX = startX;
             mLastTransY = startY;
-            mTranslator.fling(startX, startY, velocityX, velocityY, minX, maxX, minY, maxY,
+            getTranslator().fling(startX, startY, velocityX, velocityY, minX, maxX, minY, maxY,
                     minX == maxX ? 0 : mImageOverTranslation,
                     minY == maxY ? 0 : mImageOverTranslation);
-            postOnAnimation();
+            start();
         }
 
-        private void postOnAnimation() {
-            mRunning = true;
-            ViewCompat.postOnAnimation(mView, this::run);
+        private void resolveTranslationBounds(
+                float viewWidth, float viewHeight, float imgWidth, float imgHeight) {
+            final ImageTransform transform = mTmpImageTransform;
+            transform.set(1f, 1f, 0f, 0f);
+            transform.setImageSize(imgWidth, imgHeight);
+            transform.setViewSize(viewWidth, viewHeight);
+            transform.getTranslationRange(mTransBounds);
+        }
+
+        private void start() {
+            if (!mRunning) {
+                mRunning = true;
+                mLastFrameTimeNanos = AnimationFrameDriver.getInstance().getFrameTimeNanos();
+            }
+            AnimationFrameDriver.getInstance().add(this);
         }
 
         void cancel() {
             if (mRunning) {
                 mRunning = false;
                 mSpringBackJob = null;
-                mTranslator.forceFinished(true);
-                mScaler.forceFinished(true);
-                removeCallbacks(this::run);
+                mSpringing = false;
+                mFlinging = false;
+                mTransforming = false;
+                stopTranslator();
+                AnimationFrameDriver.getInstance().remove(this);
             }
         }
 
         void end() {
             if (mRunning) {
                 mRunning = false;
-                if (mSpringBackJob != null) {
-                    mSpringBackJob.test(null);
+                if (mSpringing) {
+                    mSpringing = false;
+                    mScaleSpringX.snapToTarget();
+                    mScaleSpringY.snapToTarget();
+                    mTransSpringX.snapToTarget();
+                    mTransSpringY.snapToTarget();
+                    stepSprings(0);
+                } else {
+                    final ImageTransform transform = mImageTransform;
+                    if (mTransforming) {
+                        mTransforming = false;
+                        final float[] to = mToValues;
+                        transform.set(to[0], to[1], to[2], to[3]);
+                    } else if (mTranslator != null) {
+                        mTranslator.abortAnimation();
+                        float x = mTranslator.getCurrX();
+                        float y = mTranslator.getCurrY();
+                        if (mSpringBackJob != null) {
+                            final float[] bounds = mTransBounds;
+                            x = clamp(x, bounds[0], bounds[1]);
+                            y = clamp(y, bounds[2], bounds[3]);
+                        }
+                        transform.set(transform.getScaleX(), transform.getScaleY(), x, y);
+                    }
                     mSpringBackJob = null;
+                    applyImageTransform();
                 }
-                mTranslator.abortAnimation();
-                mScaler.abortAnimation();
-                run();
-                removeCallbacks(this::run);
+                mFlinging = false;
+                mRunning = false;
+                AnimationFrameDriver.getInstance().remove(this);
             }
         }
     }
 
+    /*synthetic*/ static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
     /**
      * Cancels the running animator and the pending animation that will bounce this image back
      * after it is over-translated.
@@ -1068,27 +1672,52 @@ public class GestureImageView extends AppCompatImageView {
     }
 
     /**
-     * Ensures our values of the matrix {@link #mImageMatrix} are equal to the values of
-     * the current matrix of the image since they may have been changed in other class.
+     * Ensures the sizes that {@link #mImageTransform} works with are the current ones of the image
+     * and this view, since they may have been changed after it was last used.
+     * <p>
+     * Its scale and translation are always in sync with the image matrix, which is taken over
+     * whenever it is set from outside of this class, through {@link #setImageMatrix(Matrix)}.
      */
-    /*synthetic*/ void ensureImageMatrix() {
-        Matrix matrix = getImageMatrix();
-        if (!mImageMatrix.equals(matrix))
-            mImageMatrix.set(matrix);
+    /*synthetic*/ void ensureImageTransform() {
+        Drawable d = getDrawable();
+        if (d == null) {
+            mImageTransform.setImageSize(0, 0);
+        } else {
+            mImageTransform.setImageSize(d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        }
+        mImageTransform.setViewSize(getDrawingWidth(), getDrawingHeight());
     }
 
     /**
-     * Resolves the image bounds by providing a matrix.
-     *
-     * @param matrix the matrix used to measure this image
+     * Pushes {@link #mImageTransform} to the image matrix of this view. This is the only place
+     * the native matrix is touched during a gesture or an animation, once per event or frame.
      */
-    /*package*/ void resolveImageBounds(Matrix matrix) {
-        Drawable d = getDrawable();
-        if (d == null) {
-            mImageBounds.setEmpty();
-        } else {
-            mImageBounds.set(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
-            matrix.mapRect(mImageBounds);
+    /*synthetic*/ void applyImageTransform() {
+        mImageTransform.getValues(mImageMatrixValues);
+        mImageMatrix.setValues(mImageMatrixValues);
+        setImageMatrix(mImageMatrix);
+    }
+
+    /**
+     * Schedules {@link #applyImageTransform()} to be called on the next animation frame if it has
+     * not been, so that the changes made to {@link #mImageTransform} by the touch events, which
+     * can be delivered several times a frame on high rate touch panels, are pushed to the image
+     * matrix and invalidate this view only once a frame.
+     */
+    /*synthetic*/ void scheduleImageTransformApply() {
+        if ((mPrivateFlags & PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED) == 0) {
+            mPrivateFlags |= PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED;
+            AnimationFrameDriver.getInstance().add(mApplyImageTransformCallback);
+        }
+    }
+
+    /**
+     * Pushes the changes pending for the next animation frame to the image matrix right now.
+     */
+    private void flushImageTransform() {
+        if ((mPrivateFlags & PFLAG_IMAGE_TRANSFORM_APPLY_SCHEDULED) != 0) {
+            AnimationFrameDriver.getInstance().remove(mApplyImageTransformCallback);
+            mApplyImageTransformCallback.doFrame(System.nanoTime());
         }
     }
 
@@ -1100,8 +1729,9 @@ public class GestureImageView extends AppCompatImageView {
         if (d == null) {
             out.setEmpty();
         } else {
-            out.set(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
-            getImageMatrix().mapRect(out);
+            ensureImageTransform();
+            out.set(mImageTransform.getImageLeft(), mImageTransform.getImageTop(),
+                    mImageTransform.getImageRight(), mImageTransform.getImageBottom());
         }
     }
 
@@ -0,0 +1,601 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.customview.widget.ViewDragHelper;
+
+/**
+ * Recognizes the taps, double taps, long presses, drags and pinches of a stream of touch events,
+ * and estimates the velocity of the pointer being tracked, in a single pass over each event,
+ * in place of a {@link android.view.GestureDetector}, a {@link android.view.ScaleGestureDetector}
+ * and a {@link android.view.VelocityTracker} each walking the same pointers again.
+ * <p>
+ * The taps and pinches are recognized the same way as by the framework detectors, while the
+ * velocity is estimated by a {@link VelocityEstimator} only when it is asked for. Nothing is
+ * allocated per event. A recognizer created without a {@link Callback} only tracks the pointers
+ * and their velocity, e.g., for a pager to make its intercept decisions.
+ * <p>
+ * The same event may be passed in more than once, e.g., from both the
+ * {@code onInterceptTouchEvent()} and the {@code onTouchEvent()} of a ViewGroup, and will only
+ * be processed once. A recognizer can also share the velocity tracking of another one that is
+ * fed the same gestures, e.g., the one of its parent, through
+ * {@link #setVelocitySource(GestureRecognizer)}, so that each gesture is tracked by a single
+ * estimator however many views look at its velocity. The velocity is tracked in screen
+ * coordinates for that purpose, which are the same for the views with no transformation.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class GestureRecognizer {
+    private static final String TAG = "GestureRecognizer";
+
+    /**
+     * The callback for the gestures recognized, each method of which is called on the main thread
+     * and does nothing by default.
+     */
+    public abstract static class Callback {
+        /**
+         * Called when the pointer being tracked moves beyond the drag slop, or when a pinch
+         * begins, whichever comes first, after which its moves are reported through
+         * {@link #onDrag(float, float)}.
+         */
+        public void onDragStart() {
+        }
+
+        /**
+         * Called for each position, including the historical ones, of the pointer being tracked
+         * since the drag started.
+         */
+        public void onDrag(float dx, float dy) {
+        }
+
+        public void onScaleBegin(float focusX, float focusY) {
+        }
+
+        /**
+         * @param scaleFactor the ratio of the current span of the pointers to the previous one
+         * @param focusX      the X coordinate of the center of the pointers
+         * @param focusY      the Y coordinate of the center of the pointers
+         */
+        public void onScale(float scaleFactor, float focusX, float focusY) {
+        }
+
+        public void onScaleEnd() {
+        }
+
+        /** Called when a single tap is confirmed not to be followed by a second one. */
+        public void onSingleTapConfirmed(float x, float y) {
+        }
+
+        /**
+         * Called on the down of the second tap of a double tap, the events after which are
+         * consumed until the up.
+         *
+         * @param x the X coordinate of the down of the first tap
+         * @param y the Y coordinate of the down of the first tap
+         */
+        public void onDoubleTap(float x, float y) {
+        }
+
+        public void onLongPress(float x, float y) {
+        }
+    }
+
+    /** The minimum time between the up of a tap and the down of the next one to double tap */
+    private static final int DOUBLE_TAP_MIN_TIME = 40; // ms
+
+    /** The minimum span between the pointers to be pinched, for a pinch to begin */
+    private static final float MIN_SCALING_SPAN = 27; // mm
+
+    private static final int MSG_LONG_PRESS = 1;
+    private static final int MSG_TAP = 2;
+
+    @Nullable
+    private final Callback mCallback;
+    private Handler mHandler;
+
+    private final float mTapSlopSquare;
+    private final float mDoubleTapSlopSquare;
+    private float mDragSlopSquare;
+    private final float mSpanSlop;
+    private final float mMinSpan;
+
+    private boolean mTracking;
+    private int mActivePointerId = ViewDragHelper.INVALID_POINTER;
+    private int mPointerCount;
+    private float mDownX;
+    private float mDownY;
+    private float mLastX;
+    private float mLastY;
+    private boolean mDragging;
+
+    private long mLastEventTime = -1;
+    private long mLastDownTime = -1;
+    private int mLastAction = -1;
+
+    private final VelocityEstimator mOwnVelocityEstimator = new VelocityEstimator();
+    /** The estimator the velocity of the current gesture is tracked by */
+    private VelocityEstimator mVelocityEstimator = mOwnVelocityEstimator;
+    @Nullable
+    private GestureRecognizer mVelocitySource;
+
+    private float mTapDownX;
+    private float mTapDownY;
+    private long mTapUpTime;
+    private boolean mHasTapUp;
+    private boolean mTapPending;
+    private boolean mStillDown;
+    private boolean mDeferConfirmSingleTap;
+    private boolean mAlwaysInTapRegion;
+    private boolean mAlwaysInBiggerTapRegion;
+    private boolean mDoubleTapping;
+    private boolean mInLongPress;
+
+    private boolean mScaling;
+    private float mInitialSpan;
+    private float mPrevSpan;
+
+    public GestureRecognizer(@NonNull Context context, @Nullable Callback callback) {
+        mCallback = callback;
+
+        final ViewConfiguration configuration = ViewConfiguration.get(context);
+        final int touchSlop = configuration.getScaledTouchSlop();
+        final int doubleTapSlop = configuration.getScaledDoubleTapSlop();
+        mTapSlopSquare = touchSlop * touchSlop;
+        mDoubleTapSlopSquare = doubleTapSlop * doubleTapSlop;
+        mDragSlopSquare = mTapSlopSquare;
+        mSpanSlop = touchSlop * 2;
+        mMinSpan = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_MM, MIN_SCALING_SPAN,
+                context.getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Sets the recognizer to share the velocity tracking of, for the gestures that it has
+     * started tracking on their downs before this one does, e.g., as the one of a parent view
+     * that sees the events in its {@code onInterceptTouchEvent()} before they are dispatched to
+     * its child. The positions seen by either recognizer are then fed into one estimator, and
+     * the velocity computed by either is reused by the other.
+     */
+    public void setVelocitySource(@Nullable GestureRecognizer source) {
+        mVelocitySource = source;
+    }
+
+    /** Sets the distance the pointer being tracked needs to travel for a drag to start. */
+    public void setDragSlop(float slop) {
+        mDragSlopSquare = slop * slop;
+    }
+
+    /** @return square of the distance the pointer being tracked needs to travel for a drag */
+    public float getDragSlopSquare() {
+        return mDragSlopSquare;
+    }
+
+    /** @return true if a gesture has started and not been {@link #clear() cleared} */
+    public boolean isTracking() {
+        return mTracking;
+    }
+
+    /** @return true if the current gesture has started a drag */
+    public boolean isDragging() {
+        return mDragging;
+    }
+
+    /** @return the id of the pointer being tracked */
+    public int getActivePointerId() {
+        return mActivePointerId;
+    }
+
+    /** @return the X coordinate at which the pointer being tracked was put down */
+    public float getDownX() {
+        return mDownX;
+    }
+
+    /** @return the Y coordinate at which the pointer being tracked was put down */
+    public float getDownY() {
+        return mDownY;
+    }
+
+    /** @return the number of the pointers in the last event */
+    public int getPointerCount() {
+        return mPointerCount;
+    }
+
+    /**
+     * Computes the velocity of the pointer being tracked, unless it has been computed for
+     * the same events.
+     *
+     * @param maxVelocity the maximum magnitude of the velocity along each axis, in pixels
+     *                    per second
+     */
+    public void computeVelocity(float maxVelocity) {
+        mVelocityEstimator.computeVelocity(maxVelocity);
+    }
+
+    /** @return the horizontal velocity last computed, in pixels per second */
+    public float getXVelocity() {
+        return mVelocityEstimator.getXVelocity();
+    }
+
+    /** @return the vertical velocity last computed, in pixels per second */
+    public float getYVelocity() {
+        return mVelocityEstimator.getYVelocity();
+    }
+
+    /**
+     * Stops tracking the current gesture, e.g., after its up has been handled. The pending
+     * single tap, if any, will still be confirmed. The positions tracked are kept till the next
+     * gesture, for the recognizers sharing them to finish with the current one.
+     */
+    public void clear() {
+        mTracking = false;
+        mDragging = false;
+        mActivePointerId = ViewDragHelper.INVALID_POINTER;
+    }
+
+    /** Stops tracking the current gesture, and cancels all the gestures pending or ongoing. */
+    public void cancel() {
+        clear();
+        cancelTaps();
+        mStillDown = false;
+        mHasTapUp = false;
+        endScale();
+    }
+
+    /**
+     * Processes a touch event.
+     *
+     * @return true if the event is consumed by a double tap
+     */
+    public boolean onTouchEvent(@NonNull MotionEvent ev) {
+        final int action = ev.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mTracking = true;
+        } else if (!mTracking) {
+            // The gesture has been cleared; wait for the next one.
+            return false;
+        }
+        final long eventTime = ev.getEventTime();
+        final long downTime = ev.getDownTime();
+        if (eventTime == mLastEventTime && downTime == mLastDownTime && action == mLastAction) {
+            return mDoubleTapping;
+        }
+        mLastEventTime = eventTime;
+        mLastDownTime = downTime;
+        mLastAction = action;
+        mPointerCount = ev.getPointerCount();
+
+        boolean handled = false;
+        if (mCallback != null) {
+            handled = detectTaps(ev, action);
+            if (!handled) {
+                detectScale(ev, action);
+            }
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                mDragging = false;
+                final GestureRecognizer source = mVelocitySource;
+                mVelocityEstimator = source != null
+                        && source.mTracking && source.mLastDownTime == downTime
+                        ? source.mVelocityEstimator : mOwnVelocityEstimator;
+                // fall through
+            case MotionEvent.ACTION_POINTER_DOWN:
+                trackPointer(ev, ev.getActionIndex());
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+                final int pointerIndex = ev.findPointerIndex(mActivePointerId);
+                if (pointerIndex < 0) {
+                    Log.e(TAG, "Error processing scroll; pointer index for id "
+                            + mActivePointerId + " not found. Did any MotionEvents get skipped?");
+                    break;
+                }
+                // Consume the samples batched into this event one by one, so that the drag
+                // is just as it would be with every sample delivered on its own.
+                final float x = ev.getX(pointerIndex);
+                final float y = ev.getY(pointerIndex);
+                final float screenOffsetX = ev.getRawX() - ev.getX();
+                final float screenOffsetY = ev.getRawY() - ev.getY();
+                final int historySize = ev.getHistorySize();
+                for (int i = 0; i <= historySize; i++) {
+                    if (i < historySize) {
+                        onPointerMove(ev.getHistoricalEventTime(i),
+                                ev.getHistoricalX(pointerIndex, i),
+                                ev.getHistoricalY(pointerIndex, i),
+                                screenOffsetX, screenOffsetY, handled);
+                    } else {
+                        onPointerMove(eventTime, x, y, screenOffsetX, screenOffsetY, handled);
+                    }
+                }
+                break;
+
+            case MotionEvent.ACTION_POINTER_UP:
+                final int actionIndex = ev.getActionIndex();
+                if (ev.getPointerId(actionIndex) == mActivePointerId) {
+                    // This was our active pointer going up.
+                    // Choose a new active pointer and adjust accordingly.
+                    trackPointer(ev, actionIndex == 0 ? 1 : 0);
+                }
+                break;
+
+            case MotionEvent.ACTION_UP:
+                // The up only repeats the last position, but tells whether the pointer
+                // has stopped before it.
+                mVelocityEstimator.checkStopped(eventTime);
+                break;
+        }
+        return handled;
+    }
+
+    private void trackPointer(MotionEvent ev, int pointerIndex) {
+        mActivePointerId = ev.getPointerId(pointerIndex);
+        mDownX = mLastX = ev.getX(pointerIndex);
+        mDownY = mLastY = ev.getY(pointerIndex);
+        mVelocityEstimator.clear();
+        mVelocityEstimator.addSample(ev.getEventTime(),
+                mLastX + ev.getRawX() - ev.getX(), mLastY + ev.getRawY() - ev.getY());
+    }
+
+    private void onPointerMove(long time, float x, float y,
+                               float screenOffsetX, float screenOffsetY, boolean consumed) {
+        // Samples already added by a recognizer sharing the estimator are skipped by it.
+        mVelocityEstimator.addSample(time, x + screenOffsetX, y + screenOffsetY);
+        if (mCallback != null && !consumed) {
+            if (mDragging) {
+                mCallback.onDrag(x - mLastX, y - mLastY);
+            } else {
+                final float dx = x - mDownX;
+                final float dy = y - mDownY;
+                if (dx * dx + dy * dy > mDragSlopSquare) {
+                    mDragging = true;
+                    mCallback.onDragStart();
+                }
+            }
+        }
+        mLastX = x;
+        mLastY = y;
+    }
+
+    /**
+     * Recognizes taps, double taps and long presses, as {@link android.view.GestureDetector}
+     * does.
+     *
+     * @return true if the event is consumed by a double tap
+     */
+    private boolean detectTaps(MotionEvent ev, int action) {
+        //noinspection ConstantConditions
+        final Callback callback = mCallback;
+        final Handler handler = getHandler();
+        boolean handled = false;
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                final boolean hadTapPending = mTapPending;
+                if (hadTapPending) {
+                    mTapPending = false;
+                    handler.removeMessages(MSG_TAP);
+                }
+                final float x = ev.getX();
+                final float y = ev.getY();
+                if (hadTapPending && isConsideredDoubleTap(ev.getEventTime(), x, y)) {
+                    mDoubleTapping = true;
+                    callback.onDoubleTap(mTapDownX, mTapDownY);
+                    handled = true;
+                } else {
+                    mTapPending = true;
+                    handler.sendEmptyMessageAtTime(MSG_TAP,
+                            ev.getDownTime() + ViewConfiguration.getDoubleTapTimeout());
+                }
+                mTapDownX = x;
+                mTapDownY = y;
+                mAlwaysInTapRegion = true;
+                mAlwaysInBiggerTapRegion = true;
+                mStillDown = true;
+                mInLongPress = false;
+                mDeferConfirmSingleTap = false;
+
+                handler.removeMessages(MSG_LONG_PRESS);
+                handler.sendEmptyMessageAtTime(MSG_LONG_PRESS,
+                        ev.getDownTime() + ViewConfiguration.getLongPressTimeout());
+                break;
+
+            case MotionEvent.ACTION_POINTER_DOWN:
+                cancelTaps();
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+                if (mInLongPress) break;
+                if (mDoubleTapping) {
+                    handled = true;
+                    break;
+                }
+                if (mAlwaysInTapRegion || mAlwaysInBiggerTapRegion) {
+                    final float dx = ev.getX() - mTapDownX;
+                    final float dy = ev.getY() - mTapDownY;
+                    final float distance = dx * dx + dy * dy;
+                    if (mAlwaysInTapRegion && distance > mTapSlopSquare) {
+                        mAlwaysInTapRegion = false;
+                        mTapPending = false;
+                        handler.removeMessages(MSG_TAP);
+                        handler.removeMessages(MSG_LONG_PRESS);
+                    }
+                    if (distance > mDoubleTapSlopSquare) {
+                        mAlwaysInBiggerTapRegion = false;
+                    }
+                }
+                break;
+
+            case MotionEvent.ACTION_UP:
+                mStillDown = false;
+                if (mDoubleTapping) {
+                    handled = true;
+                } else if (mInLongPress) {
+                    mTapPending = false;
+                    handler.removeMessages(MSG_TAP);
+                    mInLongPress = false;
+                } else if (mAlwaysInTapRegion && mDeferConfirmSingleTap) {
+                    callback.onSingleTapConfirmed(mTapDownX, mTapDownY);
+                }
+                mTapUpTime = ev.getEventTime();
+                mHasTapUp = true;
+                mDoubleTapping = false;
+                mDeferConfirmSingleTap = false;
+                handler.removeMessages(MSG_LONG_PRESS);
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                cancelTaps();
+                mStillDown = false;
+                mHasTapUp = false;
+                break;
+        }
+        return handled;
+    }
+
+    private boolean isConsideredDoubleTap(
+            long secondDownTime, float secondDownX, float secondDownY) {
+        if (!mHasTapUp || !mAlwaysInBiggerTapRegion) {
+            return false;
+        }
+        final long deltaTime = secondDownTime - mTapUpTime;
+        if (deltaTime > ViewConfiguration.getDoubleTapTimeout()
+                || deltaTime < DOUBLE_TAP_MIN_TIME) {
+            return false;
+        }
+        final float dx = secondDownX - mTapDownX;
+        final float dy = secondDownY - mTapDownY;
+        return dx * dx + dy * dy < mDoubleTapSlopSquare;
+    }
+
+    private void cancelTaps() {
+        if (mHandler != null) {
+            mHandler.removeMessages(MSG_LONG_PRESS);
+            mHandler.removeMessages(MSG_TAP);
+        }
+        mTapPending = false;
+        mDoubleTapping = false;
+        mAlwaysInTapRegion = false;
+        mAlwaysInBiggerTapRegion = false;
+        mDeferConfirmSingleTap = false;
+        mInLongPress = false;
+    }
+
+    private Handler getHandler() {
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper(), this::handleMessage);
+        }
+        return mHandler;
+    }
+
+    private boolean handleMessage(Message msg) {
+        //noinspection ConstantConditions
+        final Callback callback = mCallback;
+        switch (msg.what) {
+            case MSG_LONG_PRESS:
+                mTapPending = false;
+                mHandler.removeMessages(MSG_TAP);
+                mDeferConfirmSingleTap = false;
+                mInLongPress = true;
+                callback.onLongPress(mTapDownX, mTapDownY);
+                return true;
+            case MSG_TAP:
+                mTapPending = false;
+                // If the user's finger is still down, do not count it as a tap
+                if (mStillDown) {
+                    mDeferConfirmSingleTap = true;
+                } else {
+                    callback.onSingleTapConfirmed(mTapDownX, mTapDownY);
+                }
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recognizes pinches, as {@link android.view.ScaleGestureDetector} does, from the focus and
+     * the average span of the pointers, except for the one going up.
+     */
+    private void detectScale(MotionEvent ev, int action) {
+        final boolean streamComplete =
+                action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL;
+        if (action == MotionEvent.ACTION_DOWN || streamComplete) {
+            endScale();
+            if (streamComplete) return;
+        }
+
+        final boolean configChanged = action == MotionEvent.ACTION_DOWN
+                || action == MotionEvent.ACTION_POINTER_UP
+                || action == MotionEvent.ACTION_POINTER_DOWN;
+        final int skipIndex = action == MotionEvent.ACTION_POINTER_UP ? ev.getActionIndex() : -1;
+        final int count = ev.getPointerCount();
+        final int div = skipIndex < 0 ? count : count - 1;
+
+        float sumX = 0, sumY = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == skipIndex) continue;
+            sumX += ev.getX(i);
+            sumY += ev.getY(i);
+        }
+        final float focusX = sumX / div;
+        final float focusY = sumY / div;
+
+        float devSumX = 0, devSumY = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == skipIndex) continue;
+            devSumX += Math.abs(ev.getX(i) - focusX);
+            devSumY += Math.abs(ev.getY(i) - focusY);
+        }
+        // Span is the average distance between touch points through the focal point,
+        // i.e. the diameter of the circle with a radius of the average deviation from it.
+        final float spanX = devSumX / div * 2;
+        final float spanY = devSumY / div * 2;
+        final float span = (float) Math.sqrt(spanX * spanX + spanY * spanY);
+
+        final boolean wasScaling = mScaling;
+        if (mScaling && (span < mMinSpan || configChanged)) {
+            endScale();
+            mInitialSpan = span;
+        }
+        if (configChanged) {
+            mInitialSpan = mPrevSpan = span;
+        }
+        //noinspection ConstantConditions
+        final Callback callback = mCallback;
+        if (!mScaling && span >= mMinSpan
+                && (wasScaling || Math.abs(span - mInitialSpan) > mSpanSlop)) {
+            mPrevSpan = span;
+            mScaling = true;
+            if (!mDragging) {
+                mDragging = true;
+                callback.onDragStart();
+            }
+            callback.onScaleBegin(focusX, focusY);
+        }
+
+        if (action == MotionEvent.ACTION_MOVE && mScaling) {
+            callback.onScale(mPrevSpan > 0 ? span / mPrevSpan : 1f, focusX, focusY);
+            mPrevSpan = span;
+        }
+    }
+
+    private void endScale() {
+        if (mScaling) {
+            mScaling = false;
+            mInitialSpan = 0;
+            //noinspection ConstantConditions
+            mCallback.onScaleEnd();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded pool of background threads on which all the images of this library are decoded,
+ * so that no decoding ever happens on the UI thread and no more than a few decodes compete
+ * with the UI thread for CPU at a time.
+ * <p>
+ * Decoding tasks are submitted in {@link TaskGroup}s, typically one per page, and are run in
+ * the order of the priorities of their groups, i.e., the tasks for the current page first,
+ * then the ones for its neighbors and then the speculative prefetches, and in the order in
+ * which they were submitted among the tasks of the same priority. The pending tasks of a group
+ * are re-ranked as its priority changes, and can be cancelled all at once when its page is
+ * destroyed.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class ImageDecodeExecutor {
+    private ImageDecodeExecutor() {
+    }
+
+    /** The priority of the tasks for the page that is currently shown */
+    public static final int PRIORITY_VISIBLE = 0;
+    /** The priority of the tasks for the pages next to the one currently shown */
+    public static final int PRIORITY_NEIGHBOR = 1;
+    /** The priority of the tasks prefetching images for the pages not instantiated yet */
+    public static final int PRIORITY_PREFETCH = 2;
+
+    @IntDef({PRIORITY_VISIBLE, PRIORITY_NEIGHBOR, PRIORITY_PREFETCH})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+    }
+
+    /** The maximum number of images that can be decoded concurrently */
+    private static final int MAX_THREAD_COUNT =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 2));
+
+    private static final long THREAD_KEEP_ALIVE_TIME = 30; // s
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static ThreadPoolExecutor sExecutor;
+
+    /** Guards the pending tasks of all the task groups */
+    /*synthetic*/ static final Object sLock = new Object();
+
+    private static final AtomicInteger sTaskSequence = new AtomicInteger();
+
+    /*synthetic*/ static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(MAX_THREAD_COUNT, MAX_THREAD_COUNT,
+                    THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(11, (r1, r2) -> {
+                        final PrioritizedTask t1 = (PrioritizedTask) r1;
+                        final PrioritizedTask t2 = (PrioritizedTask) r2;
+                        if (t1.priority != t2.priority) {
+                            return t1.priority < t2.priority ? -1 : 1;
+                        }
+                        return Integer.compare(t1.sequence, t2.sequence);
+                    }),
+                    new DecodeThreadFactory());
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    /** Delivers a decoding result to the main thread. */
+    public static void postToMainThread(@NonNull Runnable action) {
+        sMainHandler.post(action);
+    }
+
+    /** Runs an action on the main thread after the given delay. */
+    public static void postToMainThreadDelayed(@NonNull Runnable action, long delayMillis) {
+        sMainHandler.postDelayed(action, delayMillis);
+    }
+
+    /** Removes the pending posts of an action to the main thread. */
+    public static void removeFromMainThread(@NonNull Runnable action) {
+        sMainHandler.removeCallbacks(action);
+    }
+
+    /**
+     * A group of decoding tasks sharing the same priority, e.g., the ones for the same page.
+     */
+    public static final class TaskGroup {
+        @Priority
+        private int mPriority;
+
+        /** The tasks that have been submitted but not started to run yet */
+        /*synthetic*/ final List<PrioritizedTask> mPendingTasks = new ArrayList<>();
+
+        public TaskGroup(@Priority int priority) {
+            mPriority = priority;
+        }
+
+        @Priority
+        public int getPriority() {
+            synchronized (sLock) {
+                return mPriority;
+            }
+        }
+
+        /**
+         * Changes the priority of this group, re-ranking the pending tasks in it accordingly.
+         */
+        public void setPriority(@Priority int priority) {
+            synchronized (sLock) {
+                if (mPriority == priority) return;
+                mPriority = priority;
+
+                final ThreadPoolExecutor executor = getExecutor();
+                for (PrioritizedTask task : mPendingTasks) {
+                    // Skip the task if a decoding thread has just taken it from the queue
+                    if (executor.remove(task)) {
+                        task.priority = priority;
+                        executor.execute(task);
+                    }
+                }
+            }
+        }
+
+        /** Runs the given decoding task on a background thread, at the priority of this group. */
+        public void execute(@NonNull Runnable task) {
+            synchronized (sLock) {
+                final PrioritizedTask ptask = new PrioritizedTask(this, task, mPriority);
+                mPendingTasks.add(ptask);
+                getExecutor().execute(ptask);
+            }
+        }
+
+        /**
+         * Removes the given task from the queue if it has not started to run.
+         *
+         * @return true if the task was cancelled
+         */
+        public boolean cancel(@NonNull Runnable task) {
+            synchronized (sLock) {
+                for (int i = mPendingTasks.size() - 1; i >= 0; i--) {
+                    final PrioritizedTask ptask = mPendingTasks.get(i);
+                    if (ptask.task == task) {
+                        mPendingTasks.remove(i);
+                        return getExecutor().remove(ptask);
+                    }
+                }
+                return false;
+            }
+        }
+
+        /** Removes all the tasks of this group that have not started to run from the queue. */
+        public void cancelAll() {
+            synchronized (sLock) {
+                final ThreadPoolExecutor executor = getExecutor();
+                for (PrioritizedTask task : mPendingTasks) {
+                    executor.remove(task);
+                }
+                mPendingTasks.clear();
+            }
+        }
+    }
+
+    private static final class PrioritizedTask implements Runnable {
+        final TaskGroup group;
+        final Runnable task;
+        final int sequence = sTaskSequence.getAndIncrement();
+
+        /** The priority of the group at the time this was queued, guarded by {@link #sLock} */
+        int priority;
+
+        PrioritizedTask(TaskGroup group, Runnable task, int priority) {
+            this.group = group;
+            this.task = task;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            synchronized (sLock) {
+                group.mPendingTasks.remove(this);
+            }
+            task.run();
+        }
+    }
+
+    private static final class DecodeThreadFactory implements ThreadFactory {
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        DecodeThreadFactory() {
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "ImageDecoder #" + mThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
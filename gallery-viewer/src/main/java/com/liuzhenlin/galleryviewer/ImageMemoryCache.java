@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A byte-budgeted LRU cache of the images decoded from {@link ImageSource}s, keyed by the
+ * {@link ImageSource#getCacheKey() cache key} of the source plus the sample size and config
+ * the image was decoded at, so that the pages the user swipes back to are shown at once instead
+ * of being decoded again.
+ * <p>
+ * The bitmaps obtained through {@link #acquire} or added through {@link #put} are reference
+ * counted until they are {@link #release(Bitmap) released}, thus a bitmap evicted while it is
+ * still being displayed is only handed to the {@link BitmapPool#getDefault() bitmap pool} after
+ * it is no longer displayed by anyone.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author 刘振林
+ */
+public class ImageMemoryCache {
+
+    private static ImageMemoryCache sDefault;
+
+    private final LruCache<String, Bitmap> mCache;
+
+    /** The bitmaps that are either cached or in use, and their reference counts */
+    private final Map<Bitmap, Entry> mEntries = new HashMap<>();
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private static final class Entry {
+        int refCount;
+        boolean cached;
+
+        Entry() {
+        }
+    }
+
+    /**
+     * @param maxSize the maximum number of bytes that the cached bitmaps can take up
+     */
+    public ImageMemoryCache(int maxSize) {
+        mCache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return getAllocationByteCount(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, @NonNull String key,
+                                        @NonNull Bitmap oldValue, @Nullable Bitmap newValue) {
+                if (oldValue != newValue) {
+                    onBitmapUncached(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all the views of this library, which can take up to 1/8 of
+     * the maximum memory of the current process by default.
+     */
+    @NonNull
+    public static synchronized ImageMemoryCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new ImageMemoryCache(
+                    (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE));
+        }
+        return sDefault;
+    }
+
+    /** Replaces the cache shared by all the views of this library. */
+    public static synchronized void setDefault(@NonNull ImageMemoryCache cache) {
+        sDefault = cache;
+    }
+
+    @SuppressLint("NewApi") // Guarded by isBitmapReuseSupported()
+    /*package*/ static int getAllocationByteCount(Bitmap bitmap) {
+        return BitmapPool.isBitmapReuseSupported()
+                ? bitmap.getAllocationByteCount() : bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static String makeKey(String sourceKey, int sampleSize, Bitmap.Config config) {
+        return sourceKey + '#' + sampleSize + '#' + config;
+    }
+
+    /**
+     * Obtains the cached image decoded from the source of the given key at the given sample size
+     * and config, which must be {@link #release(Bitmap) released} once it is no longer used.
+     *
+     * @return the cached bitmap, or {@code null} if there is none
+     */
+    @Nullable
+    public synchronized Bitmap acquire(
+            @NonNull String sourceKey, int sampleSize, @NonNull Bitmap.Config config) {
+        final Bitmap bitmap = mCache.get(makeKey(sourceKey, sampleSize, config));
+        if (bitmap != null) {
+            //noinspection ConstantConditions
+            mEntries.get(bitmap).refCount++;
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns whether there is an image cached for the given source key, sample size and config,
+     * marking it as recently used if so, without counting the lookup in the cache statistics.
+     */
+    /*package*/ synchronized boolean contains(
+            @NonNull String sourceKey, int sampleSize, @NonNull Bitmap.Config config) {
+        return mCache.get(makeKey(sourceKey, sampleSize, config)) != null;
+    }
+
+    /**
+     * Caches an image newly decoded from the source of the given key at the given sample size
+     * and config. The caller is regarded as having {@link #acquire acquired} the bitmap, i.e.,
+     * it must be {@link #release(Bitmap) released} once it is no longer used.
+     */
+    public synchronized void put(@NonNull String sourceKey, int sampleSize,
+                                 @NonNull Bitmap.Config config, @NonNull Bitmap bitmap) {
+        Entry entry = mEntries.get(bitmap);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(bitmap, entry);
+        }
+        entry.refCount++;
+        if (!entry.cached) {
+            entry.cached = true;
+            mCache.put(makeKey(sourceKey, sampleSize, config), bitmap);
+        }
+    }
+
+    /**
+     * Releases a bitmap obtained from or added to this cache. Bitmaps not from this cache are
+     * directly handed to the bitmap pool.
+     */
+    public synchronized void release(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+
+        final Entry entry = mEntries.get(bitmap);
+        if (entry == null) {
+            BitmapPool.getDefault().put(bitmap);
+            return;
+        }
+        if (entry.refCount > 0 && --entry.refCount == 0 && !entry.cached) {
+            mEntries.remove(bitmap);
+            BitmapPool.getDefault().put(bitmap);
+        }
+    }
+
+    /*synthetic*/ synchronized void onBitmapUncached(Bitmap bitmap) {
+        final Entry entry = mEntries.get(bitmap);
+        if (entry == null) return;
+
+        entry.cached = false;
+        if (entry.refCount == 0) {
+            mEntries.remove(bitmap);
+            BitmapPool.getDefault().put(bitmap);
+        }
+    }
+
+    /** Evicts the least recently used images until the cache fits the given size. */
+    public synchronized void trimToSize(int maxSize) {
+        mCache.trimToSize(maxSize);
+    }
+
+    /** Evicts all the cached images. */
+    public synchronized void clear() {
+        mCache.evictAll();
+    }
+
+    /** @return the total number of bytes the cached bitmaps take up */
+    public synchronized int getSize() {
+        return mCache.size();
+    }
+
+    /** @return the byte budget of this cache */
+    public synchronized int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    /** Changes the byte budget of this cache, evicting images as needed. */
+    public synchronized void setMaxSize(int maxSize) {
+        mCache.resize(maxSize);
+    }
+
+    /** @return the number of times {@link #acquire} returned a cached image */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /** @return the number of times {@link #acquire} found no cached image */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the ratio of the number of cache hits to the number of cache lookups,
+     *         or 0 if nothing has been looked up
+     */
+    public synchronized float getHitRatio() {
+        final int accesses = mHitCount + mMissCount;
+        return accesses == 0 ? 0f : (float) mHitCount / accesses;
+    }
+
+    /** @return the number of images evicted from this cache */
+    public synchronized int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "ImageMemoryCache[size=" + mCache.size() + ",maxSize=" + mCache.maxSize()
+                + ",hits=" + mHitCount + ",misses=" + mMissCount
+                + ",hitRate=" + (int) (getHitRatio() * 100) + "%"
+                + ",evictions=" + mCache.evictionCount() + "]";
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Releases the images decoded by this library in stages as the system signals memory pressure,
+ * to keep the process from being killed in the background while holding several high
+ * resolution pages. Register it once for the whole application through {@link #register(Context)}.
+ * <ol>
+ * <li><strong>Moderate pressure</strong> ({@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE},
+ *     {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN}): the tiles out of the viewports of
+ *     the images are released and the {@link BitmapPool} is trimmed to half its size.</li>
+ * <li><strong>Low memory</strong> ({@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW},
+ *     {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND}): the images of the pages other than
+ *     the current ones drop to their base layers, the bitmap pool is cleared and
+ *     the {@link ImageMemoryCache} is trimmed to half its size.</li>
+ * <li><strong>Critical pressure</strong> ({@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL},
+ *     {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} and above, {@link #onLowMemory()}):
+ *     the images of the current pages drop to their base layers too, and both caches are
+ *     cleared.</li>
+ * </ol>
+ * A {@link GestureImageView} is regarded as showing a current page unless a
+ * {@link GalleryViewPager} hosts it as a neighbor of its current page.
+ * <p>
+ * Component callbacks can only be registered since API 14. Below that, {@link #register(Context)}
+ * registers nothing, and {@link android.app.Application#onLowMemory()} should be forwarded to
+ * {@link #onLowMemory()} of the policy it returns instead.
+ *
+ * @author 刘振林
+ */
+public class ImageMemoryTrimPolicy {
+
+    /** The GestureImageViews that are attached to a window */
+    private static final List<GestureImageView> sAttachedImageViews = new ArrayList<>();
+
+    /** No memory pressure, for which nothing is released */
+    public static final int STAGE_NONE = 0;
+    /** Moderate memory pressure, for which the tiles out of the viewports are released */
+    public static final int STAGE_MODERATE = 1;
+    /** Low memory, for which the images of the pages other than the current ones are trimmed */
+    public static final int STAGE_LOW = 2;
+    /** Critical memory pressure, for which all the images and caches are trimmed */
+    public static final int STAGE_CRITICAL = 3;
+
+    /**
+     * The component callbacks that forward the memory events to this policy, created only
+     * since API 14, as the ComponentCallbacks2 interface cannot be linked to below that.
+     */
+    private Object mComponentCallbacks;
+
+    /**
+     * Creates a new policy and registers it with the application of the given context.
+     *
+     * @return the registered policy, which can be unregistered through {@link #unregister}.
+     *         It is not registered below API 14, where the low memory events should be
+     *         forwarded to it instead.
+     */
+    @NonNull
+    public static ImageMemoryTrimPolicy register(@NonNull Context context) {
+        ImageMemoryTrimPolicy policy = new ImageMemoryTrimPolicy();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            ComponentCallbacks2 callbacks = new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    policy.onTrimMemory(level);
+                }
+
+                @Override
+                public void onLowMemory() {
+                    policy.onLowMemory();
+                }
+
+                @Override
+                public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                }
+            };
+            policy.mComponentCallbacks = callbacks;
+            context.getApplicationContext().registerComponentCallbacks(callbacks);
+        }
+        return policy;
+    }
+
+    /** Unregisters this policy from the application of the given context. */
+    public void unregister(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH
+                && mComponentCallbacks != null) {
+            context.getApplicationContext().unregisterComponentCallbacks(
+                    (ComponentCallbacks2) mComponentCallbacks);
+            mComponentCallbacks = null;
+        }
+    }
+
+    /*package*/ static void onImageViewAttached(GestureImageView view) {
+        sAttachedImageViews.add(view);
+    }
+
+    /*package*/ static void onImageViewDetached(GestureImageView view) {
+        sAttachedImageViews.remove(view);
+    }
+
+    /*package*/ static int getStage(int level) {
+        // The constants are inlined at compile time, so nothing is linked below API 14.
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return STAGE_CRITICAL;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return STAGE_LOW;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return STAGE_MODERATE;
+        }
+        return STAGE_NONE;
+    }
+
+    /**
+     * Trims the images and caches for a level passed to
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        trim(getStage(level));
+    }
+
+    /** Trims all the images and caches, as the whole system is running low on memory. */
+    public void onLowMemory() {
+        trim(STAGE_CRITICAL);
+    }
+
+    /**
+     * Releases the images and trims the caches according to the given stage of memory pressure.
+     * Called on the main thread.
+     *
+     * @param stage one of {@link #STAGE_NONE}, {@link #STAGE_MODERATE}, {@link #STAGE_LOW}
+     *              and {@link #STAGE_CRITICAL}
+     */
+    protected void trim(int stage) {
+        if (stage == STAGE_NONE) return;
+
+        for (int i = sAttachedImageViews.size() - 1; i >= 0; i--) {
+            final GestureImageView view = sAttachedImageViews.get(i);
+            final boolean toBaseLayer = view.isShowingCurrentPage()
+                    ? stage >= STAGE_CRITICAL : stage >= STAGE_LOW;
+            view.trimImageMemory(toBaseLayer);
+        }
+
+        final BitmapPool pool = BitmapPool.getDefault();
+        final ImageMemoryCache cache = ImageMemoryCache.getDefault();
+        switch (stage) {
+            case STAGE_MODERATE:
+                pool.trimToSize(pool.getMaxSize() / 2);
+                break;
+            case STAGE_LOW:
+                pool.clear();
+                cache.trimToSize(cache.getMaxSize() / 2);
+                break;
+            case STAGE_CRITICAL:
+                cache.clear();
+                // Cleared after the memory cache that evicts bitmaps into it
+                pool.clear();
+                break;
+        }
+    }
+}
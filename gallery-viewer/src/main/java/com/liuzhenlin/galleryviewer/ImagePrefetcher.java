@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Decodes the base layers of the images of the pages that are not instantiated yet into the
+ * {@link ImageMemoryCache#getDefault() memory cache}, so that they can be shown at once as soon
+ * as the user swipes to them.
+ * <p>
+ * All the methods of this class must be called on the main thread.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class ImagePrefetcher {
+    private static final String TAG = "ImagePrefetcher";
+
+    /** The pending prefetches keyed by the adapter positions of their pages */
+    private final SparseArray<PrefetchTask> mTasks = new SparseArray<>();
+
+    private final ImageDecodeExecutor.TaskGroup mTaskGroup =
+            new ImageDecodeExecutor.TaskGroup(ImageDecodeExecutor.PRIORITY_PREFETCH);
+
+    /**
+     * Prefetches the image of the page at the given position if it is not being prefetched,
+     * at the resolution that fits a view of the given size. Sources are told apart by their
+     * cache keys, since adapters may create a new source for the same image on every call.
+     */
+    public void prefetch(int position, @NonNull ImageSource source, int viewWidth, int viewHeight) {
+        final String cacheKey = source.getCacheKey();
+        if (cacheKey == null || viewWidth <= 0 || viewHeight <= 0) return;
+
+        final PrefetchTask task = mTasks.get(position);
+        if (task != null && cacheKey.equals(task.source.getCacheKey())
+                && task.viewWidth == viewWidth && task.viewHeight == viewHeight) {
+            return;
+        }
+        cancel(position);
+
+        final PrefetchTask newTask = new PrefetchTask(position, source, viewWidth, viewHeight);
+        mTasks.put(position, newTask);
+        mTaskGroup.execute(newTask);
+    }
+
+    /** Cancels the prefetch of the page at the given position, if any. */
+    public void cancel(int position) {
+        final PrefetchTask task = mTasks.get(position);
+        if (task != null) {
+            task.cancelled = true;
+            mTaskGroup.cancel(task);
+            mTasks.remove(position);
+        }
+    }
+
+    /** Cancels the prefetches of all the pages out of the given range of positions. */
+    public void cancelOutside(int fromPosition, int toPosition) {
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            final int position = mTasks.keyAt(i);
+            if (position < fromPosition || position > toPosition) {
+                final PrefetchTask task = mTasks.valueAt(i);
+                task.cancelled = true;
+                mTaskGroup.cancel(task);
+                mTasks.removeAt(i);
+            }
+        }
+    }
+
+    /** Cancels all the pending prefetches. */
+    public void cancelAll() {
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            mTasks.valueAt(i).cancelled = true;
+        }
+        mTaskGroup.cancelAll();
+        mTasks.clear();
+    }
+
+    /*synthetic*/ void onPrefetchFinished(PrefetchTask task) {
+        if (mTasks.get(task.position) == task) {
+            mTasks.remove(task.position);
+        }
+    }
+
+    private final class PrefetchTask implements Runnable {
+        final int position;
+        final ImageSource source;
+        final int viewWidth;
+        final int viewHeight;
+
+        /** Set on the main thread once the page no longer needs to be prefetched */
+        volatile boolean cancelled;
+
+        PrefetchTask(int position, ImageSource source, int viewWidth, int viewHeight) {
+            this.position = position;
+            this.source = source;
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled) {
+                try {
+                    prefetch();
+                } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                    Log.w(TAG, "Failed to prefetch " + source, e);
+                }
+            }
+            ImageDecodeExecutor.postToMainThread(() -> onPrefetchFinished(this));
+        }
+
+        private void prefetch() throws IOException {
+            int width = source.getWidth();
+            int height = source.getHeight();
+            if (width <= 0 || height <= 0) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                source.decodeBounds(options);
+                width = options.outWidth;
+                height = options.outHeight;
+                if (width <= 0 || height <= 0 || cancelled) return;
+            }
+
+            // The same sample size as the one GestureImageView will choose for the image
+            // to fit center in the view
+            final float scale = Math.min((float) viewWidth / width, (float) viewHeight / height);
+            final int sampleSize = TiledImageDrawable.computeSampleSize(scale);
+            final String cacheKey = source.getCacheKey();
+            final ImageMemoryCache cache = ImageMemoryCache.getDefault();
+            //noinspection ConstantConditions
+            if (cache.contains(cacheKey, sampleSize, Bitmap.Config.ARGB_8888)) return;
+
+            final Bitmap bitmap =
+                    TiledImageDrawable.decodeBaseLayer(source, width, height, sampleSize);
+            if (bitmap != null) {
+                // Cached even if cancelled meanwhile, as the decoding has been done anyway
+                cache.put(cacheKey, sampleSize, Bitmap.Config.ARGB_8888, bitmap);
+                cache.release(bitmap);
+            }
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded LRU cache of viewport-sized previews of the images decoded from
+ * {@link ImageSource}s, persisted on disk, so that a gallery reopened later can show every page
+ * at once from its preview, while the image is being decoded from its source at the resolution
+ * the view needs.
+ * <p>
+ * The cached entries and the order in which they were used are recorded in a journal file
+ * under the cache directory, which is replayed the first time the cache is accessed and
+ * compacted once it accumulates too many redundant records. Each entry also records the
+ * dimensions of its source image, so that the layout of a page can be set up before anything
+ * is read from the source.
+ * <p>
+ * No cache is used by default. Install one through {@link #setDefault(ImagePreviewDiskCache)}
+ * to enable it for all the views of this library. The methods reading or writing the files
+ * must be called on a background thread.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author 刘振林
+ */
+public class ImagePreviewDiskCache {
+    private static final String TAG = "ImagePreviewDiskCache";
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    private static final String MAGIC = "galleryviewer.ImagePreviewDiskCache";
+    private static final String VERSION = "1";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+
+    /** The number of redundant records in the journal to trigger its compaction */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final int JPEG_QUALITY = 85;
+
+    /** The default byte budget of the cache created by {@link #create(Context)} */
+    private static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private static volatile ImagePreviewDiskCache sDefault;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+
+    /** The cache entries keyed by their file names, in access order */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private Writer mJournalWriter;
+    private int mRedundantOpCount;
+
+    private static final class Entry {
+        long length;
+        int imageWidth;
+        int imageHeight;
+
+        Entry() {
+        }
+    }
+
+    /**
+     * @param directory the directory dedicated to the cache files
+     * @param maxSize   the maximum number of bytes that the cache files can take up
+     */
+    public ImagePreviewDiskCache(@NonNull File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Creates a cache of the default byte budget in the cache directory of the application.
+     */
+    @NonNull
+    public static ImagePreviewDiskCache create(@NonNull Context context) {
+        return new ImagePreviewDiskCache(
+                new File(context.getCacheDir(), "gallery_image_previews"), DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @return the cache used by all the views of this library, or {@code null} if none
+     */
+    @Nullable
+    public static ImagePreviewDiskCache getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Sets the cache to be used by all the views of this library, or {@code null} to disable
+     * the preview caching.
+     */
+    public static void setDefault(@Nullable ImagePreviewDiskCache cache) {
+        sDefault = cache;
+    }
+
+    /**
+     * Reads the dimensions of the source image of the preview cached for the given key.
+     *
+     * @param outSize the array to receive the width and height of the image
+     * @return true if there is a preview cached for the key
+     */
+    @WorkerThread
+    public synchronized boolean getImageSize(@NonNull String key, @NonNull int[] outSize) {
+        ensureInitialized();
+        final Entry entry = mEntries.get(toFileName(key));
+        if (entry == null) {
+            return false;
+        }
+        outSize[0] = entry.imageWidth;
+        outSize[1] = entry.imageHeight;
+        return true;
+    }
+
+    /**
+     * Decodes the preview cached for the given key.
+     *
+     * @return the preview, or {@code null} if there is none or it failed to be decoded
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap get(@NonNull String key, @NonNull BitmapFactory.Options options) {
+        final String fileName = toFileName(key);
+        synchronized (this) {
+            ensureInitialized();
+            if (mEntries.get(fileName) == null) {
+                return null;
+            }
+            // Only moves the entry in the access order, which a compacted journal keeps as well
+            mRedundantOpCount++;
+            appendJournal(READ + ' ' + fileName);
+        }
+
+        // Previews are written to temporary files and then renamed, thus the file being read
+        // is never modified in place.
+        final File file = new File(mDirectory, fileName);
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            final byte[] data = new byte[(int) channel.size()];
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            //noinspection StatementWithEmptyBody
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            return BitmapFactory.decodeByteArray(data, 0, buffer.position(), options);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "Failed to read the preview for " + key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /** @return true if there is a preview cached for the given key */
+    @WorkerThread
+    public synchronized boolean contains(@NonNull String key) {
+        ensureInitialized();
+        return mEntries.containsKey(toFileName(key));
+    }
+
+    /**
+     * Caches a preview of an image under the given key, replacing the existing one if any.
+     *
+     * @param preview     the preview, which should be about the size of the view displaying it
+     * @param imageWidth  the width of the source image
+     * @param imageHeight the height of the source image
+     */
+    @WorkerThread
+    public void put(@NonNull String key, @NonNull Bitmap preview, int imageWidth, int imageHeight) {
+        final String fileName = toFileName(key);
+        final File file = new File(mDirectory, fileName);
+        final File tmpFile = new File(mDirectory, fileName + ".tmp");
+        synchronized (this) {
+            ensureInitialized();
+        }
+        try {
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                final boolean compressed = preview.hasAlpha()
+                        ? preview.compress(Bitmap.CompressFormat.PNG, 100, out)
+                        : preview.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                if (!compressed) {
+                    throw new IOException("Failed to compress the preview");
+                }
+            }
+            synchronized (this) {
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tmpFile + " to " + file);
+                }
+                Entry entry = mEntries.get(fileName);
+                if (entry == null) {
+                    entry = new Entry();
+                    mEntries.put(fileName, entry);
+                } else {
+                    mSize -= entry.length;
+                    mRedundantOpCount++;
+                }
+                entry.length = file.length();
+                entry.imageWidth = imageWidth;
+                entry.imageHeight = imageHeight;
+                mSize += entry.length;
+                appendJournal(CLEAN + ' ' + fileName + ' ' + entry.length
+                        + ' ' + imageWidth + ' ' + imageHeight);
+                trimToSize();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to cache the preview for " + key, e);
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+        }
+    }
+
+    /** Removes the preview cached for the given key if any. */
+    @WorkerThread
+    public synchronized void remove(@NonNull String key) {
+        ensureInitialized();
+        removeEntry(toFileName(key));
+    }
+
+    /** Removes all the cached previews. */
+    @WorkerThread
+    public synchronized void clear() {
+        ensureInitialized();
+        for (String fileName : mEntries.keySet().toArray(new String[0])) {
+            removeEntry(fileName);
+        }
+        rebuildJournal();
+    }
+
+    /** @return the total number of bytes the cached previews take up */
+    @WorkerThread
+    public synchronized long getSize() {
+        ensureInitialized();
+        return mSize;
+    }
+
+    /** @return the byte budget of this cache */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    private void removeEntry(String fileName) {
+        final Entry entry = mEntries.remove(fileName);
+        if (entry == null) return;
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, fileName).delete();
+        mSize -= entry.length;
+        mRedundantOpCount++;
+        appendJournal(REMOVE + ' ' + fileName);
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            final Map.Entry<String, Entry> entry = it.next();
+            it.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, entry.getKey()).delete();
+            mSize -= entry.getValue().length;
+            mRedundantOpCount++;
+            appendJournal(REMOVE + ' ' + entry.getKey());
+        }
+    }
+
+    private void ensureInitialized() {
+        if (mJournalWriter != null) return;
+
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+        if (journal.exists()) {
+            try {
+                readJournal(journal);
+                mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Journal " + journal + " is corrupt. Clearing the cache.", e);
+                mEntries.clear();
+                mSize = 0;
+                final File[] files = mDirectory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    }
+                }
+            }
+        }
+        if (mJournalWriter == null) {
+            rebuildJournal();
+        }
+    }
+
+    private void readJournal(File journal) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            int opCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+                final String fileName = parts[1];
+                switch (parts[0]) {
+                    case CLEAN:
+                        Entry entry = mEntries.get(fileName);
+                        if (entry == null) {
+                            entry = new Entry();
+                            mEntries.put(fileName, entry);
+                        } else {
+                            mSize -= entry.length;
+                        }
+                        entry.length = Long.parseLong(parts[2]);
+                        entry.imageWidth = Integer.parseInt(parts[3]);
+                        entry.imageHeight = Integer.parseInt(parts[4]);
+                        mSize += entry.length;
+                        break;
+                    case READ:
+                        mEntries.get(fileName);
+                        break;
+                    case REMOVE:
+                        final Entry removed = mEntries.remove(fileName);
+                        if (removed != null) {
+                            mSize -= removed.length;
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unexpected journal line: " + line);
+                }
+                opCount++;
+            }
+            mRedundantOpCount = opCount - mEntries.size();
+        }
+
+        // Drop the entries whose files were deleted from outside
+        final Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Entry> entry = it.next();
+            if (!new File(mDirectory, entry.getKey()).exists()) {
+                it.remove();
+                mSize -= entry.getValue().length;
+            }
+        }
+    }
+
+    /** Writes a new journal recording only the current entries, in their access order. */
+    private void rebuildJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException e) {
+                // ignored
+            }
+            mJournalWriter = null;
+        }
+
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+        final File tmpJournal = new File(mDirectory, JOURNAL_FILE_TEMP);
+        try {
+            try (Writer writer = new BufferedWriter(new FileWriter(tmpJournal))) {
+                writer.write(MAGIC + '\n' + VERSION + '\n');
+                for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                    final Entry value = entry.getValue();
+                    writer.write(CLEAN + ' ' + entry.getKey() + ' ' + value.length
+                            + ' ' + value.imageWidth + ' ' + value.imageHeight + '\n');
+                }
+            }
+            if (!tmpJournal.renameTo(journal)) {
+                throw new IOException("Failed to rename " + tmpJournal + " to " + journal);
+            }
+            mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+            mRedundantOpCount = 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the journal " + journal, e);
+        }
+    }
+
+    private void appendJournal(String record) {
+        if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && mRedundantOpCount >= mEntries.size()) {
+            rebuildJournal();
+            // The compacted journal already reflects the current state
+            return;
+        }
+        if (mJournalWriter == null) return;
+        try {
+            mJournalWriter.write(record + '\n');
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to append to the journal", e);
+        }
+    }
+
+    /** Maps a cache key, which may contain any characters, to a unique file name. */
+    private static String toFileName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+}
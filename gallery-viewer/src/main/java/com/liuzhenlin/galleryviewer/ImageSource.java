@@ -0,0 +1,364 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Describes where the encoded data of an image comes from, so that it can be decoded
+ * at whatever sample size or region a {@link GestureImageView} needs, rather than being
+ * decoded at its full resolution up front.
+ *
+ * @author 刘振林
+ */
+public abstract class ImageSource {
+
+    /** The dimensions of the image if known in advance, 0 otherwise */
+    private int mWidth;
+    private int mHeight;
+
+    /** The key given to {@link #cacheKey(String)} */
+    private String mCacheKey;
+
+    /*package*/ ImageSource() {
+    }
+
+    /**
+     * Creates an ImageSource for a drawable resource. The resource is decoded from its raw data,
+     * i.e., no density scaling is applied.
+     */
+    @NonNull
+    public static ImageSource resource(@NonNull Resources res, @DrawableRes int resId) {
+        return new ResourceImageSource(res, resId);
+    }
+
+    /** Creates an ImageSource for an image file. */
+    @NonNull
+    public static ImageSource file(@NonNull File file) {
+        return new FileImageSource(file);
+    }
+
+    /** Creates an ImageSource for an image file. */
+    @NonNull
+    public static ImageSource file(@NonNull String path) {
+        return new FileImageSource(new File(path));
+    }
+
+    /** Creates an ImageSource for a content, file or android.resource Uri. */
+    @NonNull
+    public static ImageSource uri(@NonNull Context context, @NonNull Uri uri) {
+        return new UriImageSource(context.getApplicationContext().getContentResolver(), uri);
+    }
+
+    /** Creates an ImageSource for the encoded data of an image held in memory. */
+    @NonNull
+    public static ImageSource bytes(@NonNull byte[] data) {
+        return new ByteArrayImageSource(data);
+    }
+
+    /**
+     * Creates an ImageSource for an image that is read from the given stream.
+     * <p>
+     * As an image may need to be decoded several times at different sample sizes or regions,
+     * the stream will be entirely read into memory on a background thread and then closed,
+     * the first time the image is decoded. Prefer the other kinds of sources whenever possible.
+     */
+    @NonNull
+    public static ImageSource stream(@NonNull InputStream in) {
+        return new StreamImageSource(in);
+    }
+
+    /**
+     * Provides the dimensions of the image if they are known in advance (e.g., from a media
+     * database), so that the layout of the image can be set up without reading any image data.
+     *
+     * @return this ImageSource
+     */
+    @NonNull
+    public ImageSource dimensions(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        return this;
+    }
+
+    /** @return the width of the image given to {@link #dimensions(int, int)}, or 0 if unknown */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** @return the height of the image given to {@link #dimensions(int, int)}, or 0 if unknown */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Sets the key identifying the content of the image in the {@link ImageMemoryCache},
+     * overriding the default one derived from where the image is read. This makes images read
+     * from memory or streams, which are not cached by default, able to be cached as well.
+     *
+     * @param key a key unique to the image content, or {@code null} to use the default one
+     * @return this ImageSource
+     */
+    @NonNull
+    public ImageSource cacheKey(@Nullable String key) {
+        mCacheKey = key;
+        return this;
+    }
+
+    /**
+     * Returns the key identifying the content of the image in the {@link ImageMemoryCache},
+     * or {@code null} if the images decoded from this source should not be cached.
+     */
+    @Nullable
+    public String getCacheKey() {
+        return mCacheKey;
+    }
+
+    /**
+     * Opens a new stream to read the encoded data of the image from its beginning.
+     * The caller is responsible for closing it.
+     */
+    @NonNull
+    protected abstract InputStream openStream() throws IOException;
+
+    /**
+     * Reads the dimensions of the image without decoding its pixels.
+     *
+     * @param out the options to receive the dimensions through its {@code outWidth} and
+     *            {@code outHeight} fields
+     */
+    public void decodeBounds(@NonNull BitmapFactory.Options out) throws IOException {
+        out.inJustDecodeBounds = true;
+        try {
+            decodeBitmap(out);
+        } finally {
+            out.inJustDecodeBounds = false;
+        }
+    }
+
+    /**
+     * Decodes the entire image with the given options.
+     *
+     * @return the decoded bitmap, or {@code null} if the image data could not be decoded or
+     *         only the bounds were requested
+     */
+    @Nullable
+    public Bitmap decodeBitmap(@NonNull BitmapFactory.Options options) throws IOException {
+        try (InputStream in = openStream()) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    /**
+     * Creates a region decoder for the image, which will fail for the image formats that
+     * are not supported by {@link BitmapRegionDecoder}.
+     */
+    @NonNull
+    public BitmapRegionDecoder newRegionDecoder() throws IOException {
+        try (InputStream in = openStream()) {
+            return BitmapRegionDecoder.newInstance(in, false);
+        }
+    }
+
+    private static class ByteArrayImageSource extends ImageSource {
+        byte[] mData;
+
+        ByteArrayImageSource(byte[] data) {
+            mData = data;
+        }
+
+        byte[] getData() throws IOException {
+            return mData;
+        }
+
+        @NonNull
+        @Override
+        protected InputStream openStream() throws IOException {
+            return new ByteArrayInputStream(getData());
+        }
+
+        @Nullable
+        @Override
+        public Bitmap decodeBitmap(@NonNull BitmapFactory.Options options) throws IOException {
+            final byte[] data = getData();
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+
+        @NonNull
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            final byte[] data = getData();
+            return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "ByteArrayImageSource{" + mData.length + " bytes}";
+        }
+    }
+
+    private static final class StreamImageSource extends ByteArrayImageSource {
+        private InputStream mStream;
+
+        StreamImageSource(InputStream in) {
+            super(null);
+            mStream = in;
+        }
+
+        @Override
+        synchronized byte[] getData() throws IOException {
+            if (mData == null) {
+                if (mStream == null) {
+                    throw new IOException("The stream failed to be read");
+                }
+                final InputStream in = mStream;
+                mStream = null;
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(
+                            Math.max(in.available(), 8192));
+                    final byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                    mData = out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            }
+            return mData;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "StreamImageSource{" + (mData == null ? "unread" : mData.length + " bytes") + "}";
+        }
+    }
+
+    private static final class ResourceImageSource extends ImageSource {
+        private final Resources mResources;
+        private final int mResId;
+
+        ResourceImageSource(Resources res, int resId) {
+            mResources = res;
+            mResId = resId;
+        }
+
+        @NonNull
+        @Override
+        protected InputStream openStream() throws IOException {
+            try {
+                return mResources.openRawResource(mResId);
+            } catch (Resources.NotFoundException e) {
+                throw new FileNotFoundException("Resource not found: " + mResId);
+            }
+        }
+
+        @Nullable
+        @Override
+        public String getCacheKey() {
+            final String key = super.getCacheKey();
+            return key != null ? key : "res:" + mResId;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "ResourceImageSource{" + mResId + "}";
+        }
+    }
+
+    private static final class FileImageSource extends ImageSource {
+        private final File mFile;
+
+        FileImageSource(File file) {
+            mFile = file;
+        }
+
+        @NonNull
+        @Override
+        protected InputStream openStream() throws IOException {
+            return new FileInputStream(mFile);
+        }
+
+        @Nullable
+        @Override
+        public Bitmap decodeBitmap(@NonNull BitmapFactory.Options options) {
+            return BitmapFactory.decodeFile(mFile.getPath(), options);
+        }
+
+        @NonNull
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            return BitmapRegionDecoder.newInstance(mFile.getPath(), false);
+        }
+
+        @Nullable
+        @Override
+        public String getCacheKey() {
+            final String key = super.getCacheKey();
+            return key != null ? key : "file:" + mFile.getAbsolutePath();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "FileImageSource{" + mFile + "}";
+        }
+    }
+
+    private static final class UriImageSource extends ImageSource {
+        private final ContentResolver mResolver;
+        private final Uri mUri;
+
+        UriImageSource(ContentResolver resolver, Uri uri) {
+            mResolver = resolver;
+            mUri = uri;
+        }
+
+        @NonNull
+        @Override
+        protected InputStream openStream() throws IOException {
+            InputStream in = mResolver.openInputStream(mUri);
+            if (in == null) {
+                throw new FileNotFoundException("Unable to open " + mUri);
+            }
+            return in;
+        }
+
+        @Nullable
+        @Override
+        public String getCacheKey() {
+            final String key = super.getCacheKey();
+            return key != null ? key : "uri:" + mUri;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "UriImageSource{" + mUri + "}";
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+/**
+ * The scale and translation of an image displayed in a view, held in primitive floats,
+ * along with the maths for its bounds and the clamping of it into the view, so that the image
+ * can be transformed on every touch event and animation frame without any call into the native
+ * {@link android.graphics.Matrix}, which is then only set once from {@link #getValues(float[])}
+ * when the result is pushed to the view.
+ * <p>
+ * Only scales and translations are supported, which are what a {@link GestureImageView} ever
+ * applies to its image, and the scales are assumed to be positive.
+ * <p>
+ * This class depends on nothing of the Android framework, thus can be unit tested on the JVM.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class ImageTransform {
+
+    // The indices of the values of a 3x3 matrix, the same as the ones of android.graphics.Matrix
+    /*package*/ static final int MSCALE_X = 0;
+    /*package*/ static final int MSKEW_X = 1;
+    /*package*/ static final int MTRANS_X = 2;
+    /*package*/ static final int MSKEW_Y = 3;
+    /*package*/ static final int MSCALE_Y = 4;
+    /*package*/ static final int MTRANS_Y = 5;
+    /*package*/ static final int MPERSP_0 = 6;
+    /*package*/ static final int MPERSP_1 = 7;
+    /*package*/ static final int MPERSP_2 = 8;
+
+    private float mScaleX = 1f;
+    private float mScaleY = 1f;
+    private float mTranslationX;
+    private float mTranslationY;
+
+    private float mImageWidth;
+    private float mImageHeight;
+    private float mViewWidth;
+    private float mViewHeight;
+
+    /** Sets the intrinsic size of the image. */
+    public void setImageSize(float width, float height) {
+        mImageWidth = width;
+        mImageHeight = height;
+    }
+
+    /** Sets the size of the area of the view where the image is drawn. */
+    public void setViewSize(float width, float height) {
+        mViewWidth = width;
+        mViewHeight = height;
+    }
+
+    public float getViewWidth() {
+        return mViewWidth;
+    }
+
+    public float getViewHeight() {
+        return mViewHeight;
+    }
+
+    public float getScaleX() {
+        return mScaleX;
+    }
+
+    public float getScaleY() {
+        return mScaleY;
+    }
+
+    public float getTranslationX() {
+        return mTranslationX;
+    }
+
+    public float getTranslationY() {
+        return mTranslationY;
+    }
+
+    /** Copies the transformation and the sizes of the given transform. */
+    public void set(ImageTransform src) {
+        mScaleX = src.mScaleX;
+        mScaleY = src.mScaleY;
+        mTranslationX = src.mTranslationX;
+        mTranslationY = src.mTranslationY;
+        mImageWidth = src.mImageWidth;
+        mImageHeight = src.mImageHeight;
+        mViewWidth = src.mViewWidth;
+        mViewHeight = src.mViewHeight;
+    }
+
+    public void set(float scaleX, float scaleY, float translationX, float translationY) {
+        mScaleX = scaleX;
+        mScaleY = scaleY;
+        mTranslationX = translationX;
+        mTranslationY = translationY;
+    }
+
+    /** Resets the transformation to identity. */
+    public void reset() {
+        set(1f, 1f, 0f, 0f);
+    }
+
+    /**
+     * Sets the transformation from the 9 values of a matrix, ignoring its skew and perspective.
+     */
+    public void setValues(float[] values) {
+        set(values[MSCALE_X], values[MSCALE_Y], values[MTRANS_X], values[MTRANS_Y]);
+    }
+
+    /** Writes the transformation into an array of the 9 values of a matrix. */
+    public void getValues(float[] out) {
+        out[MSCALE_X] = mScaleX;
+        out[MSKEW_X] = 0f;
+        out[MTRANS_X] = mTranslationX;
+        out[MSKEW_Y] = 0f;
+        out[MSCALE_Y] = mScaleY;
+        out[MTRANS_Y] = mTranslationY;
+        out[MPERSP_0] = 0f;
+        out[MPERSP_1] = 0f;
+        out[MPERSP_2] = 1f;
+    }
+
+    /**
+     * Post-concatenates a scale around the given pivot point to the transformation,
+     * the same as {@link android.graphics.Matrix#postScale(float, float, float, float)} does.
+     */
+    public void postScale(float sx, float sy, float px, float py) {
+        mScaleX *= sx;
+        mScaleY *= sy;
+        mTranslationX = sx * mTranslationX + (px - sx * px);
+        mTranslationY = sy * mTranslationY + (py - sy * py);
+    }
+
+    /** Post-concatenates a translation to the transformation. */
+    public void postTranslate(float dx, float dy) {
+        mTranslationX += dx;
+        mTranslationY += dy;
+    }
+
+    public float getImageLeft() {
+        return mTranslationX;
+    }
+
+    public float getImageTop() {
+        return mTranslationY;
+    }
+
+    public float getImageRight() {
+        return mTranslationX + mScaleX * mImageWidth;
+    }
+
+    public float getImageBottom() {
+        return mTranslationY + mScaleY * mImageHeight;
+    }
+
+    /** @return the width of the image as transformed */
+    public float getImageWidth() {
+        return mScaleX * mImageWidth;
+    }
+
+    /** @return the height of the image as transformed */
+    public float getImageHeight() {
+        return mScaleY * mImageHeight;
+    }
+
+    /**
+     * Computes the point of the image at the center of the view, normalized by the intrinsic
+     * size of the image, i.e., (0, 0) for its top-left corner and (1, 1) for its bottom-right one.
+     *
+     * @param out an array to receive the normalized x and y of the point
+     */
+    public void getViewportFocus(float[] out) {
+        out[0] = (mViewWidth / 2f - mTranslationX) / getImageWidth();
+        out[1] = (mViewHeight / 2f - mTranslationY) / getImageHeight();
+    }
+
+    /**
+     * Scales the image uniformly to the given scale and translates it to bring the given point
+     * of it, normalized as {@link #getViewportFocus(float[])} returns, to the center of the view,
+     * or as close to it as the image can get while staying properly positioned in the view.
+     */
+    public void setViewportFocus(float scale, float focusX, float focusY) {
+        set(scale, scale,
+                clampTranslation(mViewWidth / 2f - focusX * scale * mImageWidth,
+                        scale * mImageWidth, mViewWidth),
+                clampTranslation(mViewHeight / 2f - focusY * scale * mImageHeight,
+                        scale * mImageHeight, mViewHeight));
+    }
+
+    private static float clampTranslation(float translation, float imageSize, float viewSize) {
+        if (imageSize < viewSize) {
+            return (viewSize - imageSize) / 2f;
+        }
+        return Math.max(viewSize - imageSize, Math.min(translation, 0));
+    }
+
+    /**
+     * Computes the displacement the image needs to be translated by to be properly positioned
+     * in the view: filling the view along an axis in which it is not smaller than the view,
+     * or else centered in that axis.
+     *
+     * @param out an array to receive the horizontal and the vertical displacements
+     */
+    public void computeFitTranslation(float[] out) {
+        final float left = getImageLeft();
+        final float top = getImageTop();
+        final float right = getImageRight();
+        final float bottom = getImageBottom();
+        final float imgWidth = right - left;
+        final float imgHeight = bottom - top;
+
+        float dx = 0, dy = 0;
+        if (imgWidth >= mViewWidth) {
+            if (left > 0) {
+                dx = -left;
+            } else if (right < mViewWidth) {
+                dx = mViewWidth - right;
+            }
+        } else {
+            dx = (mViewWidth + imgWidth) / 2f - right;
+        }
+        if (imgHeight >= mViewHeight) {
+            if (top > 0) {
+                dy = -top;
+            } else if (bottom < mViewHeight) {
+                dy = mViewHeight - bottom;
+            }
+        } else {
+            dy = (mViewHeight + imgHeight) / 2f - bottom;
+        }
+        out[0] = dx;
+        out[1] = dy;
+    }
+
+    /**
+     * Adjusts the displacement of a drag on an enlarged image so that it will not be moved
+     * off any edge of the view it fills, or away from the center of the view along an axis
+     * in which it is smaller than the view. An image smaller than the view in both axes is
+     * left free to move.
+     *
+     * @param out an array to receive the adjusted horizontal and vertical displacements
+     */
+    public void clampDrag(float dx, float dy, float[] out) {
+        final float left = getImageLeft();
+        final float top = getImageTop();
+        final float right = getImageRight();
+        final float bottom = getImageBottom();
+        final float imgWidth = right - left;
+        final float imgHeight = bottom - top;
+
+        if (imgWidth > mViewWidth || imgHeight > mViewHeight) {
+            if (imgWidth >= mViewWidth) {
+                if (left + dx > 0) {
+                    dx = -left;
+                } else if (right + dx < mViewWidth) {
+                    dx = mViewWidth - right;
+                }
+            } else {
+                dx = (mViewWidth + imgWidth) / 2f - right;
+            }
+            if (imgHeight >= mViewHeight) {
+                if (top + dy > 0) {
+                    dy = -top;
+                } else if (bottom + dy < mViewHeight) {
+                    dy = mViewHeight - bottom;
+                }
+            } else {
+                dy = (mViewHeight + imgHeight) / 2f - bottom;
+            }
+        }
+        out[0] = dx;
+        out[1] = dy;
+    }
+
+    /**
+     * Computes the range of the translation within which the image stays properly positioned
+     * in the view, as {@link #computeFitTranslation(float[])} defines.
+     *
+     * @param out an array to receive the minimum and maximum translation x, followed by
+     *            the minimum and maximum translation y
+     */
+    public void getTranslationRange(float[] out) {
+        final float imgWidth = getImageWidth();
+        final float imgHeight = getImageHeight();
+        if (imgWidth < mViewWidth) {
+            out[0] = out[1] = (mViewWidth - imgWidth) / 2;
+        } else {
+            out[0] = -(imgWidth - mViewWidth);
+            out[1] = 0;
+        }
+        if (imgHeight < mViewHeight) {
+            out[2] = out[3] = (mViewHeight - imgHeight) / 2;
+        } else {
+            out[2] = -(imgHeight - mViewHeight);
+            out[3] = 0;
+        }
+    }
+
+    /**
+     * Limits a scale factor to be applied to the current scale so that the resulting scale
+     * stays within the given range.
+     */
+    public static float clampScaleFactor(float factor, float scale, float minScale, float maxScale) {
+        if (factor * scale > maxScale) return maxScale / scale;
+        if (factor * scale < minScale) return minScale / scale;
+        return factor;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageTransform{scale=(" + mScaleX + ", " + mScaleY + ")"
+                + ", translation=(" + mTranslationX + ", " + mTranslationY + ")}";
+    }
+}
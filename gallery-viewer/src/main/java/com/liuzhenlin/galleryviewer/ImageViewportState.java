@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The zoom and pan the user has applied to the image of a {@link GestureImageView}, in three
+ * floats that depend neither on the size of the view nor on the resolution the image is decoded
+ * at, so that it can be kept cheaply for many pages, or across configuration changes, and
+ * restored onto a view that is recreated for the same image.
+ *
+ * @author 刘振林
+ * @see GestureImageView#getViewportState()
+ * @see GestureImageView#setViewportState(ImageViewportState)
+ */
+public final class ImageViewportState implements Parcelable {
+
+    private final float mScale;
+    private final float mFocusX;
+    private final float mFocusY;
+
+    /*package*/ ImageViewportState(float scale, float focusX, float focusY) {
+        mScale = scale;
+        mFocusX = focusX;
+        mFocusY = focusY;
+    }
+
+    /**
+     * @return the scale of the image relative to the one for it to fit entirely inside the view
+     * @see GestureImageView#getFitCenterImageScale()
+     */
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * @return the x coordinate of the point of the image at the center of the view, normalized
+     *         by the width of the image, i.e., 0 for its left edge and 1 for its right edge
+     */
+    public float getFocusX() {
+        return mFocusX;
+    }
+
+    /**
+     * @return the y coordinate of the point of the image at the center of the view, normalized
+     *         by the height of the image, i.e., 0 for its top edge and 1 for its bottom edge
+     */
+    public float getFocusY() {
+        return mFocusY;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloat(mScale);
+        dest.writeFloat(mFocusX);
+        dest.writeFloat(mFocusY);
+    }
+
+    public static final Creator<ImageViewportState> CREATOR = new Creator<ImageViewportState>() {
+        @Override
+        public ImageViewportState createFromParcel(Parcel source) {
+            final float scale = source.readFloat();
+            final float focusX = source.readFloat();
+            final float focusY = source.readFloat();
+            return new ImageViewportState(scale, focusX, focusY);
+        }
+
+        @Override
+        public ImageViewportState[] newArray(int size) {
+            return new ImageViewportState[size];
+        }
+    };
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ImageViewportState{scale=" + mScale
+                + ", focus=(" + mFocusX + ", " + mFocusY + ")}";
+    }
+}
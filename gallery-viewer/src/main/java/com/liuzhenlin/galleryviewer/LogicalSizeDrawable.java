@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A Drawable that stretches another one to a given logical size, which is usually the size of
+ * the full resolution image that the wrapped drawable is a lower (or higher) resolution version
+ * of, e.g., a thumbnail shown as the placeholder while the full image is being loaded.
+ * <p>
+ * As the image matrix of {@link GestureImageView} works in the coordinate space of the intrinsic
+ * size of its drawable, swapping between drawables of the same logical size keeps the scales
+ * and the transformation of the image valid.
+ *
+ * @author 刘振林
+ */
+public class LogicalSizeDrawable extends Drawable implements Drawable.Callback {
+
+    private final Drawable mDrawable;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * @param drawable the drawable to be stretched to the given size
+     * @param width    the logical width of the image
+     * @param height   the logical height of the image
+     */
+    public LogicalSizeDrawable(@NonNull Drawable drawable, int width, int height) {
+        mDrawable = drawable;
+        mWidth = width;
+        mHeight = height;
+        drawable.setCallback(this);
+    }
+
+    /** @return the wrapped drawable */
+    @NonNull
+    public Drawable getDrawable() {
+        return mDrawable;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mHeight;
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        mDrawable.setBounds(bounds);
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        mDrawable.draw(canvas);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mDrawable.setAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mDrawable.setColorFilter(colorFilter);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public int getOpacity() {
+        return mDrawable.getOpacity();
+    }
+
+    @Override
+    public boolean isStateful() {
+        return mDrawable.isStateful();
+    }
+
+    @Override
+    protected boolean onStateChange(int[] state) {
+        return mDrawable.setState(state);
+    }
+
+    @Override
+    protected boolean onLevelChange(int level) {
+        return mDrawable.setLevel(level);
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        mDrawable.setVisible(visible, restart);
+        return super.setVisible(visible, restart);
+    }
+
+    @Override
+    public void invalidateDrawable(@NonNull Drawable who) {
+        invalidateSelf();
+    }
+
+    @Override
+    public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+
+    @Override
+    public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+        unscheduleSelf(what);
+    }
+}
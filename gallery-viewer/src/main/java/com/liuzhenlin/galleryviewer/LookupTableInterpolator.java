@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An interpolator that samples another, exact one into a dense table once, at construction,
+ * and then interpolates linearly between the samples, so that no transcendental function,
+ * e.g., the {@link Math#exp(double) exp} of a {@link ViscousFluidInterpolator}, needs to be
+ * evaluated per frame any more.
+ * <p>
+ * For an exact curve whose second derivative is bounded by <i>M</i> in magnitude over [0, 1],
+ * the error of this interpolator is at most <i>M</i> / (8 <i>N</i>²) + 2<sup>-22</sup>,
+ * where <i>N</i> is the number of the segments of the table and 2<sup>-22</sup> (about 2.4e-7,
+ * two float ulps of 1) covers the rounding of the table and of the interpolation in floats.
+ * E.g., a {@link ViscousFluidInterpolator} with its default scale of 8 has <i>M</i> ≈ 64,
+ * which gives an error below 8e-6 with the {@link #DEFAULT_SEGMENT_COUNT default} table, i.e.,
+ * less than one hundredth of a pixel for a scroll of 1000 pixels; and a
+ * {@link android.view.animation.DecelerateInterpolator} of factor 1 has <i>M</i> = 2, giving
+ * an error below 5e-7, which is dominated by the rounding.
+ * <p>
+ * Inputs outside [0, 1] are passed to the exact interpolator, which is also available through
+ * {@link #getExactInterpolator()} for the cases that need the exact curve.
+ *
+ * @author 刘振林
+ */
+public class LookupTableInterpolator implements Interpolator {
+
+    /** The default number of the segments of a table, which is 4 KB in size. */
+    public static final int DEFAULT_SEGMENT_COUNT = 1024;
+
+    private final Interpolator mExactInterpolator;
+
+    private final int mSegmentCount;
+    private final float[] mTable;
+
+    public LookupTableInterpolator(@NonNull Interpolator exactInterpolator) {
+        this(exactInterpolator, DEFAULT_SEGMENT_COUNT);
+    }
+
+    public LookupTableInterpolator(@NonNull Interpolator exactInterpolator, int segmentCount) {
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive");
+        }
+        mExactInterpolator = exactInterpolator;
+        mSegmentCount = segmentCount;
+        mTable = new float[segmentCount + 1];
+        for (int i = 0; i < segmentCount; i++) {
+            mTable[i] = exactInterpolator.getInterpolation((float) i / segmentCount);
+        }
+        mTable[segmentCount] = exactInterpolator.getInterpolation(1.0f);
+    }
+
+    /** @return the interpolator that the table of this one is sampled from */
+    @NonNull
+    public Interpolator getExactInterpolator() {
+        return mExactInterpolator;
+    }
+
+    /** @return the number of the segments of the table */
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        if (!(input >= 0f && input < 1f)) {
+            return input == 1f ? mTable[mSegmentCount] : mExactInterpolator.getInterpolation(input);
+        }
+        final float position = input * mSegmentCount;
+        // position < mSegmentCount for input < 1, except for rounding
+        final int index = Math.min((int) position, mSegmentCount - 1);
+        final float start = mTable[index];
+        return start + (position - index) * (mTable[index + 1] - start);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+/**
+ * Chooses how many pages a {@link GalleryViewPager} keeps on each side of its current page from
+ * a memory budget for those pages and the measured footprint of a page, so that more neighbors
+ * are kept for small images and fewer for huge ones. The budget is cut in stages while the system
+ * signals memory pressure, and restored once no signal has arrived for a while.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class OffscreenPageBudget {
+
+    /** The most pages kept on each side of the current page, however small they are */
+    /*package*/ static final int MAX_OFFSCREEN_PAGE_LIMIT = 5;
+
+    /** How long the budget stays cut after the last memory pressure signal */
+    /*package*/ static final long PRESSURE_HOLD_MILLIS = 60 * 1000L;
+
+    /** The number of bytes the pages kept on both sides of the current page can take up */
+    private final long mBudgetBytes;
+
+    private int mPressureStage = ImageMemoryTrimPolicy.STAGE_NONE;
+    private long mPressureTimeMillis;
+
+    /*package*/ OffscreenPageBudget(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+    }
+
+    /*package*/ long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    /**
+     * Records a memory pressure signal, as staged by {@link ImageMemoryTrimPolicy#getStage(int)}.
+     * A lower stage signaled while a higher one is still held does not relieve it.
+     */
+    /*package*/ void onMemoryPressure(int stage, long nowMillis) {
+        if (stage == ImageMemoryTrimPolicy.STAGE_NONE) return;
+
+        mPressureStage = Math.max(stage, getPressureStage(nowMillis));
+        mPressureTimeMillis = nowMillis;
+    }
+
+    /*package*/ int getPressureStage(long nowMillis) {
+        return nowMillis - mPressureTimeMillis < PRESSURE_HOLD_MILLIS
+                ? mPressureStage : ImageMemoryTrimPolicy.STAGE_NONE;
+    }
+
+    /**
+     * @return the time left before the memory pressure being held expires, or 0 if there is none
+     */
+    /*package*/ long getPressureHoldRemainingMillis(long nowMillis) {
+        return getPressureStage(nowMillis) == ImageMemoryTrimPolicy.STAGE_NONE
+                ? 0 : mPressureTimeMillis + PRESSURE_HOLD_MILLIS - nowMillis;
+    }
+
+    /**
+     * @return the budget cut to a half under moderate memory pressure, a quarter under low
+     *         memory and nothing under critical pressure
+     */
+    /*package*/ long getEffectiveBudgetBytes(long nowMillis) {
+        switch (getPressureStage(nowMillis)) {
+            case ImageMemoryTrimPolicy.STAGE_MODERATE:
+                return mBudgetBytes / 2;
+            case ImageMemoryTrimPolicy.STAGE_LOW:
+                return mBudgetBytes / 4;
+            case ImageMemoryTrimPolicy.STAGE_CRITICAL:
+                return 0;
+            default:
+                return mBudgetBytes;
+        }
+    }
+
+    /**
+     * @param pageByteCount the number of bytes a page is measured or estimated to take up
+     * @return the number of pages to keep on each side of the current page, no less than 1,
+     *         which is the least a ViewPager keeps, and no more than
+     *         {@link #MAX_OFFSCREEN_PAGE_LIMIT}
+     */
+    /*package*/ int computeOffscreenPageLimit(long pageByteCount, long nowMillis) {
+        final long limit = getEffectiveBudgetBytes(nowMillis) / (2 * Math.max(pageByteCount, 1));
+        return (int) Math.max(1, Math.min(limit, MAX_OFFSCREEN_PAGE_LIMIT));
+    }
+}
@@ -20,9 +20,10 @@ import android.content.Context;
 import android.hardware.SensorManager;
 import android.util.Log;
 import android.view.ViewConfiguration;
-import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 
+import androidx.annotation.NonNull;
+
 /**
  * This class encapsulates scrolling with the ability to overshoot the bounds
  * of a scrolling operation. This class is a drop-in replacement for
@@ -35,9 +36,12 @@ public class OverScroller {
     private final SplineOverScroller mScrollerY;
 
     private Interpolator mInterpolator;
+    private static Interpolator sDefaultInterpolator;
 
     private final boolean mFlywheel;
 
+    private FrameClock mFrameClock = FrameClock.getDefault();
+
     private static final int DEFAULT_DURATION = 250;
     private static final int SCROLL_MODE = 0;
     private static final int FLING_MODE = 1;
@@ -69,14 +73,22 @@ public class OverScroller {
      * @hide
      */
     public OverScroller(Context context, Interpolator interpolator, boolean flywheel) {
+        this(context.getResources().getDisplayMetrics().density, interpolator, flywheel);
+    }
+
+    /**
+     * Creates an OverScroller for a screen of the given density, with no Context needed,
+     * e.g., to replay its animations on the JVM.
+     */
+    /*package*/ OverScroller(float density, Interpolator interpolator, boolean flywheel) {
         if (interpolator == null) {
-            mInterpolator = new ViscousFluidInterpolator();
+            mInterpolator = getDefaultInterpolator();
         } else {
             mInterpolator = interpolator;
         }
         mFlywheel = flywheel;
-        mScrollerX = new SplineOverScroller(context);
-        mScrollerY = new SplineOverScroller(context);
+        mScrollerX = new SplineOverScroller(density);
+        mScrollerY = new SplineOverScroller(density);
     }
 
     /**
@@ -118,14 +130,42 @@ public class OverScroller {
         this(context, interpolator, flywheel);
     }
 
+    /**
+     * The default (viscous) interpolator, read from a table shared by all the scrollers
+     * rather than evaluating its exponentials per frame. Pass a {@link ViscousFluidInterpolator}
+     * to a constructor for the exact curve.
+     */
+    private static Interpolator getDefaultInterpolator() {
+        if (sDefaultInterpolator == null) {
+            sDefaultInterpolator = new LookupTableInterpolator(new ViscousFluidInterpolator());
+        }
+        return sDefaultInterpolator;
+    }
+
     void setInterpolator(Interpolator interpolator) {
         if (interpolator == null) {
-            mInterpolator = new ViscousFluidInterpolator();
+            mInterpolator = getDefaultInterpolator();
         } else {
             mInterpolator = interpolator;
         }
     }
 
+    /**
+     * Sets the clock that the animations are computed against, which is
+     * {@link FrameClock#getDefault()} by default.
+     */
+    public void setFrameClock(@NonNull FrameClock clock) {
+        mFrameClock = clock;
+        mScrollerX.mFrameClock = clock;
+        mScrollerY.mFrameClock = clock;
+    }
+
+    /** @return the clock that the animations are computed against */
+    @NonNull
+    public FrameClock getFrameClock() {
+        return mFrameClock;
+    }
+
     /**
      * The amount of friction applied to flings. The default value
      * is {@link ViewConfiguration#getScrollFriction}.
@@ -304,14 +344,13 @@ public class OverScroller {
 
         switch (mMode) {
             case SCROLL_MODE:
-                long time = AnimationUtils.currentAnimationTimeMillis();
                 // Any scroller can be used for time, since they were started
                 // together in scroll mode. We use X here.
-                final long elapsedTime = time - mScrollerX.mStartTime;
+                final float elapsedTime = mScrollerX.elapsedTimeMillis();
 
                 final int duration = mScrollerX.mDuration;
                 if (elapsedTime < duration) {
-                    final float q = mInterpolator.getInterpolation(elapsedTime / (float) duration);
+                    final float q = mInterpolator.getInterpolation(elapsedTime / duration);
                     mScrollerX.updateScroll(q);
                     mScrollerY.updateScroll(q);
                 } else {
@@ -525,9 +564,9 @@ public class OverScroller {
      * @hide
      */
     public int timePassed() {
-        final long time = AnimationUtils.currentAnimationTimeMillis();
+        final long time = mFrameClock.nanoTime();
         final long startTime = Math.min(mScrollerX.mStartTime, mScrollerY.mStartTime);
-        return (int) (time - startTime);
+        return (int) ((time - startTime) / 1000000L);
     }
 
     /**
@@ -540,7 +579,7 @@ public class OverScroller {
                 && Math.signum(yvel) == Math.signum(dy);
     }
 
-    private static final class SplineOverScroller {
+    /*package*/ static final class SplineOverScroller {
         // Initial position
         float mStart;
 
@@ -559,7 +598,7 @@ public class OverScroller {
         // Constant current deceleration
         float mDeceleration;
 
-        // Animation starting time, in system milliseconds
+        // Animation starting time, in nanoseconds of mFrameClock
         long mStartTime;
 
         // Animation duration, in milliseconds
@@ -583,6 +622,9 @@ public class OverScroller {
         // Current state of the animation.
         int mState = SPLINE;
 
+        // The clock the animation is computed against
+        FrameClock mFrameClock = FrameClock.getDefault();
+
         // Constant gravity value, used in the deceleration phase.
         static final float GRAVITY = 2000.0f;
 
@@ -597,14 +639,58 @@ public class OverScroller {
         static final float P2 = 1.0f - END_TENSION * (1.0f - INFLEXION);
 
         static final int NB_SAMPLES = 100;
-        static final float[] SPLINE_POSITION = new float[NB_SAMPLES + 1];
-        static final float[] SPLINE_TIME = new float[NB_SAMPLES + 1];
+
+        // The spline tables, precomputed by computeSplineTables() rather than at class loading,
+        // which used to happen when the first image was shown.
+        static final float[] SPLINE_POSITION = {
+                2.2888184E-5f, 0.028561f, 0.057051957f, 0.08538917f, 0.11349555f, 0.1412988f,
+                0.16877158f, 0.1958109f, 0.22239651f, 0.24843839f, 0.27400246f, 0.29896766f,
+                0.32333225f, 0.3470955f, 0.37022486f, 0.39272478f, 0.41456977f, 0.43582883f,
+                0.4564192f, 0.47641024f, 0.49575606f, 0.5145493f, 0.5327205f, 0.5502846f,
+                0.56732744f, 0.58381087f, 0.59974784f, 0.61519396f, 0.6301165f, 0.64454836f,
+                0.65851974f, 0.67203975f, 0.6850998f, 0.69772804f, 0.7099506f, 0.72177494f,
+                0.73317826f, 0.74423075f, 0.7549086f, 0.76524705f, 0.77522504f, 0.7848767f,
+                0.79420567f, 0.80322987f, 0.8119428f, 0.82037127f, 0.82851875f, 0.8363794f,
+                0.8439769f, 0.8513229f, 0.8584112f, 0.86525357f, 0.87185276f, 0.87823343f,
+                0.88438934f, 0.89031565f, 0.89604664f, 0.9015577f, 0.9068738f, 0.91199535f,
+                0.91693234f, 0.9216749f, 0.92624223f, 0.9306333f, 0.93484783f, 0.9389008f,
+                0.9427905f, 0.9465221f, 0.95009446f, 0.95351774f, 0.9567899f, 0.9599243f,
+                0.96291286f, 0.96576226f, 0.9684819f, 0.97106767f, 0.97352326f, 0.9758514f,
+                0.9780599f, 0.98014855f, 0.9821149f, 0.9839677f, 0.9857085f, 0.9873348f,
+                0.98885465f, 0.99026895f, 0.9915771f, 0.992784f, 0.99389136f, 0.9948988f,
+                0.99581146f, 0.99662745f, 0.9973521f, 0.9979848f, 0.9985285f, 0.9989844f,
+                0.99935377f, 0.99963874f, 0.9998404f, 0.9999603f, 1.0f
+        };
+        static final float[] SPLINE_TIME = {
+                2.002716E-6f, 0.0035008886f, 0.0070031513f, 0.010507312f, 0.014013893f,
+                0.017523412f, 0.02104418f, 0.024568854f, 0.028097969f, 0.031639703f, 0.035194505f,
+                0.038755145f, 0.04233729f, 0.04592621f, 0.049529932f, 0.053156357f, 0.05679837f,
+                0.060456425f, 0.06413834f, 0.067844465f, 0.071567826f, 0.075316176f, 0.079097174f,
+                0.08290383f, 0.08673657f, 0.0905957f, 0.09448885f, 0.098416284f, 0.10238549f,
+                0.10638248f, 0.11042188f, 0.11449678f, 0.11861465f, 0.12278285f, 0.12698735f,
+                0.13124269f, 0.1355491f, 0.13989964f, 0.1443087f, 0.14877644f, 0.15329593f,
+                0.15788153f, 0.1625191f, 0.16722992f, 0.17200707f, 0.17685048f, 0.18176731f,
+                0.18675743f, 0.1918349f, 0.19699252f, 0.20223011f, 0.20755455f, 0.21297249f,
+                0.21849068f, 0.22410871f, 0.22983302f, 0.23565608f, 0.2415983f, 0.24765876f,
+                0.25383675f, 0.26014706f, 0.2665984f, 0.27317786f, 0.27991158f, 0.2868116f,
+                0.29384828f, 0.30107498f, 0.3084751f, 0.3160603f, 0.32383984f, 0.3318245f,
+                0.34003758f, 0.34848738f, 0.3571822f, 0.36612952f, 0.37534925f, 0.38488656f,
+                0.39473194f, 0.4049011f, 0.41544706f, 0.42638117f, 0.43773794f, 0.4495572f,
+                0.4618606f, 0.47472918f, 0.48817742f, 0.5023109f, 0.5171499f, 0.5328217f,
+                0.5494553f, 0.5671298f, 0.58606946f, 0.6064431f, 0.6285358f, 0.6527741f,
+                0.67973936f, 0.7102442f, 0.74580073f, 0.7892455f, 0.848082f, 1.0f
+        };
 
         static final int SPLINE = 0;
         static final int CUBIC = 1;
         static final int BALLISTIC = 2;
 
-        static {
+        /*
+         * Computes the spline tables the way they used to be at class loading. Only kept as
+         * the reference that SPLINE_POSITION and SPLINE_TIME were generated from and are
+         * verified against.
+         */
+        static void computeSplineTables(float[] splinePosition, float[] splineTime) {
             float x_min = 0.0f;
             float y_min = 0.0f;
             for (int i = 0; i < NB_SAMPLES; i++) {
@@ -620,7 +706,7 @@ public class OverScroller {
                     if (tx > alpha) x_max = x;
                     else x_min = x;
                 }
-                SPLINE_POSITION[i] = coef * ((1.0f - x) * START_TENSION + x) + x * x * x;
+                splinePosition[i] = coef * ((1.0f - x) * START_TENSION + x) + x * x * x;
 
                 float y_max = 1.0f;
                 float y, dy;
@@ -632,24 +718,32 @@ public class OverScroller {
                     if (dy > alpha) y_max = y;
                     else y_min = y;
                 }
-                SPLINE_TIME[i] = coef * ((1.0f - y) * P1 + y * P2) + y * y * y;
+                splineTime[i] = coef * ((1.0f - y) * P1 + y * P2) + y * y * y;
             }
-            SPLINE_POSITION[NB_SAMPLES] = SPLINE_TIME[NB_SAMPLES] = 1.0f;
+            splinePosition[NB_SAMPLES] = splineTime[NB_SAMPLES] = 1.0f;
         }
 
         void setFriction(float friction) {
             mFlingFriction = friction;
         }
 
-        SplineOverScroller(Context context) {
+        SplineOverScroller(float density) {
             mFinished = true;
-            final float ppi = context.getResources().getDisplayMetrics().density * 160.0f;
+            final float ppi = density * 160.0f;
             mPhysicalCoeff = SensorManager.GRAVITY_EARTH // g (m/s^2)
                     * 39.37f // inch/meter
                     * ppi
                     * 0.84f; // look and feel tuning
         }
 
+        /*
+         * Returns the time elapsed since mStartTime, in fractional milliseconds, which is never
+         * negative even if the animation is started after the frame time of the current frame.
+         */
+        float elapsedTimeMillis() {
+            return Math.max(0L, mFrameClock.nanoTime() - mStartTime) / 1000000f;
+        }
+
         void updateScroll(float q) {
             mCurrentPosition = mStart + q * (mFinal - mStart);
         }
@@ -686,7 +780,7 @@ public class OverScroller {
             mCurrentPosition = mStart = start;
             mFinal = start + distance;
 
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = mFrameClock.nanoTime();
             mDuration = duration;
 
             // Unused
@@ -708,8 +802,7 @@ public class OverScroller {
         }
 
         void extendDuration(int extend) {
-            final long time = AnimationUtils.currentAnimationTimeMillis();
-            final int elapsedTime = (int) (time - mStartTime);
+            final int elapsedTime = (int) elapsedTimeMillis();
             mDuration = elapsedTime + extend;
             mFinished = false;
         }
@@ -720,7 +813,7 @@ public class OverScroller {
             mCurrentPosition = mStart = mFinal = start;
             mVelocity = 0;
 
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = mFrameClock.nanoTime();
             mDuration = 0;
 
             if (start < min) {
@@ -752,7 +845,7 @@ public class OverScroller {
             mFinished = false;
             mCurrVelocity = mVelocity = velocity;
             mDuration = mSplineDuration = 0;
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = mFrameClock.nanoTime();
             mCurrentPosition = mStart = start;
 
             if (start > max || start < min) {
@@ -809,7 +902,7 @@ public class OverScroller {
             final float distanceToEdge = Math.abs(end - start);
             final float totalDuration = (float) Math.sqrt(
                     2.0 * (distanceToApex + distanceToEdge) / Math.abs(mDeceleration));
-            mStartTime -= (int) (1000.0f * (totalDuration - durationToApex));
+            mStartTime -= (long) (1000000000.0 * (totalDuration - durationToApex));
             mCurrentPosition = mStart = end;
             mVelocity = -mDeceleration * totalDuration;
         }
@@ -847,7 +940,7 @@ public class OverScroller {
             // mState is used to detect successive notifications
             if (mState == SPLINE) {
                 mOver = over;
-                mStartTime = AnimationUtils.currentAnimationTimeMillis();
+                mStartTime = mFrameClock.nanoTime();
                 // We were in fling/scroll mode before: current velocity is such that distance to
                 // edge is increasing. This ensures that startAfterEdge will not start a new fling.
                 startAfterEdge(start, end, end, mCurrVelocity);
@@ -884,7 +977,7 @@ public class OverScroller {
                         // TODO Better compute speed when edge was reached
                         mVelocity = mCurrVelocity;
                         mDeceleration = getDeceleration(mVelocity);
-                        mStartTime += mDuration;
+                        mStartTime += mDuration * 1000000L;
                         onEdgeReached();
                     } else {
                         // Normal stop, no need to continue
@@ -892,7 +985,7 @@ public class OverScroller {
                     }
                     break;
                 case BALLISTIC:
-                    mStartTime += mDuration;
+                    mStartTime += mDuration * 1000000L;
                     startSpringback(mFinal, mStart, 0);
                     break;
                 case CUBIC:
@@ -909,8 +1002,7 @@ public class OverScroller {
          * reached.
          */
         boolean update() {
-            final long time = AnimationUtils.currentAnimationTimeMillis();
-            final long currentTime = time - mStartTime;
+            final float currentTime = elapsedTimeMillis();
 
             if (currentTime == 0) {
                 // Skip work but report that we're still going if we have a nonzero duration.
@@ -923,7 +1015,7 @@ public class OverScroller {
             float distance = 0.0f;
             switch (mState) {
                 case SPLINE: {
-                    final float t = (float) currentTime / mSplineDuration;
+                    final float t = currentTime / mSplineDuration;
                     final int index = (int) (NB_SAMPLES * t);
                     float distanceCoef = 1.f;
                     float velocityCoef = 0.f;
@@ -949,7 +1041,7 @@ public class OverScroller {
                 }
 
                 case CUBIC: {
-                    final float t = (float) (currentTime) / mDuration;
+                    final float t = currentTime / mDuration;
                     final float t2 = t * t;
                     final float sign = Math.signum(mVelocity);
                     distance = sign * mOver * (3.0f * t2 - 2.0f * t * t2);
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+import androidx.viewpager.widget.PagerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the instantiated pages of a {@link StableIdPagerAdapter} by the stable ids of
+ * their items, and works out the new positions of them as the data set changes, to be told to
+ * the pager through {@link PagerAdapter#getItemPosition(Object)}. It knows nothing about the
+ * pager or the views of the pages, which are only held for the adapter to look up.
+ *
+ * @author 刘振林
+ */
+/*package*/ abstract class StableIdPageList {
+
+    /** The instantiated pages, i.e., the current page and the neighbors of it */
+    private final List<Page> mPages = new ArrayList<>();
+
+    /*package*/ static final class Page {
+        final long id;
+        final View view;
+
+        /**
+         * The adapter position of the item, or {@link PagerAdapter#POSITION_NONE} if it has
+         * been removed
+         */
+        int position;
+
+        /**
+         * The new position of the item to be told to the pager through
+         * {@link #takePendingPosition(Page)}, if it has been changed since then.
+         */
+        int pendingPosition = PagerAdapter.POSITION_UNCHANGED;
+
+        Page(long id, View view, int position) {
+            this.id = id;
+            this.view = view;
+            this.position = position;
+        }
+    }
+
+    /** @return the number of the items in the data set */
+    /*package*/ abstract int getItemCount();
+
+    /** @return the stable id of the item at the given adapter position */
+    /*package*/ abstract long getItemId(int position);
+
+    /*package*/ Page add(long id, View view, int position) {
+        final Page page = new Page(id, view, position);
+        mPages.add(page);
+        return page;
+    }
+
+    /*package*/ void remove(Page page) {
+        mPages.remove(page);
+    }
+
+    /*package*/ int size() {
+        return mPages.size();
+    }
+
+    /*package*/ Page get(int index) {
+        return mPages.get(index);
+    }
+
+    /** @return the page at the given adapter position if it is instantiated, or null otherwise */
+    @Nullable
+    /*package*/ Page getPageAt(int position) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            if (page.position == position) {
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the new position of the given page, or {@link PagerAdapter#POSITION_UNCHANGED}
+     *         if it has been told already
+     */
+    /*package*/ int takePendingPosition(Page page) {
+        final int position = page.pendingPosition;
+        page.pendingPosition = PagerAdapter.POSITION_UNCHANGED;
+        return position;
+    }
+
+    /*package*/ void onItemRangeInserted(int positionStart, int itemCount) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            setPagePosition(page,
+                    positionAfterRangeInserted(page.position, positionStart, itemCount));
+        }
+    }
+
+    /*package*/ void onItemRangeRemoved(int positionStart, int itemCount) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            setPagePosition(page,
+                    positionAfterRangeRemoved(page.position, positionStart, itemCount));
+        }
+    }
+
+    /*package*/ void onItemMoved(int fromPosition, int toPosition) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            setPagePosition(page, positionAfterMoved(page.position, fromPosition, toPosition));
+        }
+    }
+
+    /*package*/ void onItemRangeChanged(int positionStart, int itemCount) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            if (page.position >= positionStart && page.position < positionStart + itemCount) {
+                setPagePosition(page, PagerAdapter.POSITION_NONE);
+            }
+        }
+    }
+
+    /**
+     * Looks up the new positions of the pages by their item ids, in one pass over the ids of
+     * all the items unless the items of them are all still at their positions; the pages whose
+     * items are no longer in the data set are to be destroyed.
+     */
+    /*package*/ void onDataSetChanged() {
+        final int itemCount = getItemCount();
+        LongSparseArray<Page> movedPages = null;
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final Page page = mPages.get(i);
+            if (page.position < 0) continue;
+            if (page.position >= itemCount || getItemId(page.position) != page.id) {
+                if (movedPages == null) {
+                    movedPages = new LongSparseArray<>();
+                }
+                movedPages.put(page.id, page);
+            }
+        }
+        if (movedPages != null) {
+            for (int position = 0; position < itemCount && movedPages.size() > 0; position++) {
+                final long id = getItemId(position);
+                final Page page = movedPages.get(id);
+                if (page != null) {
+                    setPagePosition(page, position);
+                    movedPages.remove(id);
+                }
+            }
+            for (int i = movedPages.size() - 1; i >= 0; i--) {
+                setPagePosition(movedPages.valueAt(i), PagerAdapter.POSITION_NONE);
+            }
+        }
+    }
+
+    /**
+     * Records the new position of a page, to be told to the pager, or
+     * {@link PagerAdapter#POSITION_NONE} if its item has been removed. A page whose item is not
+     * at the given position, due to a change notified wrongly, is destroyed as well, to be
+     * instantiated again.
+     */
+    private void setPagePosition(Page page, int position) {
+        if (page.position < 0 || position == page.position) return;
+
+        if (position >= 0 && (position >= getItemCount() || getItemId(position) != page.id)) {
+            position = PagerAdapter.POSITION_NONE;
+        }
+        page.position = position;
+        page.pendingPosition = position;
+    }
+
+    /*package*/ static int positionAfterRangeInserted(
+            int position, int positionStart, int itemCount) {
+        return position >= positionStart ? position + itemCount : position;
+    }
+
+    /*package*/ static int positionAfterRangeRemoved(
+            int position, int positionStart, int itemCount) {
+        if (position < positionStart) {
+            return position;
+        }
+        if (position < positionStart + itemCount) {
+            return PagerAdapter.POSITION_NONE;
+        }
+        return position - itemCount;
+    }
+
+    /*package*/ static int positionAfterMoved(int position, int fromPosition, int toPosition) {
+        if (position == fromPosition) {
+            return toPosition;
+        }
+        if (fromPosition < toPosition) {
+            if (position > fromPosition && position <= toPosition) {
+                return position - 1;
+            }
+        } else if (position >= toPosition && position < fromPosition) {
+            return position + 1;
+        }
+        return position;
+    }
+}
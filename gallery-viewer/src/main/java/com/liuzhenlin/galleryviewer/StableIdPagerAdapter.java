@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.viewpager.widget.PagerAdapter;
+
+/**
+ * A base {@link PagerAdapter} for {@link GalleryViewPager} whose items have stable ids, which
+ * tells the pager precisely which items have been inserted, removed or moved, rather than having
+ * all the pages destroyed and instantiated again as returning {@link #POSITION_NONE} from
+ * {@link #getItemPosition(Object)} does. The pages of the items not affected by a change are kept
+ * alive, along with their decoded images and the zoom the user has applied to them, and are only
+ * moved to their new positions.
+ * <p>
+ * It is the {@link GalleryViewPager.ItemCallback} of the pager as well, which should be set
+ * through {@link GalleryViewPager#setItemCallback(GalleryViewPager.ItemCallback)}.
+ * <p>
+ * Call {@link #notifyItemRangeInserted(int, int)}, {@link #notifyItemRangeRemoved(int, int)},
+ * {@link #notifyItemMoved(int, int)} or {@link #notifyItemRangeChanged(int, int)} after
+ * the data set is changed accordingly, which only cost as much as the number of the pages
+ * instantiated. {@link #notifyDataSetChanged()} still works for any change, with the new
+ * positions of the instantiated pages looked up by the ids of all the items.
+ * <p>
+ * The zoom and pan of the {@link GestureImageView} pages that are destroyed while zoomed or
+ * panned are kept by the item ids, and restored when the pages of the items are instantiated
+ * again. This covers the pages swiped away from only if the pager keeps their zoom, through
+ * {@link GalleryViewPager#setImageViewportRetained(boolean)}, and otherwise the current page
+ * destroyed as its item is changed. The kept states are saved along with the state of the pager
+ * as well, to be restored across configuration changes.
+ *
+ * @author 刘振林
+ */
+public abstract class StableIdPagerAdapter extends PagerAdapter
+        implements GalleryViewPager.ItemCallback {
+
+    /** The instantiated pages, i.e., the current page and the neighbors of it */
+    private final StableIdPageList mPages = new StableIdPageList() {
+        @Override
+        int getItemCount() {
+            return getCount();
+        }
+
+        @Override
+        long getItemId(int position) {
+            return StableIdPagerAdapter.this.getItemId(position);
+        }
+    };
+
+    /** The viewport states of the images of the destroyed pages, keyed by the item ids */
+    private final ViewportStateCache mViewportStates = new ViewportStateCache();
+
+    /**
+     * @return the stable id of the item at the given adapter position, which must be unique
+     *         among the items and stay the same for the item as long as it is in the data set
+     */
+    public abstract long getItemId(int position);
+
+    /**
+     * Creates the view of the page for the item at the given adapter position, typically
+     * a {@link GestureImageView} with its image set. It will be added to the pager.
+     */
+    @NonNull
+    protected abstract View onCreatePageView(@NonNull ViewGroup container, int position);
+
+    /**
+     * Called after the view of a page is removed from the pager, as the page goes too far from
+     * the current one, or as its item is removed or changed, e.g., to release its image.
+     */
+    protected void onDestroyPageView(@NonNull ViewGroup container, @NonNull View view) {
+    }
+
+    @NonNull
+    @Override
+    public final Object instantiateItem(@NonNull ViewGroup container, int position) {
+        final long id = getItemId(position);
+        final View view = onCreatePageView(container, position);
+        if (view instanceof GestureImageView) {
+            final ImageViewportState viewportState = mViewportStates.get(id);
+            if (viewportState != null) {
+                ((GestureImageView) view).setViewportState(viewportState);
+            }
+        }
+        container.addView(view);
+        return mPages.add(id, view, position);
+    }
+
+    @Override
+    public final void destroyItem(
+            @NonNull ViewGroup container, int position, @NonNull Object object) {
+        final StableIdPageList.Page page = (StableIdPageList.Page) object;
+        mPages.remove(page);
+        // Before the page is unselected as it is removed, which resets its image unless
+        // the pager keeps the zoom of the pages
+        saveViewportState(page);
+        container.removeView(page.view);
+        onDestroyPageView(container, page.view);
+    }
+
+    @Override
+    public final boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+        return ((StableIdPageList.Page) object).view == view;
+    }
+
+    @Override
+    public final int getItemPosition(@NonNull Object object) {
+        return mPages.takePendingPosition((StableIdPageList.Page) object);
+    }
+
+    /**
+     * @return the view of the page at the given adapter position if it is instantiated,
+     *         or {@code null} otherwise
+     */
+    @Override
+    public Object getItemAt(int position) {
+        final StableIdPageList.Page page = mPages.getPageAt(position);
+        return page == null ? null : page.view;
+    }
+
+    public final void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    /**
+     * Notifies the pager that {@code itemCount} items have been inserted at {@code positionStart}.
+     * The instantiated pages after them are moved forward, without being instantiated again.
+     */
+    public final void notifyItemRangeInserted(int positionStart, int itemCount) {
+        mPages.onItemRangeInserted(positionStart, itemCount);
+        super.notifyDataSetChanged();
+    }
+
+    public final void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    /**
+     * Notifies the pager that the {@code itemCount} items previously at {@code positionStart}
+     * have been removed. The pages of them are destroyed, and the instantiated pages after them
+     * are moved backward, without being instantiated again.
+     */
+    public final void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        mPages.onItemRangeRemoved(positionStart, itemCount);
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Notifies the pager that the item previously at {@code fromPosition} has been moved to
+     * {@code toPosition}. The instantiated pages are moved along, without being instantiated
+     * again.
+     */
+    public final void notifyItemMoved(int fromPosition, int toPosition) {
+        mPages.onItemMoved(fromPosition, toPosition);
+        super.notifyDataSetChanged();
+    }
+
+    public final void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    /**
+     * Notifies the pager that the {@code itemCount} items from {@code positionStart} have been
+     * changed, so that their pages, if instantiated, are destroyed and instantiated again.
+     */
+    public final void notifyItemRangeChanged(int positionStart, int itemCount) {
+        mPages.onItemRangeChanged(positionStart, itemCount);
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Notifies the pager of any change to the data set. The new positions of the instantiated
+     * pages are looked up by their item ids, in one pass over the ids of all the items unless
+     * the items of them are all still at their positions; the pages whose items are no longer
+     * in the data set are destroyed.
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        mPages.onDataSetChanged();
+        super.notifyDataSetChanged();
+    }
+
+    private void saveViewportState(StableIdPageList.Page page) {
+        if (page.view instanceof GestureImageView) {
+            mViewportStates.put(page.id, ((GestureImageView) page.view).getViewportState());
+        }
+    }
+
+    /**
+     * Saves the viewport states of the instantiated image pages and of the destroyed ones kept
+     * by the item ids. Subclasses overriding this should save the returned state along with
+     * their own.
+     */
+    @Nullable
+    @Override
+    public Parcelable saveState() {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            saveViewportState(mPages.get(i));
+        }
+        return mViewportStates.saveState();
+    }
+
+    @Override
+    public void restoreState(@Nullable Parcelable state, @Nullable ClassLoader loader) {
+        if (state instanceof Bundle) {
+            mViewportStates.restoreState((Bundle) state);
+        }
+    }
+}
@@ -0,0 +1,977 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A Drawable that renders a (possibly huge) image without ever loading it into one bitmap
+ * at its full resolution.
+ * <p>
+ * A subsampled base layer, decoded at a sample size fitting the size of the hosting view,
+ * covers the whole image. As the image is zoomed in past the resolution of the base layer,
+ * the tiles that intersect the viewport are decoded through a {@link BitmapRegionDecoder}
+ * at a sample size that fits the current scale of the image and drawn on top of it. For image
+ * formats that the region decoder does not support, the base layer is re-decoded at a higher
+ * resolution instead.
+ * <p>
+ * Its intrinsic size is the size of the source image, thus the image matrix of the hosting
+ * {@link GestureImageView} keeps working in the coordinate space of the source image, whatever
+ * resolution the bitmaps are currently decoded at, and the layers are drawn through the same
+ * matrix as any other Drawable would be. When it replaces another version of the image of
+ * a different size through {@link GestureImageView#swapImageDrawable(Drawable)}, it takes
+ * the size of that version as its intrinsic size instead, and maps the viewport onto the
+ * source image itself.
+ *
+ * @author 刘振林
+ */
+public class TiledImageDrawable extends Drawable {
+    private static final String TAG = "TiledImageDrawable";
+
+    /** The side length of a tile, as measured in pixels of the decoded (sampled) bitmap. */
+    private static final int TILE_SIZE = 512;
+
+    /**
+     * The maximum number of bytes a re-decoded base layer can take up when the image can not be
+     * decoded by regions.
+     */
+    private static final int MAX_BASE_LAYER_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * How long the bitmaps that are no longer drawn are held at most, in case this drawable is
+     * not drawn again to tell when no frame can be drawing them, e.g., while its view is
+     * offscreen or after {@link #releaseBitmaps()}. It covers the frames that may still be
+     * drawing them.
+     */
+    private static final long RELEASE_BITMAPS_DELAY_MILLIS = 100;
+
+    /**
+     * The group of the tasks saving the previews of the images on disk, of the lowest priority
+     * so that they never hold up the decoding for any page. Never cancelled, for each task
+     * to release the bitmap it holds.
+     */
+    private static final ImageDecodeExecutor.TaskGroup sSavePreviewTaskGroup =
+            new ImageDecodeExecutor.TaskGroup(ImageDecodeExecutor.PRIORITY_PREFETCH);
+
+    /**
+     * The group of the tasks recycling the region decoders, which wait for the decodes of their
+     * drawables in progress off the main thread. Never cancelled.
+     */
+    private static final ImageDecodeExecutor.TaskGroup sRecycleTaskGroup =
+            new ImageDecodeExecutor.TaskGroup(ImageDecodeExecutor.PRIORITY_VISIBLE);
+
+    @Nullable
+    /*synthetic*/ final ImageSource mSource;
+    /** The key to cache the base layers by, or {@code null} if they should not be cached */
+    @Nullable
+    private final String mCacheKey;
+
+    /** Lazily created by the decoding thread from {@link #mSource} if not provided */
+    /*synthetic*/ BitmapRegionDecoder mDecoder;
+    /** Set by the decoding thread when the region decoder failed to be created */
+    /*synthetic*/ volatile boolean mRegionDecoderUnavailable;
+    /*synthetic*/ final Object mDecoderLock = new Object();
+
+    /*synthetic*/ final int mImageWidth;
+    /*synthetic*/ final int mImageHeight;
+
+    /** The size this drawable is stretched to, which is the size of the image by default */
+    private int mLogicalWidth;
+    private int mLogicalHeight;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    /** The bitmap covering the whole image at the sample size {@link #mBaseSampleSize} */
+    private Bitmap mBaseBitmap;
+    /** The sample size of the current or the pending base layer, or 0 if none was requested */
+    private int mBaseSampleSize;
+    /** The sample size of the base layer that is being decoded, or 0 if none */
+    private int mPendingBaseSampleSize;
+    /** The sample size derived from the scale given by {@link #setBaseLayerScale(float)} */
+    private int mFitSampleSize;
+    /** Whether the preview cached on disk is being loaded */
+    private boolean mPreviewPending;
+    /** Drawn in place of the base layer until it is ready */
+    private Drawable mPlaceholder;
+
+    /**
+     * Whether no higher resolution layer than the base one is decoded until the viewport
+     * changes, as set by {@link #trimMemory(boolean)}
+     */
+    private boolean mTilesSuspended;
+
+    /** Tile grids keyed by the sample sizes their tiles are decoded at */
+    private final SparseArray<Tile[]> mTileGrids = new SparseArray<>();
+
+    /** The sample size of the tiles that are best suited for the current image scale */
+    private int mSampleSize;
+
+    /** The part of the source image that is currently visible in the view */
+    private final RectF mVisibleRect = new RectF();
+
+    // Avoid allocations...
+    private final float[] mTmpMatrixValues = new float[9];
+    private final RectF mTmpRectF = new RectF();
+
+    /** Whether the bitmaps have been released through {@link #releaseBitmaps()} */
+    private boolean mBitmapsReleased;
+
+    /**
+     * The bitmaps that have stopped being drawn since the last draw, which the display list
+     * recorded by that draw may still be drawing. They are only handed back to the memory cache
+     * or the bitmap pool, from which the decoding threads may decode into them at any time,
+     * once no frame can draw them any more.
+     */
+    private final ArrayList<DroppedBitmap> mDroppedBitmaps = new ArrayList<>();
+    /**
+     * The bitmaps that the last draw no longer drew, but the frame being rendered when it was
+     * recorded still may. Released on the next draw, by which the last one has been synced to
+     * the render thread.
+     */
+    private final ArrayList<DroppedBitmap> mUndrawnBitmaps = new ArrayList<>();
+
+    /** Releases the dropped bitmaps held long enough, as this drawable is not drawn meanwhile */
+    private final Runnable mReleaseDroppedBitmapsRunnable = this::releaseExpiredBitmaps;
+
+    /** The group of the decoding tasks for this drawable */
+    private final ImageDecodeExecutor.TaskGroup mTaskGroup =
+            new ImageDecodeExecutor.TaskGroup(ImageDecodeExecutor.PRIORITY_VISIBLE);
+
+    /*synthetic*/ volatile boolean mRecycled;
+
+    /**
+     * Creates a new TiledImageDrawable that will take over the given decoder, i.e., the decoder
+     * will be recycled once {@link #recycle()} is called on this drawable.
+     */
+    public TiledImageDrawable(@NonNull BitmapRegionDecoder decoder) {
+        mSource = null;
+        mCacheKey = null;
+        mDecoder = decoder;
+        mImageWidth = mLogicalWidth = decoder.getWidth();
+        mImageHeight = mLogicalHeight = decoder.getHeight();
+    }
+
+    /**
+     * Creates a new TiledImageDrawable for the given image source, whose dimensions
+     * must have been known.
+     */
+    public TiledImageDrawable(@NonNull ImageSource source, int imageWidth, int imageHeight) {
+        mSource = source;
+        mCacheKey = source.getCacheKey();
+        mImageWidth = mLogicalWidth = imageWidth;
+        mImageHeight = mLogicalHeight = imageHeight;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mLogicalWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mLogicalHeight;
+    }
+
+    /**
+     * Stretches this drawable to the given size, which its intrinsic size becomes, e.g., that of
+     * the lower resolution version of the image it replaces. The scales and the viewport given
+     * afterwards are taken as those of a drawable of this size.
+     */
+    /*package*/ void setLogicalSize(int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        mLogicalWidth = width;
+        mLogicalHeight = height;
+        invalidateSelf();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mPaint.getAlpha() != alpha) {
+            mPaint.setAlpha(alpha);
+            if (mPlaceholder != null) {
+                mPlaceholder.setAlpha(alpha);
+            }
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * Sets the drawable to be drawn, stretched to the size of the image, until the base layer
+     * has been decoded, e.g., a thumbnail of the image.
+     */
+    public void setPlaceholder(@Nullable Drawable placeholder) {
+        mPlaceholder = placeholder;
+        if (placeholder != null) {
+            placeholder.setAlpha(mPaint.getAlpha());
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Sets the scale at which the whole image is normally shown, from which the sample size of
+     * the base layer is chosen, i.e., the base layer has at least one pixel for every pixel
+     * on the screen when the image is displayed at that scale.
+     */
+    public void setBaseLayerScale(float scale) {
+        if (mRecycled || scale <= 0) return;
+
+        final int sampleSize = computeSampleSize(scale * Math.max(
+                (float) mLogicalWidth / mImageWidth, (float) mLogicalHeight / mImageHeight));
+        if (sampleSize != mFitSampleSize) {
+            mFitSampleSize = sampleSize;
+            mBaseSampleSize = sampleSize;
+            requestBaseLayer(sampleSize);
+        }
+    }
+
+    private void requestBaseLayer(int sampleSize) {
+        if (mCacheKey != null) {
+            final Bitmap bitmap = ImageMemoryCache.getDefault()
+                    .acquire(mCacheKey, sampleSize, Bitmap.Config.ARGB_8888);
+            if (bitmap != null) {
+                setBaseBitmap(bitmap);
+                return;
+            }
+        }
+        if (mPendingBaseSampleSize != sampleSize) {
+            mPendingBaseSampleSize = sampleSize;
+            final boolean previewCacheable =
+                    mCacheKey != null && ImagePreviewDiskCache.getDefault() != null;
+            // Show the cached preview, if any, while the base layer is being decoded.
+            if (previewCacheable && mBaseBitmap == null && !mPreviewPending) {
+                mPreviewPending = true;
+                mTaskGroup.execute(new PreviewTask(mCacheKey));
+            }
+            mTaskGroup.execute(new BaseLayerTask(
+                    sampleSize, previewCacheable && sampleSize == mFitSampleSize));
+        }
+    }
+
+    /*synthetic*/ void onPreviewLoaded(Bitmap bitmap) {
+        mPreviewPending = false;
+        if (bitmap == null) return;
+
+        if (mRecycled || mBitmapsReleased || mBaseBitmap != null) {
+            BitmapPool.getDefault().put(bitmap);
+            return;
+        }
+        // Not cached in memory, so it will go to the bitmap pool once replaced
+        mBaseBitmap = bitmap;
+        invalidateSelf();
+    }
+
+    /*synthetic*/ void onBaseLayerDecoded(int sampleSize, Bitmap bitmap) {
+        if (mPendingBaseSampleSize == sampleSize) {
+            mPendingBaseSampleSize = 0;
+        }
+        if (bitmap == null) return;
+
+        final ImageMemoryCache cache = ImageMemoryCache.getDefault();
+        if (mCacheKey != null) {
+            cache.put(mCacheKey, sampleSize, Bitmap.Config.ARGB_8888, bitmap);
+        }
+        if (mRecycled || sampleSize != mBaseSampleSize || mBitmapsReleased) {
+            // No longer needed, e.g., decoding had already started when the bitmaps were
+            // released. Keep the result in the memory cache only, if it can be cached, where
+            // the task saving its preview may also be holding it.
+            cache.release(bitmap);
+            return;
+        }
+        setBaseBitmap(bitmap);
+    }
+
+    private void setBaseBitmap(Bitmap bitmap) {
+        dropBitmap(mBaseBitmap);
+        mBaseBitmap = bitmap;
+        mPlaceholder = null;
+        updateTiles();
+        invalidateSelf();
+    }
+
+    /**
+     * Sets the priority of the decoding tasks for this drawable, re-ranking the pending ones.
+     */
+    /*package*/ void setDecodePriority(@ImageDecodeExecutor.Priority int priority) {
+        mTaskGroup.setPriority(priority);
+    }
+
+    /**
+     * Updates the viewport of this drawable, decoding the tiles that become visible and releasing
+     * the ones that are no longer needed.
+     *
+     * @param matrix     the matrix that this drawable is drawn through, in which only the scale
+     *                   and translation are taken into account. {@code null} means identity.
+     * @param viewWidth  the width of the drawing bounds of the hosting view
+     * @param viewHeight the height of the drawing bounds of the hosting view
+     */
+    public void setViewport(@Nullable Matrix matrix, int viewWidth, int viewHeight) {
+        if (mRecycled) return;
+
+        if (matrix == null) {
+            setViewport(1f, 1f, 0f, 0f, viewWidth, viewHeight);
+        } else {
+            matrix.getValues(mTmpMatrixValues);
+            setViewport(mTmpMatrixValues[Matrix.MSCALE_X], mTmpMatrixValues[Matrix.MSCALE_Y],
+                    mTmpMatrixValues[Matrix.MTRANS_X], mTmpMatrixValues[Matrix.MTRANS_Y],
+                    viewWidth, viewHeight);
+        }
+    }
+
+    /**
+     * Same as {@link #setViewport(Matrix, int, int)}, but takes the scale and translation
+     * of the image directly, sparing a call into the native matrix.
+     */
+    /*package*/ void setViewport(float scaleX, float scaleY, float transX, float transY,
+                                 int viewWidth, int viewHeight) {
+        if (mRecycled) return;
+
+        if (viewWidth <= 0 || viewHeight <= 0 || scaleX <= 0 || scaleY <= 0) {
+            mVisibleRect.setEmpty();
+            return;
+        }
+        // From the scales of the logical size to those of the source image
+        scaleX = scaleX * mLogicalWidth / mImageWidth;
+        scaleY = scaleY * mLogicalHeight / mImageHeight;
+
+        final RectF visibleRect = mTmpRectF;
+        visibleRect.set(
+                -transX / scaleX, -transY / scaleY,
+                (viewWidth - transX) / scaleX, (viewHeight - transY) / scaleY);
+        if (!visibleRect.intersect(0, 0, mImageWidth, mImageHeight)) {
+            visibleRect.setEmpty();
+        }
+        final int sampleSize = computeSampleSize(Math.max(scaleX, scaleY));
+        if (mTilesSuspended && (sampleSize != mSampleSize || !visibleRect.equals(mVisibleRect))) {
+            // The user is interacting with the image again
+            mTilesSuspended = false;
+        }
+        mVisibleRect.set(visibleRect);
+        mSampleSize = sampleSize;
+        updateTiles();
+    }
+
+    /**
+     * Returns the largest power of 2 sample size that still keeps at least one decoded pixel
+     * for every pixel on the screen at the given scale.
+     */
+    /*package*/ static int computeSampleSize(float scale) {
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+
+    private boolean needsTiles() {
+        return !mTilesSuspended && !mVisibleRect.isEmpty() && !mRegionDecoderUnavailable
+                && (mBaseSampleSize == 0 || mSampleSize < mBaseSampleSize);
+    }
+
+    private void updateTiles() {
+        if (mRegionDecoderUnavailable && !mTilesSuspended
+                && mBaseSampleSize != 0 && mSampleSize < mBaseSampleSize) {
+            upgradeBaseLayer();
+        }
+
+        final RectF visibleRect = mVisibleRect;
+        final boolean needsTiles = needsTiles();
+
+        // Request the visible tiles of the best suited sample size and release the invisible ones
+        boolean allVisibleTilesLoaded = true;
+        if (needsTiles) {
+            for (Tile tile : getOrCreateTileGrid(mSampleSize)) {
+                tile.visible = tile.intersects(visibleRect);
+                if (tile.visible) {
+                    if (tile.bitmap == null) {
+                        allVisibleTilesLoaded = false;
+                        if (!tile.loading) {
+                            tile.loading = true;
+                            mTaskGroup.execute(tile);
+                        }
+                    }
+                } else {
+                    cancelTile(tile);
+                    tile.release();
+                }
+            }
+        }
+
+        // Keep the visible tiles of the other sample sizes on the screen as placeholders
+        // until all the visible tiles of the best suited sample size have been decoded.
+        for (int i = mTileGrids.size() - 1; i >= 0; i--) {
+            if (needsTiles && mTileGrids.keyAt(i) == mSampleSize) continue;
+
+            boolean gridInUse = false;
+            for (Tile tile : mTileGrids.valueAt(i)) {
+                tile.visible = needsTiles && !allVisibleTilesLoaded && tile.bitmap != null
+                        && tile.intersects(visibleRect);
+                if (tile.visible) {
+                    gridInUse = true;
+                } else {
+                    cancelTile(tile);
+                    tile.release();
+                }
+            }
+            if (!gridInUse) {
+                mTileGrids.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Removes the decoding task of a tile that is no longer visible from the queue. A task that
+     * has started can not be removed, and the tile stays loading until it finishes, skipping
+     * the decode unless the tile has become visible again, in which case it is requested anew.
+     */
+    private void cancelTile(Tile tile) {
+        if (tile.loading && mTaskGroup.cancel(tile)) {
+            tile.loading = false;
+        }
+    }
+
+    /**
+     * Re-decodes the base layer at a higher resolution for the images that can not be decoded
+     * by regions, as long as the bitmap would not take up too much memory.
+     */
+    private void upgradeBaseLayer() {
+        int sampleSize = mSampleSize;
+        while ((long) (mImageWidth / sampleSize) * (mImageHeight / sampleSize) * 4
+                > MAX_BASE_LAYER_BYTES) {
+            sampleSize <<= 1;
+        }
+        if (sampleSize < mBaseSampleSize) {
+            mBaseSampleSize = sampleSize;
+            requestBaseLayer(sampleSize);
+        }
+    }
+
+    private Tile[] getOrCreateTileGrid(int sampleSize) {
+        Tile[] grid = mTileGrids.get(sampleSize);
+        if (grid == null) {
+            final int tileSourceSize = TILE_SIZE * sampleSize;
+            final int columns = (mImageWidth + tileSourceSize - 1) / tileSourceSize;
+            final int rows = (mImageHeight + tileSourceSize - 1) / tileSourceSize;
+            grid = new Tile[columns * rows];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    final int left = column * tileSourceSize;
+                    final int top = row * tileSourceSize;
+                    grid[row * columns + column] = new Tile(this, sampleSize,
+                            left, top,
+                            Math.min(left + tileSourceSize, mImageWidth),
+                            Math.min(top + tileSourceSize, mImageHeight));
+                }
+            }
+            mTileGrids.put(sampleSize, grid);
+        }
+        return grid;
+    }
+
+    /**
+     * @param skipped whether the decode was skipped as the tile was no longer visible when it
+     *                started, which it may have become again since
+     */
+    /*synthetic*/ void onTileDecoded(Tile tile, Bitmap bitmap, boolean skipped) {
+        tile.loading = false;
+        if (bitmap == null) {
+            if (mRegionDecoderUnavailable) {
+                // Fall back to decode the entire image at a higher resolution
+                updateTiles();
+            } else if (skipped && tile.visible && !mRecycled) {
+                // Its decode could not be cancelled as it had started. Request it again.
+                updateTiles();
+            }
+            return;
+        }
+
+        if (mRecycled || !tile.visible || tile.bitmap != null) {
+            BitmapPool.getDefault().put(bitmap);
+            return;
+        }
+        tile.bitmap = bitmap;
+        if (tile.sampleSize == mSampleSize) {
+            // Placeholders of other sample sizes may be released now
+            updateTiles();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Returns the region decoder for the image, creating it if needed. Only called on
+     * the decoding thread with {@link #mDecoderLock} held.
+     */
+    @Nullable
+    /*synthetic*/ BitmapRegionDecoder obtainRegionDecoder() {
+        if (mDecoder == null && mSource != null && !mRegionDecoderUnavailable) {
+            try {
+                mDecoder = mSource.newRegionDecoder();
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to decode " + mSource + " by regions", e);
+                mRegionDecoderUnavailable = true;
+            }
+        }
+        return mDecoder;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mRecycled) return;
+
+        if (mBitmapsReleased) {
+            mBitmapsReleased = false;
+            if (mBaseSampleSize != 0) {
+                requestBaseLayer(mBaseSampleSize);
+            }
+            updateTiles();
+        }
+
+        final boolean stretched = mLogicalWidth != mImageWidth || mLogicalHeight != mImageHeight;
+        final int saveCount = stretched ? canvas.save() : 0;
+        if (stretched) {
+            canvas.scale((float) mLogicalWidth / mImageWidth,
+                    (float) mLogicalHeight / mImageHeight);
+        }
+        if (mBaseBitmap != null) {
+            mTmpRectF.set(0, 0, mImageWidth, mImageHeight);
+            canvas.drawBitmap(mBaseBitmap, null, mTmpRectF, mPaint);
+        } else if (mPlaceholder != null) {
+            mPlaceholder.setBounds(0, 0, mImageWidth, mImageHeight);
+            mPlaceholder.draw(canvas);
+        }
+        // Draw the coarser tiles first so that the finer ones will overlay them.
+        for (int i = mTileGrids.size() - 1; i >= 0; i--) {
+            for (Tile tile : mTileGrids.valueAt(i)) {
+                final Bitmap bitmap = tile.bitmap;
+                if (bitmap != null && tile.visible) {
+                    mTmpRectF.set(tile.sourceRect);
+                    canvas.drawBitmap(bitmap, null, mTmpRectF, mPaint);
+                }
+            }
+        }
+        if (stretched) {
+            canvas.restoreToCount(saveCount);
+        }
+
+        // The bitmaps dropped before the previous draw are no longer drawn by any frame now.
+        releaseAll(mUndrawnBitmaps, Long.MAX_VALUE);
+        mUndrawnBitmaps.addAll(mDroppedBitmaps);
+        mDroppedBitmaps.clear();
+        if (mUndrawnBitmaps.isEmpty()) {
+            ImageDecodeExecutor.removeFromMainThread(mReleaseDroppedBitmapsRunnable);
+        }
+    }
+
+    /**
+     * Stops drawing the given bitmap, releasing it once no frame can be drawing it any more,
+     * which the next two draws tell, or else after {@link #RELEASE_BITMAPS_DELAY_MILLIS}.
+     */
+    /*synthetic*/ void dropBitmap(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+
+        final boolean releaseScheduled = !mDroppedBitmaps.isEmpty() || !mUndrawnBitmaps.isEmpty();
+        mDroppedBitmaps.add(new DroppedBitmap(bitmap, SystemClock.uptimeMillis()));
+        if (!releaseScheduled) {
+            ImageDecodeExecutor.removeFromMainThread(mReleaseDroppedBitmapsRunnable);
+            ImageDecodeExecutor.postToMainThreadDelayed(
+                    mReleaseDroppedBitmapsRunnable, RELEASE_BITMAPS_DELAY_MILLIS);
+        }
+    }
+
+    /*synthetic*/ void releaseExpiredBitmaps() {
+        final long now = SystemClock.uptimeMillis();
+        final long expiredTime = now - RELEASE_BITMAPS_DELAY_MILLIS;
+        releaseAll(mUndrawnBitmaps, expiredTime);
+        releaseAll(mDroppedBitmaps, expiredTime);
+
+        // Wait for the remaining ones, all dropped after the ones just released.
+        long nextDropTime = Long.MAX_VALUE;
+        if (!mUndrawnBitmaps.isEmpty()) {
+            nextDropTime = mUndrawnBitmaps.get(0).dropTimeMillis;
+        } else if (!mDroppedBitmaps.isEmpty()) {
+            nextDropTime = mDroppedBitmaps.get(0).dropTimeMillis;
+        }
+        if (nextDropTime != Long.MAX_VALUE) {
+            ImageDecodeExecutor.removeFromMainThread(mReleaseDroppedBitmapsRunnable);
+            ImageDecodeExecutor.postToMainThreadDelayed(mReleaseDroppedBitmapsRunnable,
+                    nextDropTime + RELEASE_BITMAPS_DELAY_MILLIS - now);
+        }
+    }
+
+    /**
+     * Releases the bitmaps dropped no later than the given time, which are the first ones of
+     * the given list, as they are added in the order they are dropped.
+     */
+    private static void releaseAll(ArrayList<DroppedBitmap> bitmaps, long dropTimeMillis) {
+        // Released through the cache, which hands the bitmaps to the bitmap pool
+        // if they are not cached.
+        final ImageMemoryCache cache = ImageMemoryCache.getDefault();
+        int count = 0;
+        while (count < bitmaps.size() && bitmaps.get(count).dropTimeMillis <= dropTimeMillis) {
+            cache.release(bitmaps.get(count).bitmap);
+            count++;
+        }
+        bitmaps.subList(0, count).clear();
+    }
+
+    private static final class DroppedBitmap {
+        final Bitmap bitmap;
+        final long dropTimeMillis;
+
+        DroppedBitmap(Bitmap bitmap, long dropTimeMillis) {
+            this.bitmap = bitmap;
+            this.dropTimeMillis = dropTimeMillis;
+        }
+    }
+
+    /**
+     * Releases the bitmaps that are not necessary for the current viewport to be drawn
+     * in the event of memory pressure.
+     *
+     * @param toBaseLayer true to also release all the tiles and the base layer decoded at
+     *                    a higher resolution than the one fitting the view, leaving only the
+     *                    base layer of the fit resolution, until the viewport changes
+     */
+    /*package*/ void trimMemory(boolean toBaseLayer) {
+        if (mRecycled || mBitmapsReleased) return;
+
+        for (int i = mTileGrids.size() - 1; i >= 0; i--) {
+            final boolean bestSuited = mTileGrids.keyAt(i) == mSampleSize;
+            boolean gridInUse = false;
+            for (Tile tile : mTileGrids.valueAt(i)) {
+                if (toBaseLayer || !bestSuited || !tile.intersects(mVisibleRect)) {
+                    tile.visible = false;
+                    cancelTile(tile);
+                    tile.release();
+                } else {
+                    gridInUse = true;
+                }
+            }
+            if (!gridInUse) {
+                mTileGrids.removeAt(i);
+            }
+        }
+        if (toBaseLayer) {
+            mTilesSuspended = true;
+            if (mFitSampleSize != 0 && mBaseSampleSize < mFitSampleSize) {
+                mBaseSampleSize = mFitSampleSize;
+                requestBaseLayer(mFitSampleSize);
+            }
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * @return the number of bytes taken up by the bitmaps currently decoded for this drawable,
+     *         i.e., its base layer and tiles
+     */
+    /*package*/ long getBitmapByteCount() {
+        long byteCount = 0;
+        if (mBaseBitmap != null) {
+            byteCount += ImageMemoryCache.getAllocationByteCount(mBaseBitmap);
+        }
+        for (int i = mTileGrids.size() - 1; i >= 0; i--) {
+            for (Tile tile : mTileGrids.valueAt(i)) {
+                if (tile.bitmap != null) {
+                    byteCount += ImageMemoryCache.getAllocationByteCount(tile.bitmap);
+                }
+            }
+        }
+        return byteCount;
+    }
+
+    /**
+     * Releases all the decoded bitmaps into the {@link BitmapPool#getDefault() bitmap pool},
+     * e.g., when the hosting page is destroyed, except that the base layer stays in the
+     * {@link ImageMemoryCache#getDefault() memory cache} as long as it is not evicted, and
+     * cancels the decodes that have not started. The bitmaps are handed over shortly after,
+     * when the frames that may still be drawing them are over. They will be restored as soon
+     * as this drawable is drawn next time.
+     */
+    public void releaseBitmaps() {
+        if (mRecycled) return;
+
+        for (int i = mTileGrids.size() - 1; i >= 0; i--) {
+            for (Tile tile : mTileGrids.valueAt(i)) {
+                tile.visible = false;
+                tile.release();
+            }
+        }
+        mTileGrids.clear();
+        dropBitmap(mBaseBitmap);
+        mBaseBitmap = null;
+        mTaskGroup.cancelAll();
+        mPendingBaseSampleSize = 0;
+        mPreviewPending = false;
+        mBitmapsReleased = true;
+    }
+
+    /**
+     * Releases all the decoded bitmaps and the region decoder. This drawable will draw nothing
+     * once this is called. The region decoder is recycled on a decoding thread, as soon as
+     * the decode in progress with it, if any, finishes.
+     */
+    public void recycle() {
+        if (mRecycled) return;
+
+        releaseBitmaps();
+        mRecycled = true;
+        sRecycleTaskGroup.execute(() -> {
+            synchronized (mDecoderLock) {
+                if (mDecoder != null) {
+                    mDecoder.recycle();
+                }
+            }
+        });
+    }
+
+    public boolean isRecycled() {
+        return mRecycled;
+    }
+
+    /*synthetic*/ static BitmapFactory.Options newDecodeOptions(int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // Decoded bitmaps must be mutable to be reused through the bitmap pool later
+        options.inMutable = true;
+        return options;
+    }
+
+    /**
+     * Decodes the whole image from the given source at the given sample size, into a bitmap
+     * from the {@link BitmapPool#getDefault() bitmap pool} if possible.
+     */
+    @Nullable
+    /*package*/ static Bitmap decodeBaseLayer(
+            ImageSource source, int imageWidth, int imageHeight, int sampleSize)
+            throws IOException {
+        BitmapFactory.Options options = newDecodeOptions(sampleSize);
+        // The decoder will reconfigure the reused bitmap to the actual size
+        options.inBitmap = BitmapPool.getDefault().get(
+                ceilDiv(imageWidth, sampleSize), ceilDiv(imageHeight, sampleSize),
+                options.inPreferredConfig);
+        try {
+            return source.decodeBitmap(options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) throw e;
+            // The pooled bitmap can not be decoded into. Allocate a new one.
+            BitmapPool.getDefault().put(options.inBitmap);
+            options.inBitmap = null;
+            return source.decodeBitmap(options);
+        }
+    }
+
+    /*synthetic*/ static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private final class PreviewTask implements Runnable {
+        final String cacheKey;
+
+        PreviewTask(String cacheKey) {
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public void run() {
+            Bitmap preview = null;
+            final ImagePreviewDiskCache cache = ImagePreviewDiskCache.getDefault();
+            if (!mRecycled && cache != null) {
+                preview = cache.get(cacheKey, newDecodeOptions(1));
+            }
+            final Bitmap bitmap = preview;
+            ImageDecodeExecutor.postToMainThread(() -> onPreviewLoaded(bitmap));
+        }
+    }
+
+    private final class BaseLayerTask implements Runnable {
+        final int sampleSize;
+        /** Whether to save the decoded base layer as the preview of the image on disk */
+        final boolean savePreview;
+
+        BaseLayerTask(int sampleSize, boolean savePreview) {
+            this.sampleSize = sampleSize;
+            this.savePreview = savePreview;
+        }
+
+        @Override
+        public void run() {
+            Bitmap decoded = null;
+            if (!mRecycled) {
+                try {
+                    if (mSource != null) {
+                        decoded = decodeBaseLayer(mSource, mImageWidth, mImageHeight, sampleSize);
+                    } else {
+                        synchronized (mDecoderLock) {
+                            if (!mRecycled) {
+                                decoded = mDecoder.decodeRegion(
+                                        new Rect(0, 0, mImageWidth, mImageHeight),
+                                        newDecodeOptions(sampleSize));
+                            }
+                        }
+                    }
+                } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "Failed to decode the base layer at sample size " + sampleSize, e);
+                }
+            }
+            final Bitmap bitmap = decoded;
+            final boolean savingPreview = savePreview && bitmap != null;
+            if (savingPreview) {
+                // Hold the bitmap through the memory cache until its preview is saved, as it may
+                // be released into the bitmap pool and decoded into at any time once handed to
+                // the main thread.
+                //noinspection ConstantConditions
+                ImageMemoryCache.getDefault()
+                        .put(mCacheKey, sampleSize, Bitmap.Config.ARGB_8888, bitmap);
+            }
+            // Show the base layer first, then compress its preview.
+            ImageDecodeExecutor.postToMainThread(() -> onBaseLayerDecoded(sampleSize, bitmap));
+            if (savingPreview) {
+                sSavePreviewTaskGroup.execute(
+                        new SavePreviewTask(mCacheKey, bitmap, mImageWidth, mImageHeight));
+            }
+        }
+    }
+
+    private static final class SavePreviewTask implements Runnable {
+        final String cacheKey;
+        /** Held through the memory cache, to be released once saved */
+        final Bitmap bitmap;
+        final int imageWidth;
+        final int imageHeight;
+
+        SavePreviewTask(String cacheKey, Bitmap bitmap, int imageWidth, int imageHeight) {
+            this.cacheKey = cacheKey;
+            this.bitmap = bitmap;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final ImagePreviewDiskCache cache = ImagePreviewDiskCache.getDefault();
+                if (cache != null && !cache.contains(cacheKey)) {
+                    cache.put(cacheKey, bitmap, imageWidth, imageHeight);
+                }
+            } finally {
+                ImageMemoryCache.getDefault().release(bitmap);
+            }
+        }
+    }
+
+    private static final class Tile implements Runnable {
+        final TiledImageDrawable drawable;
+        final int sampleSize;
+        final Rect sourceRect;
+
+        /** Accessed from both the main thread and the decoding thread */
+        volatile boolean visible;
+
+        // The following fields are only accessed on the main thread
+        boolean loading;
+        Bitmap bitmap;
+
+        Tile(TiledImageDrawable drawable, int sampleSize, int left, int top, int right, int bottom) {
+            this.drawable = drawable;
+            this.sampleSize = sampleSize;
+            this.sourceRect = new Rect(left, top, right, bottom);
+        }
+
+        boolean intersects(RectF rect) {
+            return sourceRect.left < rect.right && rect.left < sourceRect.right
+                    && sourceRect.top < rect.bottom && rect.top < sourceRect.bottom;
+        }
+
+        void release() {
+            if (bitmap != null) {
+                drawable.dropBitmap(bitmap);
+                bitmap = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            Bitmap decoded = null;
+            // Skip the tiles that have gone out of the viewport since they were requested
+            final boolean skipped = !visible || drawable.mRecycled;
+            if (!skipped) {
+                BitmapFactory.Options options = newDecodeOptions(sampleSize);
+                // A region decoder never changes the dimensions of the bitmap it decodes into,
+                // so only reuse bitmaps for the tiles whose decoded size is exactly known.
+                final int width = sourceRect.width();
+                final int height = sourceRect.height();
+                if (width % sampleSize == 0 && height % sampleSize == 0) {
+                    options.inBitmap = BitmapPool.getDefault().get(
+                            width / sampleSize, height / sampleSize, options.inPreferredConfig);
+                }
+                try {
+                    synchronized (drawable.mDecoderLock) {
+                        if (!drawable.mRecycled) {
+                            BitmapRegionDecoder decoder = drawable.obtainRegionDecoder();
+                            if (decoder != null) {
+                                try {
+                                    decoded = decoder.decodeRegion(sourceRect, options);
+                                } catch (IllegalArgumentException e) {
+                                    if (options.inBitmap == null) throw e;
+                                    // The pooled bitmap can not be decoded into.
+                                    // Allocate a new one.
+                                    BitmapPool.getDefault().put(options.inBitmap);
+                                    options.inBitmap = null;
+                                    decoded = decoder.decodeRegion(sourceRect, options);
+                                }
+                            }
+                        }
+                    }
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "Failed to decode tile " + sourceRect + " at sample size "
+                            + sampleSize, e);
+                }
+                if (decoded == null && options.inBitmap != null) {
+                    BitmapPool.getDefault().put(options.inBitmap);
+                }
+            }
+            final Bitmap bitmap = decoded;
+            ImageDecodeExecutor.postToMainThread(
+                    () -> drawable.onTileDecoded(this, bitmap, skipped));
+        }
+    }
+}
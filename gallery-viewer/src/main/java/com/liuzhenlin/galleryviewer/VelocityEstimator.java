@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+/**
+ * Estimates the velocity of a pointer from its latest positions, as
+ * {@link android.view.VelocityTracker} does with its default strategy: a least-squares fit of
+ * a quadratic to the samples in the last {@value #HORIZON} milliseconds, the slope of which
+ * at the latest sample is the velocity. The history is dropped whenever the pointer has not
+ * moved for {@value #ASSUME_POINTER_STOPPED_TIME} milliseconds, so that a pointer that stops
+ * before it is lifted is not flung.
+ * <p>
+ * Adding a sample only writes it into a ring buffer; the fit is computed when a velocity is
+ * asked for, and at most once for a given set of samples, so that one estimator can be fed and
+ * read by all the views handling the same gesture. Nothing is allocated after construction,
+ * and nothing of the Android framework is depended on.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class VelocityEstimator {
+
+    /** The maximum number of the samples to fit */
+    private static final int HISTORY_SIZE = 20;
+
+    /** The maximum age of the samples to fit, relative to the latest one, in milliseconds */
+    private static final long HORIZON = 100;
+
+    /** The time without a move for the pointer to be assumed to have stopped, in milliseconds */
+    private static final long ASSUME_POINTER_STOPPED_TIME = 40;
+
+    private final long[] mTimes = new long[HISTORY_SIZE];
+    private final float[] mXs = new float[HISTORY_SIZE];
+    private final float[] mYs = new float[HISTORY_SIZE];
+    /** Index of the latest sample in the ring buffer */
+    private int mIndex = -1;
+    private int mCount;
+
+    private boolean mVelocityComputed;
+    private float mMaxVelocity;
+    private float mXVelocity;
+    private float mYVelocity;
+
+    /** Drops all the samples. */
+    public void clear() {
+        mIndex = -1;
+        mCount = 0;
+        mVelocityComputed = false;
+    }
+
+    /**
+     * Adds a position of the pointer, unless there is already one at the same time or later,
+     * e.g., added from the same event by another view.
+     *
+     * @param timeMillis the time of the position, in milliseconds
+     */
+    public void addSample(long timeMillis, float x, float y) {
+        if (mCount > 0 && timeMillis <= mTimes[mIndex]) return;
+        checkStopped(timeMillis);
+        mIndex = (mIndex + 1) % HISTORY_SIZE;
+        mTimes[mIndex] = timeMillis;
+        mXs[mIndex] = x;
+        mYs[mIndex] = y;
+        if (mCount < HISTORY_SIZE) {
+            mCount++;
+        }
+        mVelocityComputed = false;
+    }
+
+    /**
+     * Drops the samples if the pointer has not moved for long before the given time, e.g.,
+     * the one at which it is lifted.
+     */
+    public void checkStopped(long timeMillis) {
+        if (mCount > 0 && timeMillis - mTimes[mIndex] >= ASSUME_POINTER_STOPPED_TIME) {
+            clear();
+        }
+    }
+
+    /** @return the number of the samples that have been added since the last {@link #clear()} */
+    public int getSampleCount() {
+        return mCount;
+    }
+
+    /**
+     * Computes the current velocity, if it has not been computed for the samples added so far
+     * with the same maximum velocity.
+     *
+     * @param maxVelocity the maximum magnitude of the velocity along each axis, in pixels
+     *                    per second
+     */
+    public void computeVelocity(float maxVelocity) {
+        if (mVelocityComputed && maxVelocity == mMaxVelocity) return;
+        mVelocityComputed = true;
+        mMaxVelocity = maxVelocity;
+
+        mXVelocity = mYVelocity = 0;
+        if (mCount < 2) return;
+
+        // Accumulate the sums of the normal equations, with the times relative to the latest
+        // sample so as to keep them small.
+        final long latestTime = mTimes[mIndex];
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double sx = 0, sxt = 0, sxt2 = 0;
+        double sy = 0, syt = 0, syt2 = 0;
+        for (int i = 0, index = mIndex; i < mCount; i++) {
+            final long age = latestTime - mTimes[index];
+            if (age > HORIZON) break;
+
+            final double t = -age;
+            final double t2 = t * t;
+            final float x = mXs[index];
+            final float y = mYs[index];
+            s0 += 1;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            sx += x;
+            sxt += x * t;
+            sxt2 += x * t2;
+            sy += y;
+            syt += y * t;
+            syt2 += y * t2;
+
+            index = (index == 0 ? HISTORY_SIZE : index) - 1;
+        }
+        if (s0 < 2) return;
+
+        // Solve for the linear coefficient of the quadratic through Cramer's rule, or of
+        // a line if there are too few samples, or too close in time, for a quadratic.
+        final double vx, vy;
+        final double det = s0 * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s2 * s3)
+                + s2 * (s1 * s3 - s2 * s2);
+        if (s0 >= 3 && Math.abs(det) > 1e-6) {
+            vx = (s0 * (sxt * s4 - s3 * sxt2) - sx * (s1 * s4 - s2 * s3)
+                    + s2 * (s1 * sxt2 - s2 * sxt)) / det;
+            vy = (s0 * (syt * s4 - s3 * syt2) - sy * (s1 * s4 - s2 * s3)
+                    + s2 * (s1 * syt2 - s2 * syt)) / det;
+        } else {
+            final double lineDet = s0 * s2 - s1 * s1;
+            if (lineDet == 0) return;
+            vx = (s0 * sxt - s1 * sx) / lineDet;
+            vy = (s0 * syt - s1 * sy) / lineDet;
+        }
+        // px/ms to px/s
+        mXVelocity = Math.max(-maxVelocity, Math.min((float) (vx * 1000), maxVelocity));
+        mYVelocity = Math.max(-maxVelocity, Math.min((float) (vy * 1000), maxVelocity));
+    }
+
+    /** @return the horizontal velocity last computed, in pixels per second */
+    public float getXVelocity() {
+        return mXVelocity;
+    }
+
+    /** @return the vertical velocity last computed, in pixels per second */
+    public float getYVelocity() {
+        return mYVelocity;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2021 刘振林. All rights reserved.
+ */
+
+package com.liuzhenlin.galleryviewer;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.Map;
+
+/**
+ * Keeps the {@link ImageViewportState}s of the image pages of a pager by the ids of their items,
+ * for the pages that are destroyed or recycled while zoomed or panned, so that the zoom and pan
+ * can be restored when the pages of the same items are created again. Only the most recently
+ * kept ones are retained. They can be saved into and restored from a {@link Bundle} as well,
+ * to be carried across configuration changes.
+ *
+ * @author 刘振林
+ */
+/*package*/ final class ViewportStateCache {
+
+    /** The maximum number of items whose viewport states are kept */
+    private static final int MAX_SIZE = 32;
+
+    private static final String STATE_IDS = "viewportStateIds";
+    private static final String STATE_VIEWPORT_STATES = "viewportStates";
+
+    private final LruCache<Long, ImageViewportState> mStates = new LruCache<>(MAX_SIZE);
+
+    /**
+     * Keeps the viewport state of the image of the given item, or drops the one kept if
+     * {@code state} is {@code null}, i.e., the image is not zoomed or panned.
+     */
+    /*package*/ void put(long id, @Nullable ImageViewportState state) {
+        if (state != null) {
+            mStates.put(id, state);
+        } else {
+            mStates.remove(id);
+        }
+    }
+
+    @Nullable
+    /*package*/ ImageViewportState get(long id) {
+        return mStates.get(id);
+    }
+
+    @Nullable
+    /*package*/ ImageViewportState remove(long id) {
+        return mStates.remove(id);
+    }
+
+    /*package*/ void clear() {
+        mStates.evictAll();
+    }
+
+    /**
+     * @return a bundle holding the kept viewport states, or {@code null} if there are none
+     */
+    @Nullable
+    /*package*/ Bundle saveState() {
+        final Map<Long, ImageViewportState> states = mStates.snapshot();
+        if (states.isEmpty()) {
+            return null;
+        }
+
+        final long[] ids = new long[states.size()];
+        final ImageViewportState[] viewportStates = new ImageViewportState[ids.length];
+        int i = 0;
+        // From the least recently used to the most, for them to be put back in the same order
+        for (Map.Entry<Long, ImageViewportState> entry : states.entrySet()) {
+            ids[i] = entry.getKey();
+            viewportStates[i] = entry.getValue();
+            i++;
+        }
+        Bundle state = new Bundle();
+        state.putLongArray(STATE_IDS, ids);
+        state.putParcelableArray(STATE_VIEWPORT_STATES, viewportStates);
+        return state;
+    }
+
+    /*package*/ void restoreState(@Nullable Bundle state) {
+        if (state == null) return;
+
+        state.setClassLoader(ImageViewportState.class.getClassLoader());
+        final long[] ids = state.getLongArray(STATE_IDS);
+        final Parcelable[] viewportStates = state.getParcelableArray(STATE_VIEWPORT_STATES);
+        if (ids == null || viewportStates == null || ids.length != viewportStates.length) {
+            return;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            mStates.put(ids[i], (ImageViewportState) viewportStates[i]);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CriticallyDampedSpringTest {
+    private static final float FRAME = 1f / 60f;
+
+    @Test
+    public void settlesOnTargetWithoutOvershoot() {
+        final CriticallyDampedSpring spring = new CriticallyDampedSpring();
+        spring.start(0f, 0f, 100f);
+        assertFalse(spring.isAtRest());
+
+        int frames = 0;
+        while (spring.step(FRAME)) {
+            assertTrue(spring.getPosition() <= 100f);
+            frames++;
+            assertTrue("Spring never settles", frames < 600);
+        }
+        assertEquals(100f, spring.getPosition(), 0f);
+        assertEquals(0f, spring.getVelocity(), 0f);
+        assertTrue(spring.isAtRest());
+    }
+
+    @Test
+    public void carriesOnInitialVelocity() {
+        final CriticallyDampedSpring spring = new CriticallyDampedSpring();
+        // Released towards the opposite direction of the target
+        spring.start(0f, -2000f, 100f);
+        spring.step(FRAME);
+        assertTrue(spring.getPosition() < 0f);
+
+        float minPosition = spring.getPosition();
+        while (spring.step(FRAME)) {
+            minPosition = Math.min(minPosition, spring.getPosition());
+        }
+        assertTrue(minPosition < -10f);
+        assertEquals(100f, spring.getPosition(), 0f);
+    }
+
+    @Test
+    public void isFrameRateIndependent() {
+        final CriticallyDampedSpring coarse = new CriticallyDampedSpring();
+        final CriticallyDampedSpring fine = new CriticallyDampedSpring();
+        coarse.start(0f, 500f, 100f);
+        fine.start(0f, 500f, 100f);
+
+        coarse.step(0.05f);
+        for (int i = 0; i < 10; i++) {
+            fine.step(0.005f);
+        }
+        assertEquals(coarse.getPosition(), fine.getPosition(), 1e-2f);
+        assertEquals(coarse.getVelocity(), fine.getVelocity(), 1e-1f);
+    }
+
+    @Test
+    public void retargetKeepsPositionAndVelocity() {
+        final CriticallyDampedSpring spring = new CriticallyDampedSpring();
+        spring.start(0f, 0f, 100f);
+        spring.step(FRAME);
+        spring.step(FRAME);
+        final float position = spring.getPosition();
+        final float velocity = spring.getVelocity();
+
+        spring.setTarget(-50f);
+        assertEquals(position, spring.getPosition(), 0f);
+        assertEquals(velocity, spring.getVelocity(), 0f);
+
+        while (spring.step(FRAME)) ;
+        assertEquals(-50f, spring.getPosition(), 0f);
+    }
+
+    @Test
+    public void startsAtRestOnTarget() {
+        final CriticallyDampedSpring spring = new CriticallyDampedSpring();
+        spring.start(100f, 0f, 100.1f);
+        assertTrue(spring.isAtRest());
+        assertFalse(spring.step(FRAME));
+    }
+}
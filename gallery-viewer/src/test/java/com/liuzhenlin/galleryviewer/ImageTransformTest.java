@@ -0,0 +1,133 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageTransformTest {
+    private static final float EPSILON = 1e-4f;
+
+    private ImageTransform mTransform;
+    private final float[] mOut = new float[4];
+
+    @Before
+    public void setUp() {
+        mTransform = new ImageTransform();
+        mTransform.setImageSize(200, 100);
+        mTransform.setViewSize(400, 800);
+    }
+
+    @Test
+    public void postScale_keepsPivotFixed() {
+        mTransform.set(2f, 2f, 10f, 20f);
+        mTransform.postScale(1.5f, 1.5f, 100f, 60f);
+        // The image point under the pivot before scaling
+        final float u = (100f - 10f) / 2f;
+        final float v = (60f - 20f) / 2f;
+        assertEquals(3f, mTransform.getScaleX(), EPSILON);
+        assertEquals(3f, mTransform.getScaleY(), EPSILON);
+        assertEquals(100f, u * mTransform.getScaleX() + mTransform.getTranslationX(), EPSILON);
+        assertEquals(60f, v * mTransform.getScaleY() + mTransform.getTranslationY(), EPSILON);
+    }
+
+    @Test
+    public void valuesRoundTrip() {
+        mTransform.set(2f, 3f, -5f, 7f);
+        final float[] values = new float[9];
+        mTransform.getValues(values);
+        assertEquals(1f, values[ImageTransform.MPERSP_2], 0f);
+        assertEquals(0f, values[ImageTransform.MSKEW_X], 0f);
+
+        final ImageTransform other = new ImageTransform();
+        other.setValues(values);
+        assertEquals(2f, other.getScaleX(), 0f);
+        assertEquals(3f, other.getScaleY(), 0f);
+        assertEquals(-5f, other.getTranslationX(), 0f);
+        assertEquals(7f, other.getTranslationY(), 0f);
+    }
+
+    @Test
+    public void imageBounds() {
+        mTransform.set(2f, 2f, -30f, 40f);
+        assertEquals(-30f, mTransform.getImageLeft(), EPSILON);
+        assertEquals(40f, mTransform.getImageTop(), EPSILON);
+        assertEquals(370f, mTransform.getImageRight(), EPSILON);
+        assertEquals(240f, mTransform.getImageBottom(), EPSILON);
+    }
+
+    @Test
+    public void computeFitTranslation_centersSmallImage() {
+        mTransform.set(1f, 1f, 0f, 0f);
+        mTransform.computeFitTranslation(mOut);
+        assertEquals(100f, mOut[0], EPSILON);
+        assertEquals(350f, mOut[1], EPSILON);
+    }
+
+    @Test
+    public void computeFitTranslation_pullsLargeImageToEdges() {
+        // 1000 x 500 image in a 400 x 800 view
+        mTransform.set(5f, 5f, 50f, 0f);
+        mTransform.computeFitTranslation(mOut);
+        assertEquals(-50f, mOut[0], EPSILON);
+        assertEquals(150f, mOut[1], EPSILON);
+
+        mTransform.set(5f, 5f, -700f, 0f);
+        mTransform.computeFitTranslation(mOut);
+        assertEquals(100f, mOut[0], EPSILON);
+    }
+
+    @Test
+    public void clampDrag() {
+        // 1000 x 500 image, horizontally scrollable by 600 pixels
+        mTransform.set(5f, 5f, -20f, 150f);
+        mTransform.clampDrag(50f, 30f, mOut);
+        assertEquals(20f, mOut[0], EPSILON);
+        // Kept vertically centered
+        assertEquals(0f, mOut[1], EPSILON);
+
+        mTransform.clampDrag(-100f, 0f, mOut);
+        assertEquals(-100f, mOut[0], EPSILON);
+
+        // An image smaller than the view moves freely
+        mTransform.set(1f, 1f, 0f, 0f);
+        mTransform.clampDrag(-100f, 300f, mOut);
+        assertEquals(-100f, mOut[0], EPSILON);
+        assertEquals(300f, mOut[1], EPSILON);
+    }
+
+    @Test
+    public void getTranslationRange() {
+        mTransform.set(5f, 5f, 0f, 0f);
+        mTransform.getTranslationRange(mOut);
+        assertEquals(-600f, mOut[0], EPSILON);
+        assertEquals(0f, mOut[1], EPSILON);
+        assertEquals(150f, mOut[2], EPSILON);
+        assertEquals(150f, mOut[3], EPSILON);
+    }
+
+    @Test
+    public void viewportFocusRoundTrip() {
+        // 1000 x 500 image, centered on its point (0.3, 0.5)
+        mTransform.setViewportFocus(5f, 0.3f, 0.5f);
+        assertEquals(5f, mTransform.getScaleX(), EPSILON);
+        assertEquals(-100f, mTransform.getTranslationX(), EPSILON);
+        // Kept vertically centered
+        assertEquals(150f, mTransform.getTranslationY(), EPSILON);
+
+        mTransform.getViewportFocus(mOut);
+        assertEquals(0.3f, mOut[0], EPSILON);
+        assertEquals(0.5f, mOut[1], EPSILON);
+
+        // A point too close to an edge to be centered
+        mTransform.setViewportFocus(5f, 0.95f, 0.5f);
+        assertEquals(-600f, mTransform.getTranslationX(), EPSILON);
+    }
+
+    @Test
+    public void clampScaleFactor() {
+        assertEquals(2f, ImageTransform.clampScaleFactor(2f, 1f, 0.5f, 4f), EPSILON);
+        assertEquals(4f, ImageTransform.clampScaleFactor(8f, 1f, 0.5f, 4f), EPSILON);
+        assertEquals(0.25f, ImageTransform.clampScaleFactor(0.1f, 2f, 0.5f, 4f), EPSILON);
+    }
+}
@@ -0,0 +1,70 @@
+package com.liuzhenlin.galleryviewer;
+
+import android.view.animation.Interpolator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LookupTableInterpolatorTest {
+    private static final int SAMPLES = 100000;
+
+    /** The allowance for float rounding that the documented error bound includes */
+    private static final double FLOAT_ROUNDING = 0x1p-22;
+
+    /** Same curve as android.view.animation.DecelerateInterpolator of factor 1 */
+    private static final Interpolator DECELERATE = input -> 1f - (1f - input) * (1f - input);
+
+    @Test
+    public void viscousFluidStaysWithinErrorBound() {
+        for (float scale : new float[]{2f, 8f, 16f}) {
+            final ViscousFluidInterpolator exact = new ViscousFluidInterpolator(scale);
+            final LookupTableInterpolator table = new LookupTableInterpolator(exact);
+            // M / (8 N^2), where M <= scale^2 times the normalization (< 1.2 for scale >= 2)
+            final double n = table.getSegmentCount();
+            final double bound = 1.2 * scale * scale / (8 * n * n) + FLOAT_ROUNDING;
+            assertTrue(maxError(exact, table) <= bound);
+        }
+    }
+
+    @Test
+    public void decelerateStaysWithinErrorBound() {
+        final LookupTableInterpolator table = new LookupTableInterpolator(DECELERATE);
+        final double n = table.getSegmentCount();
+        final double error = maxError(DECELERATE, table);
+        assertTrue(error <= 2 / (8 * n * n) + FLOAT_ROUNDING);
+        assertTrue(error < 5e-7);
+    }
+
+    @Test
+    public void coarseTableStaysWithinErrorBound() {
+        final ViscousFluidInterpolator exact = new ViscousFluidInterpolator();
+        final LookupTableInterpolator table = new LookupTableInterpolator(exact, 64);
+        final double error = maxError(exact, table);
+        assertTrue(error <= 1.01 * 64 / (8.0 * 64 * 64));
+        // Far from its bound, the error would not tell whether it is interpolated at all
+        assertTrue(error > 1e-4);
+    }
+
+    @Test
+    public void endpointsAndOutOfRangeInputsAreExact() {
+        final ViscousFluidInterpolator exact = new ViscousFluidInterpolator();
+        final LookupTableInterpolator table = new LookupTableInterpolator(exact);
+        assertEquals(exact.getInterpolation(0f), table.getInterpolation(0f), 0f);
+        assertEquals(exact.getInterpolation(1f), table.getInterpolation(1f), 0f);
+        assertEquals(exact.getInterpolation(-0.5f), table.getInterpolation(-0.5f), 0f);
+        assertEquals(exact.getInterpolation(1.5f), table.getInterpolation(1.5f), 0f);
+        assertEquals(1f, table.getInterpolation(Math.nextDown(1f)), 1e-5f);
+    }
+
+    private static double maxError(Interpolator exact, Interpolator table) {
+        double maxError = 0;
+        for (int i = 0; i <= SAMPLES; i++) {
+            final float input = (float) i / SAMPLES;
+            maxError = Math.max(maxError,
+                    Math.abs(exact.getInterpolation(input) - table.getInterpolation(input)));
+        }
+        return maxError;
+    }
+}
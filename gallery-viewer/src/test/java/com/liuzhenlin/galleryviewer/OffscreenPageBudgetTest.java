@@ -0,0 +1,47 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OffscreenPageBudgetTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void smallerPagesKeepMoreNeighbors() {
+        final OffscreenPageBudget budget = new OffscreenPageBudget(64 * MB);
+        assertEquals(4, budget.computeOffscreenPageLimit(8 * MB, 0));
+        assertEquals(2, budget.computeOffscreenPageLimit(16 * MB, 0));
+        assertEquals(OffscreenPageBudget.MAX_OFFSCREEN_PAGE_LIMIT,
+                budget.computeOffscreenPageLimit(MB, 0));
+        // A page of a 100 MP image decoded in full
+        assertEquals(1, budget.computeOffscreenPageLimit(400 * MB, 0));
+        assertEquals(OffscreenPageBudget.MAX_OFFSCREEN_PAGE_LIMIT,
+                budget.computeOffscreenPageLimit(0, 0));
+    }
+
+    @Test
+    public void memoryPressureCutsBudgetUntilRelieved() {
+        final OffscreenPageBudget budget = new OffscreenPageBudget(64 * MB);
+        budget.onMemoryPressure(ImageMemoryTrimPolicy.STAGE_MODERATE, 1000);
+        assertEquals(32 * MB, budget.getEffectiveBudgetBytes(1000));
+        assertEquals(2, budget.computeOffscreenPageLimit(8 * MB, 1000));
+
+        budget.onMemoryPressure(ImageMemoryTrimPolicy.STAGE_CRITICAL, 2000);
+        assertEquals(1, budget.computeOffscreenPageLimit(MB, 2000));
+
+        // A lower stage does not relieve the higher one being held
+        budget.onMemoryPressure(ImageMemoryTrimPolicy.STAGE_LOW, 3000);
+        assertEquals(ImageMemoryTrimPolicy.STAGE_CRITICAL, budget.getPressureStage(3000));
+        assertEquals(OffscreenPageBudget.PRESSURE_HOLD_MILLIS,
+                budget.getPressureHoldRemainingMillis(3000));
+
+        final long relieved = 3000 + OffscreenPageBudget.PRESSURE_HOLD_MILLIS;
+        assertEquals(ImageMemoryTrimPolicy.STAGE_NONE, budget.getPressureStage(relieved));
+        assertEquals(0, budget.getPressureHoldRemainingMillis(relieved));
+        assertEquals(4, budget.computeOffscreenPageLimit(8 * MB, relieved));
+
+        budget.onMemoryPressure(ImageMemoryTrimPolicy.STAGE_LOW, relieved);
+        assertEquals(16 * MB, budget.getEffectiveBudgetBytes(relieved));
+    }
+}
@@ -0,0 +1,96 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OverScrollerReplayTest {
+    private static final float DENSITY = 2.75f;
+    /** Same as ViewConfiguration.getScrollFriction(), which the JVM stubs do not return */
+    private static final float FRICTION = 0.015f;
+    private static final float FRAME_MILLIS = 1000f / 60f;
+    private static final int MAX_FRAMES = 1000;
+
+    @Test
+    public void flingIsReplayedFrameByFrame() {
+        final List<Float> positions = replayFling();
+        final float finalY = positions.get(positions.size() - 1);
+        assertEquals(0f, positions.get(0), 0f);
+        assertTrue(finalY > 0f);
+        assertTrue(positions.size() > 2);
+        for (int i = 1; i < positions.size(); i++) {
+            assertTrue(positions.get(i) >= positions.get(i - 1));
+            assertTrue(positions.get(i) <= finalY);
+        }
+        // The same frame times give the same frames.
+        assertEquals(positions, replayFling());
+    }
+
+    @Test
+    public void springBackIsReplayedFrameByFrame() {
+        final List<Float> positions = replaySpringBack();
+        assertEquals(-200f, positions.get(0), 0f);
+        assertEquals(0f, positions.get(positions.size() - 1), 0f);
+        assertTrue(positions.size() > 2);
+        for (int i = 1; i < positions.size(); i++) {
+            assertTrue(positions.get(i) >= positions.get(i - 1));
+            assertTrue(positions.get(i) <= 0f);
+        }
+        assertEquals(positions, replaySpringBack());
+    }
+
+    @Test
+    public void animationOnlyAdvancesWithTheClock() {
+        final FrameClock.Manual clock = new FrameClock.Manual(1000000000L);
+        final OverScroller scroller = newScroller(clock);
+        scroller.fling(0, 0, 0, 4000, 0, 0, 0, 100000);
+        scroller.computeScrollOffset();
+        clock.advanceMillis(FRAME_MILLIS);
+        scroller.computeScrollOffset();
+        final float y = scroller.getCurrY();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scroller.computeScrollOffset());
+            assertEquals(y, scroller.getCurrY(), 0f);
+        }
+        assertFalse(scroller.isFinished());
+    }
+
+    private static List<Float> replayFling() {
+        final FrameClock.Manual clock = new FrameClock.Manual(1000000000L);
+        final OverScroller scroller = newScroller(clock);
+        scroller.fling(0, 0, 0, 4000, 0, 0, 0, 100000);
+        return replay(scroller, clock);
+    }
+
+    private static List<Float> replaySpringBack() {
+        final FrameClock.Manual clock = new FrameClock.Manual(1000000000L);
+        final OverScroller scroller = newScroller(clock);
+        assertTrue(scroller.springBack(0, -200, 0, 0, 0, 1000));
+        return replay(scroller, clock);
+    }
+
+    private static OverScroller newScroller(FrameClock clock) {
+        final OverScroller scroller = new OverScroller(DENSITY, null, true);
+        scroller.setFriction(FRICTION);
+        scroller.setFrameClock(clock);
+        return scroller;
+    }
+
+    /** @return the positions of the animation in all its frames, the final one included */
+    private static List<Float> replay(OverScroller scroller, FrameClock.Manual clock) {
+        final List<Float> positions = new ArrayList<>();
+        while (scroller.computeScrollOffset()) {
+            positions.add(scroller.getCurrY());
+            assertTrue(positions.size() < MAX_FRAMES);
+            clock.advanceMillis(FRAME_MILLIS);
+        }
+        positions.add(scroller.getCurrY());
+        assertTrue(scroller.isFinished());
+        return positions;
+    }
+}
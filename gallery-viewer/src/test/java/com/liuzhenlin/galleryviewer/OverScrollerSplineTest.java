@@ -0,0 +1,25 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Test;
+
+import static com.liuzhenlin.galleryviewer.OverScroller.SplineOverScroller.NB_SAMPLES;
+import static com.liuzhenlin.galleryviewer.OverScroller.SplineOverScroller.SPLINE_POSITION;
+import static com.liuzhenlin.galleryviewer.OverScroller.SplineOverScroller.SPLINE_TIME;
+import static org.junit.Assert.assertEquals;
+
+public class OverScrollerSplineTest {
+
+    @Test
+    public void precomputedTables_matchComputedOnes() {
+        final float[] position = new float[NB_SAMPLES + 1];
+        final float[] time = new float[NB_SAMPLES + 1];
+        OverScroller.SplineOverScroller.computeSplineTables(position, time);
+
+        assertEquals(position.length, SPLINE_POSITION.length);
+        assertEquals(time.length, SPLINE_TIME.length);
+        for (int i = 0; i <= NB_SAMPLES; i++) {
+            assertEquals(position[i], SPLINE_POSITION[i], 0f);
+            assertEquals(time[i], SPLINE_TIME[i], 0f);
+        }
+    }
+}
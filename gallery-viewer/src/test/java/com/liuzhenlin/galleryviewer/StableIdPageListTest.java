@@ -0,0 +1,190 @@
+package com.liuzhenlin.galleryviewer;
+
+import androidx.viewpager.widget.PagerAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StableIdPageListTest {
+    private static final int ITEM_COUNT = 8;
+
+    private TestPageList mPageList;
+    /** The pages instantiated for the items at the positions 2, 3 and 4 */
+    private StableIdPageList.Page[] mPages;
+
+    @Before
+    public void setUp() {
+        mPageList = new TestPageList();
+        mPages = new StableIdPageList.Page[]{
+                mPageList.add(2, null, 2),
+                mPageList.add(3, null, 3),
+                mPageList.add(4, null, 4)
+        };
+    }
+
+    @Test
+    public void insertedRangeMovesPagesAfterIt() {
+        mPageList.ids.add(3, 100L);
+        mPageList.ids.add(3, 101L);
+        mPageList.onItemRangeInserted(3, 2);
+        assertPositions(PagerAdapter.POSITION_UNCHANGED, 5, 6);
+        assertSame(mPages[1], mPageList.getPageAt(5));
+        assertNull(mPageList.getPageAt(3));
+    }
+
+    @Test
+    public void pendingPositionIsReportedOnce() {
+        mPageList.ids.add(0, 100L);
+        mPageList.onItemRangeInserted(0, 1);
+        assertPositions(3, 4, 5);
+        // Told to the pager already
+        assertPositions(PagerAdapter.POSITION_UNCHANGED,
+                PagerAdapter.POSITION_UNCHANGED, PagerAdapter.POSITION_UNCHANGED);
+    }
+
+    @Test
+    public void removedRangeDestroysItsPagesAndMovesTheOnesAfterIt() {
+        mPageList.ids.subList(1, 4).clear();
+        mPageList.onItemRangeRemoved(1, 3);
+        assertPositions(PagerAdapter.POSITION_NONE, PagerAdapter.POSITION_NONE, 1);
+        assertSame(mPages[2], mPageList.getPageAt(1));
+        assertNull(mPageList.getPageAt(2));
+    }
+
+    @Test
+    public void movedItemMovesThePagesBetween() {
+        mPageList.ids.add(6, mPageList.ids.remove(2));
+        mPageList.onItemMoved(2, 6);
+        assertPositions(6, 2, 3);
+    }
+
+    @Test
+    public void changedRangeDestroysItsPages() {
+        mPageList.onItemRangeChanged(3, 2);
+        assertPositions(PagerAdapter.POSITION_UNCHANGED,
+                PagerAdapter.POSITION_NONE, PagerAdapter.POSITION_NONE);
+    }
+
+    @Test
+    public void wronglyNotifiedChangeDestroysThePages() {
+        // The data set is not changed as notified.
+        mPageList.onItemRangeInserted(3, 1);
+        assertPositions(PagerAdapter.POSITION_UNCHANGED,
+                PagerAdapter.POSITION_NONE, PagerAdapter.POSITION_NONE);
+    }
+
+    @Test
+    public void dataSetChangeLooksUpPagesByIds() {
+        Collections.reverse(mPageList.ids);
+        mPageList.ids.remove(Long.valueOf(3));
+        mPageList.onDataSetChanged();
+        assertPositions(4, PagerAdapter.POSITION_NONE, 3);
+        assertSame(mPages[0], mPageList.getPageAt(4));
+    }
+
+    @Test
+    public void dataSetChangeKeepsPagesInPlace() {
+        mPageList.ids.set(0, 100L);
+        mPageList.ids.add(100L + ITEM_COUNT);
+        mPageList.onDataSetChanged();
+        assertPositions(PagerAdapter.POSITION_UNCHANGED,
+                PagerAdapter.POSITION_UNCHANGED, PagerAdapter.POSITION_UNCHANGED);
+    }
+
+    @Test
+    public void destroyedPageIsNoLongerLookedUp() {
+        mPageList.remove(mPages[1]);
+        assertNull(mPageList.getPageAt(3));
+        mPageList.ids.add(0, 100L);
+        mPageList.onItemRangeInserted(0, 1);
+        assertNull(mPageList.getPageAt(4));
+        assertSame(mPages[2], mPageList.getPageAt(5));
+    }
+
+    @Test
+    public void positionsFollowInsertedRanges() {
+        for (int start = 0; start <= ITEM_COUNT; start++) {
+            for (int count = 1; count <= 3; count++) {
+                final List<Integer> items = newItems();
+                for (int i = 0; i < count; i++) {
+                    items.add(start, -1 - i);
+                }
+                for (int position = 0; position < ITEM_COUNT; position++) {
+                    assertEquals(items.indexOf(position),
+                            StableIdPageList.positionAfterRangeInserted(position, start, count));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void positionsFollowRemovedRanges() {
+        for (int start = 0; start < ITEM_COUNT; start++) {
+            for (int count = 1; start + count <= ITEM_COUNT; count++) {
+                final List<Integer> items = newItems();
+                items.subList(start, start + count).clear();
+                for (int position = 0; position < ITEM_COUNT; position++) {
+                    final int expected = items.indexOf(position);
+                    assertEquals(expected < 0 ? PagerAdapter.POSITION_NONE : expected,
+                            StableIdPageList.positionAfterRangeRemoved(position, start, count));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void positionsFollowMovedItem() {
+        for (int from = 0; from < ITEM_COUNT; from++) {
+            for (int to = 0; to < ITEM_COUNT; to++) {
+                final List<Integer> items = newItems();
+                items.add(to, items.remove(from));
+                for (int position = 0; position < ITEM_COUNT; position++) {
+                    assertEquals(items.indexOf(position),
+                            StableIdPageList.positionAfterMoved(position, from, to));
+                }
+            }
+        }
+    }
+
+    private void assertPositions(int... positions) {
+        for (int i = 0; i < positions.length; i++) {
+            assertEquals(positions[i], mPageList.takePendingPosition(mPages[i]));
+        }
+    }
+
+    private static List<Integer> newItems() {
+        final List<Integer> items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private static final class TestPageList extends StableIdPageList {
+        final List<Long> ids = new ArrayList<>();
+
+        TestPageList() {
+            for (long id = 0; id < ITEM_COUNT; id++) {
+                ids.add(id);
+            }
+        }
+
+        @Override
+        int getItemCount() {
+            return ids.size();
+        }
+
+        @Override
+        long getItemId(int position) {
+            return ids.get(position);
+        }
+    }
+}
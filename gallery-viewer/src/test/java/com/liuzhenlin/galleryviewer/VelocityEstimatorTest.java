@@ -0,0 +1,98 @@
+package com.liuzhenlin.galleryviewer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VelocityEstimatorTest {
+    private static final float NO_LIMIT = Float.MAX_VALUE;
+
+    @Test
+    public void estimatesConstantVelocity() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        // 2 px/ms right and 1 px/ms up, sampled every 8 ms
+        for (int i = 0; i <= 12; i++) {
+            estimator.addSample(1000 + i * 8, 100 + i * 16, 500 - i * 8);
+        }
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(2000f, estimator.getXVelocity(), 1f);
+        assertEquals(-1000f, estimator.getYVelocity(), 1f);
+    }
+
+    @Test
+    public void estimatesVelocityAtLatestSampleOfDeceleratingPointer() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        // x(t) = 3t - 0.01t^2, whose velocity at t = 80 is 1.4 px/ms
+        for (int t = 0; t <= 80; t += 8) {
+            estimator.addSample(t, 3 * t - 0.01f * t * t, 0);
+        }
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(1400f, estimator.getXVelocity(), 1f);
+        assertEquals(0f, estimator.getYVelocity(), 0f);
+    }
+
+    @Test
+    public void ignoresSamplesBeyondHorizon() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        // Fast at first, then 1 px/ms for the last 100 ms
+        float x = 0;
+        for (int t = 0; t < 100; t += 10) {
+            estimator.addSample(t, x, 0);
+            x += 50;
+        }
+        for (int t = 100; t <= 200; t += 10) {
+            estimator.addSample(t, x, 0);
+            x += 10;
+        }
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(1000f, estimator.getXVelocity(), 1f);
+    }
+
+    @Test
+    public void dropsHistoryWhenPointerStops() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        for (int t = 0; t <= 80; t += 8) {
+            estimator.addSample(t, t * 5, 0);
+        }
+        estimator.checkStopped(80 + 50);
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(0f, estimator.getXVelocity(), 0f);
+    }
+
+    @Test
+    public void clampsToMaxVelocity() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        for (int t = 0; t <= 40; t += 8) {
+            estimator.addSample(t, -t * 20, t * 20);
+        }
+        estimator.computeVelocity(8000f);
+        assertEquals(-8000f, estimator.getXVelocity(), 0f);
+        assertEquals(8000f, estimator.getYVelocity(), 0f);
+
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(-20000f, estimator.getXVelocity(), 1f);
+    }
+
+    @Test
+    public void samplesFedTwiceAreAddedOnce() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        for (int i = 0; i <= 12; i++) {
+            // As added by a pager and then by its page, off by a rounding error
+            estimator.addSample(i * 8, i * 16, 0);
+            estimator.addSample(i * 8, i * 16 + 0.001f, 0);
+        }
+        assertEquals(13, estimator.getSampleCount());
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(2000f, estimator.getXVelocity(), 1f);
+    }
+
+    @Test
+    public void singleSampleHasNoVelocity() {
+        final VelocityEstimator estimator = new VelocityEstimator();
+        estimator.addSample(0, 10, 10);
+        estimator.computeVelocity(NO_LIMIT);
+        assertEquals(0f, estimator.getXVelocity(), 0f);
+        assertEquals(0f, estimator.getYVelocity(), 0f);
+    }
+}